@@ -0,0 +1,43 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.Cache;
+
+/**
+ * The cache holds a tenth of the keys, reads are get(key) followed by a
+ * put(key, key) on a miss, like a cache in front of something slow, writes
+ * are a plain put(key, key), so every operation might evict an entry
+ */
+public class CacheBenchmark extends Workload {
+    @Param({"LRUCache", "WTinyLFUCache"})
+    public String impl;
+
+    private Cache<Integer, Integer> cache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        cache = Implementations.cache(impl, Math.max(size / 10, 1));
+        for (int key : KeyDistribution.shuffled(size))
+            cache.put(boxed[key], boxed[key]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        Integer key = boxed[keys[i]];
+        if (reads[i]) {
+            Integer value = cache.get(key);
+            if (value == null)
+                cache.put(key, key);
+            return value;
+        }
+
+        cache.put(key, key);
+        return key;
+    }
+}
@@ -0,0 +1,149 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import interfaces.Cache;
+
+/**
+ * Replays traces of keys through the caches and prints the hit ratio and
+ * the time per access of each, not a JMH benchmark since the hit ratio is
+ * the interesting part, run it with
+ *
+ * java -cp target/benchmarks.jar benchmark.CacheTrace [trace files...]
+ *
+ * Every access is a get(key) followed by a put(key, key) on a miss. A trace
+ * file has one key per line, anything that parses as a long. Without files
+ * it replays three generated traces over 100K keys:
+ * - zipf: the same zipfian keys as the ZIPFIAN distribution of the JMH
+ *   benchmarks
+ * - zipf+scan: the same, but every 10K accesses are followed by a scan over
+ *   20K keys that are never used again, which is what flushes an lru cache
+ * - loop: the keys 0 to 14999 over and over, an lru cache that is smaller
+ *   than the loop never hits at all
+ */
+public final class CacheTrace {
+    private static final String[] CACHES = {"LRUCache", "WTinyLFUCache"};
+    private static final int[] SIZES = {1_000, 10_000};
+    private static final int KEYS = 100_000;
+    private static final int ACCESSES = 2_000_000;
+
+    private CacheTrace() {}
+
+    public static void main(String[] args) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<int[]> traces = new ArrayList<>();
+        if (args.length == 0) {
+            names.add("zipf");
+            traces.add(zipf(false));
+            names.add("zipf+scan");
+            traces.add(zipf(true));
+            names.add("loop");
+            traces.add(loop(15_000));
+        }
+        for (String file : args) {
+            names.add(Paths.get(file).getFileName().toString());
+            traces.add(read(Paths.get(file)));
+        }
+
+        System.out.printf("%-12s %8s %-14s %9s %8s%n",
+            "trace", "size", "cache", "hit ratio", "ns/op");
+        for (int t = 0; t < traces.size(); t++) {
+            int[] trace = traces.get(t);
+            Integer[] boxed = box(trace);
+            for (int size : SIZES) {
+                for (String impl : CACHES) {
+                    // the first run only warms up the jit
+                    replay(Implementations.cache(impl, size), boxed);
+                    Cache<Integer, Integer> cache = Implementations.cache(impl, size);
+                    long nanos = replay(cache, boxed);
+                    double ratio = (double) cache.hits()
+                        / (cache.hits() + cache.misses());
+                    System.out.printf("%-12s %8d %-14s %8.2f%% %8.1f%n",
+                        names.get(t), size, impl, 100 * ratio,
+                        (double) nanos / boxed.length);
+                }
+            }
+        }
+    }
+
+    private static long replay(Cache<Integer, Integer> cache, Integer[] trace) {
+        long start = System.nanoTime();
+        for (Integer key : trace) {
+            if (cache.get(key) == null)
+                cache.put(key, key);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static int[] zipf(boolean scans) {
+        int[] keys = KeyDistribution.ZIPFIAN.draw(KEYS, ACCESSES);
+        if (!scans)
+            return keys;
+
+        int[] trace = new int[ACCESSES + ACCESSES / 10_000 * 20_000];
+        // the scanned keys start after the zipfian ones, so they are
+        // never used again
+        int scanned = KEYS;
+        int n = 0;
+        for (int i = 0; i < ACCESSES; i++) {
+            trace[n++] = keys[i];
+            if ((i + 1) % 10_000 == 0) {
+                for (int j = 0; j < 20_000; j++)
+                    trace[n++] = scanned++;
+            }
+        }
+        return trace;
+    }
+
+    private static int[] loop(int length) {
+        int[] trace = new int[ACCESSES];
+        for (int i = 0; i < ACCESSES; i++)
+            trace[i] = i % length;
+        return trace;
+    }
+
+    // the keys of the file are numbered in the order they first appear, so
+    // that they can be boxed ahead of time like the generated ones
+    private static int[] read(Path file) throws IOException {
+        HashMap<Long, Integer> ids = new HashMap<>();
+        List<String> lines = Files.readAllLines(file);
+        int[] trace = new int[lines.size()];
+        int n = 0;
+        for (String line : lines) {
+            line = line.trim();
+            if (line.isEmpty())
+                continue;
+            Long key = Long.parseLong(line);
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = ids.size();
+                ids.put(key, id);
+            }
+            trace[n++] = id;
+        }
+        return Arrays.copyOf(trace, n);
+    }
+
+    // every access to the same key uses the same Integer, so the replay
+    // measures the caches instead of Integer.valueOf
+    private static Integer[] box(int[] trace) {
+        int max = 0;
+        for (int key : trace)
+            max = Math.max(max, key);
+        Integer[] values = new Integer[max + 1];
+        Integer[] boxed = new Integer[trace.length];
+        for (int i = 0; i < trace.length; i++) {
+            if (values[trace[i]] == null)
+                values[trace[i]] = trace[i];
+            boxed[i] = values[trace[i]];
+        }
+        return boxed;
+    }
+}
@@ -0,0 +1,103 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import interfaces.Map;
+
+/**
+ * The MapBenchmark workload on a single map shared by all threads, run it
+ * with different thread counts to see how the thread-safe maps scale, e.g.
+ * -t 1, -t 8 and -t 32, the throughput is reported per thread count
+ *
+ * SynchronizedSeparateChainingHashMap is the baseline, a single lock around
+ * a SeparateChainingHashMap
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ConcurrentMapBenchmark {
+    private static final int OPS = 1 << 20;
+    private static final int MASK = OPS - 1;
+
+    @Param({"SynchronizedSeparateChainingHashMap", "LockStripedHashMap",
+        "LockFreeHashMap"})
+    public String impl;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    @Param({"0.9", "0.99", "1.0"})
+    public double readRatio;
+
+    private Map<Integer, Integer> map;
+    private Integer[] boxed;
+    private int[] keys;
+    private boolean[] reads;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boxed = new Integer[size];
+        for (int i = 0; i < size; i++)
+            boxed[i] = i;
+        keys = distribution.draw(size, OPS);
+        reads = new boolean[OPS];
+        Random rnd = new Random(KeyDistribution.SEED);
+        for (int i = 0; i < OPS; i++)
+            reads[i] = rnd.nextDouble() < readRatio;
+
+        map = Implementations.concurrentMap(impl);
+        for (int key : KeyDistribution.shuffled(size))
+            map.put(boxed[key], boxed[key]);
+    }
+
+    // every thread walks through the same operations, but starting at a
+    // different offset
+    @State(Scope.Thread)
+    public static class Cursor {
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            cursor = (int) ((long) params.getThreadIndex() * OPS
+                / params.getThreadCount());
+        }
+
+        int next() {
+            cursor = (cursor + 1) & MASK;
+            return cursor;
+        }
+    }
+
+    @Benchmark
+    public Integer mixed(Cursor cursor) {
+        int i = cursor.next();
+        Integer key = boxed[keys[i]];
+        if (reads[i])
+            return map.get(key);
+
+        map.remove(key);
+        map.put(key, key);
+        return key;
+    }
+}
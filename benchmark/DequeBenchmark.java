@@ -0,0 +1,45 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.Deque;
+
+/**
+ * Reads are getFirst() or getLast(), writes remove an item from one end and
+ * add a new one to the other end, the end is picked by the parity of the key
+ */
+public class DequeBenchmark extends Workload {
+    @Param({"DynamicArrayDeque", "LinkedListDeque", "LinkedListList"})
+    public String impl;
+
+    private Deque<Integer> deque;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        deque = Implementations.deque(impl);
+        for (int i = 0; i < size; i++)
+            deque.addLast(boxed[i]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        Integer item = boxed[keys[i]];
+        boolean front = (item & 1) == 0;
+        if (reads[i])
+            return front ? deque.getFirst() : deque.getLast();
+
+        if (front) {
+            Integer first = deque.removeFirst();
+            deque.addLast(item);
+            return first;
+        }
+        Integer last = deque.removeLast();
+        deque.addFirst(item);
+        return last;
+    }
+}
@@ -0,0 +1,248 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import cache.LRUCache;
+import cache.WTinyLFUCache;
+import deque.DynamicArrayDeque;
+import deque.LinkedListDeque;
+import interfaces.Cache;
+import interfaces.Deque;
+import interfaces.List;
+import interfaces.Map;
+import interfaces.MapCursor;
+import interfaces.PriorityQueue;
+import interfaces.Queue;
+import interfaces.Stack;
+import list.DynamicArrayList;
+import list.LinkedListList;
+import map.AVLTreeMap;
+import map.BPlusTreeMap;
+import map.BinarySearchTreeMap;
+import map.CuckooHashMap;
+import map.ExpiringHashMap;
+import map.IntIntHashMap;
+import map.LinearProbingHashMap;
+import map.LockFreeHashMap;
+import map.LockStripedHashMap;
+import map.RedBlackTreeMap;
+import map.RobinHoodHashMap;
+import map.SeparateChainingHashMap;
+import map.SwissHashMap;
+import pqueue.MeldableHeapPriorityQueue;
+import pqueue.MinBinaryHeapPriorityQueue;
+import queue.DynamicArrayQueue;
+import queue.LinkedListQueue;
+import stack.DynamicArrayStack;
+import stack.LinkedListStack;
+
+/**
+ * Creates the implementations by their simple class names, the names are
+ * what the benchmarks take as their "impl" parameter, so a new
+ * implementation only has to be added here and to the @Param list of the
+ * corresponding benchmark
+ */
+final class Implementations {
+    private Implementations() {}
+
+    static Map<Integer, Integer> map(String name) {
+        switch (name) {
+            case "LinearProbingHashMap":
+                return new LinearProbingHashMap<>();
+            case "RobinHoodHashMap":
+                return new RobinHoodHashMap<>();
+            case "SeparateChainingHashMap":
+                return new SeparateChainingHashMap<>();
+            case "SwissHashMap":
+                return new SwissHashMap<>();
+            case "CuckooHashMap":
+                return new CuckooHashMap<>();
+            case "IntIntHashMap":
+                return new IntIntHashMap();
+            case "BinarySearchTreeMap":
+                return new BinarySearchTreeMap<>();
+            case "AVLTreeMap":
+                return new AVLTreeMap<>();
+            case "RedBlackTreeMap":
+                return new RedBlackTreeMap<>();
+            case "BPlusTreeMap":
+                return new BPlusTreeMap<>();
+            // nothing expires during a run, this is the cost of the wheel
+            // on top of the LinearProbingHashMap underneath
+            case "ExpiringHashMap":
+                return new ExpiringHashMap<>(1, TimeUnit.HOURS);
+            default:
+                throw new IllegalArgumentException("unknown map: " + name);
+        }
+    }
+
+    static Map<Integer, Integer> concurrentMap(String name) {
+        switch (name) {
+            case "SynchronizedSeparateChainingHashMap":
+                return new SynchronizedMap<>(new SeparateChainingHashMap<>());
+            case "LockStripedHashMap":
+                return new LockStripedHashMap<>();
+            case "LockFreeHashMap":
+                return new LockFreeHashMap<>();
+            default:
+                throw new IllegalArgumentException(
+                    "unknown concurrent map: " + name);
+        }
+    }
+
+    static List<Integer> list(String name) {
+        switch (name) {
+            case "DynamicArrayList":
+                return new DynamicArrayList<>();
+            case "LinkedListList":
+                return new LinkedListList<>();
+            default:
+                throw new IllegalArgumentException("unknown list: " + name);
+        }
+    }
+
+    static Queue<Integer> queue(String name) {
+        switch (name) {
+            case "DynamicArrayQueue":
+                return new DynamicArrayQueue<>();
+            case "LinkedListQueue":
+                return new LinkedListQueue<>();
+            default:
+                throw new IllegalArgumentException("unknown queue: " + name);
+        }
+    }
+
+    static Stack<Integer> stack(String name) {
+        switch (name) {
+            case "DynamicArrayStack":
+                return new DynamicArrayStack<>();
+            case "LinkedListStack":
+                return new LinkedListStack<>();
+            default:
+                throw new IllegalArgumentException("unknown stack: " + name);
+        }
+    }
+
+    static Deque<Integer> deque(String name) {
+        switch (name) {
+            case "DynamicArrayDeque":
+                return new DynamicArrayDeque<>();
+            case "LinkedListDeque":
+                return new LinkedListDeque<>();
+            case "LinkedListList":
+                return new LinkedListList<>();
+            default:
+                throw new IllegalArgumentException("unknown deque: " + name);
+        }
+    }
+
+    static PriorityQueue<Integer> priorityQueue(String name) {
+        switch (name) {
+            case "MinBinaryHeapPriorityQueue":
+                return new MinBinaryHeapPriorityQueue<>();
+            case "MeldableHeapPriorityQueue":
+                return new MeldableHeapPriorityQueue<>();
+            default:
+                throw new IllegalArgumentException(
+                    "unknown priority queue: " + name);
+        }
+    }
+
+    static Cache<Integer, Integer> cache(String name, int maxSize) {
+        switch (name) {
+            case "LRUCache":
+                return new LRUCache<>(maxSize);
+            case "WTinyLFUCache":
+                return new WTinyLFUCache<>(maxSize);
+            default:
+                throw new IllegalArgumentException("unknown cache: " + name);
+        }
+    }
+
+    // the baseline for the thread-safe maps, one lock around everything
+    private static final class SynchronizedMap<K, V> implements Map<K, V> {
+        private final Map<K, V> map;
+
+        SynchronizedMap(Map<K, V> map) {
+            this.map = map;
+        }
+
+        @Override
+        public synchronized V put(K key, V value) {
+            return map.put(key, value);
+        }
+
+        @Override
+        public synchronized V putIfAbsent(K key, V value) {
+            return map.putIfAbsent(key, value);
+        }
+
+        @Override
+        public synchronized V compute(K key,
+                BiFunction<? super K, ? super V, ? extends V> function) {
+            return map.compute(key, function);
+        }
+
+        @Override
+        public synchronized V computeIfAbsent(K key,
+                Function<? super K, ? extends V> function) {
+            return map.computeIfAbsent(key, function);
+        }
+
+        @Override
+        public synchronized V merge(K key, V value,
+                BiFunction<? super V, ? super V, ? extends V> function) {
+            return map.merge(key, value, function);
+        }
+
+        @Override
+        public synchronized V get(K key) {
+            return map.get(key);
+        }
+
+        @Override
+        public synchronized V getOrDefault(K key, V defaultValue) {
+            return map.getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public synchronized void remove(K key) {
+            map.remove(key);
+        }
+
+        @Override
+        public synchronized boolean containsKey(K key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public synchronized Iterable<K> keys() {
+            return map.keys();
+        }
+
+        // the cursor itself isn't guarded, same as keys()
+        @Override
+        public synchronized MapCursor<K, V> cursor() {
+            return map.cursor();
+        }
+
+        @Override
+        public synchronized void forEach(
+                BiConsumer<? super K, ? super V> action) {
+            map.forEach(action);
+        }
+
+        @Override
+        public synchronized boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public synchronized int size() {
+            return map.size();
+        }
+    }
+}
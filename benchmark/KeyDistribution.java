@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * The distributions the benchmark keys/indices are drawn from, every
+ * benchmark uses the same seeds so that the runs are comparable across the
+ * implementations
+ */
+public enum KeyDistribution {
+    // every key is equally likely
+    UNIFORM,
+    // a few hot keys get most of the traffic, the hot keys are scattered over
+    // the key range so that they don't end up next to each other
+    ZIPFIAN;
+
+    static final long SEED = 0x5eed;
+
+    /**
+     * Draws the specified amount of keys in the range of 0 to n-1
+     *
+     * @param n     The amount of distinct keys
+     * @param count The amount of keys to draw
+     * @return The drawn keys
+     */
+    int[] draw(int n, int count) {
+        Random rnd = new Random(SEED);
+        int[] keys = new int[count];
+        if (this == UNIFORM) {
+            for (int i = 0; i < count; i++)
+                keys[i] = rnd.nextInt(n);
+            return keys;
+        }
+
+        ZipfianGenerator zipf = new ZipfianGenerator(n, rnd);
+        for (int i = 0; i < count; i++)
+            keys[i] = scramble(zipf.next(), n);
+        return keys;
+    }
+
+    /**
+     * Creates a random permutation of 0 to n-1, used to populate the
+     * structures in a random order
+     *
+     * @param n The amount of keys
+     * @return The shuffled keys
+     */
+    static int[] shuffled(int n) {
+        Random rnd = new Random(SEED);
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = i;
+        // fisher-yates
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        return keys;
+    }
+
+    private static int scramble(int rank, int n) {
+        // spread the ranks over the key range so that the most popular keys
+        // are not 0, 1, 2... which would favor some of the structures
+        long h = rank * 0x9e3779b97f4a7c15L;
+        h ^= h >>> 32;
+        return (int) ((h & Long.MAX_VALUE) % n);
+    }
+}
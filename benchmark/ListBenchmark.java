@@ -0,0 +1,39 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.List;
+
+/**
+ * Reads are get(index), writes remove the item at the index and append a new
+ * one, the indices follow the key distribution
+ */
+public class ListBenchmark extends Workload {
+    @Param({"DynamicArrayList", "LinkedListList"})
+    public String impl;
+
+    private List<Integer> list;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        list = Implementations.list(impl);
+        for (int i = 0; i < size; i++)
+            list.add(boxed[i]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        int index = keys[i];
+        if (reads[i])
+            return list.get(index);
+
+        list.remove(index);
+        list.add(boxed[index]);
+        return boxed[index];
+    }
+}
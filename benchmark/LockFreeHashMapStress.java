@@ -0,0 +1,272 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import map.LockFreeHashMap;
+
+/**
+ * Hammers a LockFreeHashMap from several threads and checks that the result
+ * could have come from a map behind a single lock, not a JMH benchmark but
+ * it lives here with the rest of the tooling, run it with
+ *
+ * java -cp target/benchmarks.jar benchmark.LockFreeHashMapStress [threads] [rounds]
+ *
+ * There are two checks:
+ * - counters: every thread increments random keys with compute(...), the
+ *   sum of all values has to be the amount of increments in the end
+ * - linearizability: in every round the threads run a few random operations
+ *   on a few hot keys and record when each of them started and returned, then
+ *   a search looks for an order of the operations that respects those times
+ *   and gives the same results as a sequential map, the hot keys are
+ *   independent so each of them is checked on its own, meanwhile the threads
+ *   insert and remove filler keys so that the map keeps resizing
+ */
+public final class LockFreeHashMapStress {
+    private static final int OPS_PER_THREAD = 12;
+    private static final int FILLER_PER_OP = 64;
+
+    private LockFreeHashMapStress() {}
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        counters(threads, 200_000);
+        System.out.println("counters: ok");
+
+        for (int round = 0; round < rounds; round++)
+            linearizability(threads, round);
+        System.out.println("linearizability: ok, " + rounds + " rounds");
+    }
+
+    private static void counters(int threads, int increments)
+            throws InterruptedException {
+        LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+        int keys = 10_000;
+        run(threads, t -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            for (int i = 0; i < increments; i++)
+                map.compute(rnd.nextInt(keys), (k, v) -> v == null ? 1 : v + 1);
+        });
+
+        long sum = 0;
+        for (int k = 0; k < keys; k++) {
+            Integer v = map.get(k);
+            sum += v == null ? 0 : v;
+        }
+        long expected = (long) threads * increments;
+        if (sum != expected)
+            fail("counters: expected a sum of " + expected + " but got " + sum);
+    }
+
+    // --------------------------linearizability-------------------------------
+
+    private enum Kind { GET, PUT, PUT_IF_ABSENT, REMOVE, COMPUTE }
+
+    // a finished operation, value is the argument and result what it
+    // returned, if it returns anything
+    private static final class Op {
+        final Kind kind;
+        final int key;
+        final Integer value;
+        final Integer result;
+        final long start;
+        final long end;
+
+        Op(Kind kind, int key, Integer value, Integer result, long start,
+                long end) {
+            this.kind = kind;
+            this.key = key;
+            this.value = value;
+            this.result = result;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + key + ", " + value + ") = " + result
+                + " [" + start + ", " + end + "]";
+        }
+    }
+
+    private static void linearizability(int threads, int round)
+            throws InterruptedException {
+        LockFreeHashMap<Integer, Integer> map = new LockFreeHashMap<>();
+        // about 24 operations per key, the search can't handle more than 63
+        int hotKeys = Math.max(2, threads / 2);
+        List<List<Op>> histories = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+            histories.add(new ArrayList<>());
+        AtomicInteger ids = new AtomicInteger(1);
+
+        run(threads, t -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            List<Op> history = histories.get(t);
+            // every thread has its own range of filler keys
+            int first = hotKeys + t * OPS_PER_THREAD * FILLER_PER_OP;
+            int filler = first;
+            for (int i = 0; i < OPS_PER_THREAD; i++) {
+                history.add(randomOp(map, rnd, hotKeys, ids.getAndIncrement()));
+                for (int j = 0; j < FILLER_PER_OP; j++) {
+                    // mostly inserts, so that the map keeps growing, the
+                    // removes leave tombstones behind for the copy to drop
+                    if (filler > first && rnd.nextInt(4) == 0)
+                        map.remove(first + rnd.nextInt(filler - first));
+                    else
+                        map.put(filler++, 0);
+                }
+            }
+        });
+
+        for (int key = 0; key < hotKeys; key++) {
+            List<Op> ops = new ArrayList<>();
+            for (List<Op> history : histories)
+                for (Op op : history)
+                    if (op.key == key)
+                        ops.add(op);
+            if (!linearizable(ops))
+                fail("round " + round + ": not linearizable " + ops);
+        }
+    }
+
+    private static Op randomOp(LockFreeHashMap<Integer, Integer> map,
+            ThreadLocalRandom rnd, int hotKeys, int id) {
+        int key = rnd.nextInt(hotKeys);
+        Kind kind = Kind.values()[rnd.nextInt(Kind.values().length)];
+        Integer value = id;
+        Integer result = null;
+        long start = System.nanoTime();
+        switch (kind) {
+            case GET:
+                value = null;
+                result = map.get(key);
+                break;
+            case PUT:
+                map.put(key, value);
+                break;
+            case PUT_IF_ABSENT:
+                result = map.putIfAbsent(key, value);
+                break;
+            case REMOVE:
+                value = null;
+                map.remove(key);
+                break;
+            case COMPUTE:
+                result = map.compute(key, (k, v) -> apply(v, id));
+                break;
+        }
+        long end = System.nanoTime();
+        return new Op(kind, key, value, result, start, end);
+    }
+
+    // the function of the compute operations, every third one removes
+    private static Integer apply(Integer old, int id) {
+        if (id % 3 == 0)
+            return null;
+        return old == null ? id : old * 31 + id;
+    }
+
+    // the search of Wing and Gong, an operation can go next if it started
+    // before every other remaining operation returned, the states that were
+    // already tried are remembered so that it doesn't blow up on histories
+    // with a lot of overlap
+    private static boolean linearizable(List<Op> ops) {
+        if (ops.size() > 63)
+            throw new IllegalStateException("too many operations on a key");
+        return search(ops, (1L << ops.size()) - 1, null, new HashSet<>());
+    }
+
+    private static boolean search(List<Op> ops, long remaining, Integer state,
+            Set<List<Object>> seen) {
+        if (remaining == 0)
+            return true;
+        if (!seen.add(List.of(remaining, Objects.requireNonNullElse(state, 0),
+                state == null)))
+            return false;
+
+        long minEnd = Long.MAX_VALUE;
+        for (long r = remaining; r != 0; r &= r - 1)
+            minEnd = Math.min(minEnd, ops.get(Long.numberOfTrailingZeros(r)).end);
+
+        for (long r = remaining; r != 0; r &= r - 1) {
+            int i = Long.numberOfTrailingZeros(r);
+            Op op = ops.get(i);
+            if (op.start > minEnd)
+                continue;
+
+            Integer next;
+            switch (op.kind) {
+                case GET:
+                    if (!Objects.equals(op.result, state))
+                        continue;
+                    next = state;
+                    break;
+                case PUT:
+                    next = op.value;
+                    break;
+                case PUT_IF_ABSENT:
+                    if (!Objects.equals(op.result, state))
+                        continue;
+                    next = state == null ? op.value : state;
+                    break;
+                case REMOVE:
+                    next = null;
+                    break;
+                default:
+                    next = apply(state, op.value);
+                    if (!Objects.equals(op.result, next))
+                        continue;
+                    break;
+            }
+            if (search(ops, remaining & ~(1L << i), next, seen))
+                return true;
+        }
+        return false;
+    }
+
+    // --------------------------helpers---------------------------------------
+
+    private interface Task {
+        void run(int thread);
+    }
+
+    // runs the task on every thread at once and waits for all of them
+    private static void run(int threads, Task task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> errors = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+        if (!errors.isEmpty())
+            throw new IllegalStateException(errors.get(0));
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,50 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.Map;
+import map.LinearProbingHashMap;
+import map.PerfectHashMap;
+
+/**
+ * Only lookups, for the maps that are built once and then read, here
+ * readRatio is the ratio of hits, the other lookups are for keys that were
+ * never put, the misses are where PerfectHashMap has to look at the most
+ * levels before it can give up
+ */
+public class LookupBenchmark extends Workload {
+    @Param({"LinearProbingHashMap", "SwissHashMap", "PerfectHashMap"})
+    public String impl;
+
+    private Map<Integer, Integer> map;
+    // size to 2 * size - 1, none of them is in the map
+    private Integer[] missing;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        missing = new Integer[size];
+        for (int i = 0; i < size; i++)
+            missing[i] = size + i;
+
+        if (impl.equals("PerfectHashMap")) {
+            Map<Integer, Integer> source = new LinearProbingHashMap<>();
+            for (int key = 0; key < size; key++)
+                source.put(boxed[key], boxed[key]);
+            map = new PerfectHashMap<>(source);
+        } else {
+            map = Implementations.map(impl);
+            for (int key : KeyDistribution.shuffled(size))
+                map.put(boxed[key], boxed[key]);
+        }
+    }
+
+    @Benchmark
+    public Integer get() {
+        int i = next();
+        return map.get(reads[i] ? boxed[keys[i]] : missing[keys[i]]);
+    }
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.Map;
+
+/**
+ * Reads are get(key), writes remove the key and put it back, which goes
+ * through both the insertion and the deletion path while the map keeps its
+ * size, the count benchmarks bump a counter per key, once with a get and a
+ * put and once with a single merge
+ */
+public class MapBenchmark extends Workload {
+    @Param({
+        "LinearProbingHashMap",
+        "RobinHoodHashMap",
+        "SeparateChainingHashMap",
+        "SwissHashMap",
+        "CuckooHashMap",
+        "IntIntHashMap",
+        "BinarySearchTreeMap",
+        "AVLTreeMap",
+        "RedBlackTreeMap",
+        "BPlusTreeMap",
+        "ExpiringHashMap"
+    })
+    public String impl;
+
+    private Map<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        map = Implementations.map(impl);
+        // insert in random order, sorted input would turn the unbalanced
+        // tree into a linked list
+        for (int key : KeyDistribution.shuffled(size))
+            map.put(boxed[key], boxed[key]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        Integer key = boxed[keys[i]];
+        if (reads[i])
+            return map.get(key);
+
+        map.remove(key);
+        map.put(key, key);
+        return key;
+    }
+
+    @Benchmark
+    public Integer countGetPut() {
+        Integer key = boxed[keys[next()]];
+        Integer count = map.get(key);
+        map.put(key, count == null ? 1 : count + 1);
+        return count;
+    }
+
+    @Benchmark
+    public Integer countMerge() {
+        Integer key = boxed[keys[next()]];
+        return map.merge(key, 1, Integer::sum);
+    }
+}
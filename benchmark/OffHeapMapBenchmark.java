@@ -0,0 +1,69 @@
+package benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import map.MappedHashMap;
+import map.OffHeapHashMap;
+
+/**
+ * Same workload as PrimitiveMapBenchmark, but with the keys and the values
+ * as 8 byte arrays in OffHeapHashMap, through the methods that don't
+ * allocate, the difference to LongLongHashMap is the cost of keeping the
+ * table in direct buffers, MappedHashMap keeps it in a temporary file
+ */
+public class OffHeapMapBenchmark extends Workload {
+    @Param({"OffHeapHashMap", "MappedHashMap"})
+    public String impl;
+
+    private OffHeapHashMap map;
+    private Path file;
+    // reused by every operation, the key is written into it in place
+    private final byte[] key = new byte[8];
+    private final ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+    private final byte[] value = new byte[8];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        prepare();
+        if (impl.equals("MappedHashMap")) {
+            file = Files.createTempFile("benchmark", ".map");
+            map = new MappedHashMap(file, 8, 8);
+        } else {
+            map = new OffHeapHashMap(8, 8);
+        }
+        for (int k : KeyDistribution.shuffled(size)) {
+            keyBuffer.putLong(0, k);
+            map.store(key, key);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        map.close();
+        if (file != null)
+            Files.delete(file);
+    }
+
+    @Benchmark
+    public byte[] mixed() {
+        int i = next();
+        keyBuffer.putLong(0, keys[i]);
+        if (reads[i]) {
+            map.get(key, value);
+            return value;
+        }
+
+        map.remove(key);
+        map.store(key, key);
+        return key;
+    }
+}
@@ -0,0 +1,36 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+
+import map.IntIntHashMap;
+
+/**
+ * Same workload as MapBenchmark, but through the unboxed int overloads of
+ * IntIntHashMap, the difference to the IntIntHashMap run of MapBenchmark is
+ * the cost of boxing
+ */
+public class PrimitiveMapBenchmark extends Workload {
+    private IntIntHashMap map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        map = new IntIntHashMap();
+        for (int key : KeyDistribution.shuffled(size))
+            map.put(key, key);
+    }
+
+    @Benchmark
+    public int mixed() {
+        int i = next();
+        int key = keys[i];
+        if (reads[i])
+            return map.get(key);
+
+        map.remove(key);
+        map.put(key, key);
+        return key;
+    }
+}
@@ -0,0 +1,39 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.PriorityQueue;
+
+/**
+ * Reads are peek(), writes poll the minimum and add a new item whose priority
+ * is drawn from the key distribution, so the zipfian runs have plenty of
+ * duplicate priorities
+ */
+public class PriorityQueueBenchmark extends Workload {
+    @Param({"MinBinaryHeapPriorityQueue", "MeldableHeapPriorityQueue"})
+    public String impl;
+
+    private PriorityQueue<Integer> pq;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        pq = Implementations.priorityQueue(impl);
+        for (int key : KeyDistribution.shuffled(size))
+            pq.add(boxed[key]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        if (reads[i])
+            return pq.peek();
+
+        Integer min = pq.poll();
+        pq.add(boxed[keys[i]]);
+        return min;
+    }
+}
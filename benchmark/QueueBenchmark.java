@@ -0,0 +1,37 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.Queue;
+
+/**
+ * Reads are peek(), writes dequeue the head and enqueue a new item
+ */
+public class QueueBenchmark extends Workload {
+    @Param({"DynamicArrayQueue", "LinkedListQueue"})
+    public String impl;
+
+    private Queue<Integer> queue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        queue = Implementations.queue(impl);
+        for (int i = 0; i < size; i++)
+            queue.enqueue(boxed[i]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        if (reads[i])
+            return queue.peek();
+
+        Integer head = queue.dequeue();
+        queue.enqueue(boxed[keys[i]]);
+        return head;
+    }
+}
@@ -0,0 +1,37 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+import interfaces.Stack;
+
+/**
+ * Reads are peek(), writes pop the top and push a new item
+ */
+public class StackBenchmark extends Workload {
+    @Param({"DynamicArrayStack", "LinkedListStack"})
+    public String impl;
+
+    private Stack<Integer> stack;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        prepare();
+        stack = Implementations.stack(impl);
+        for (int i = 0; i < size; i++)
+            stack.push(boxed[i]);
+    }
+
+    @Benchmark
+    public Integer mixed() {
+        int i = next();
+        if (reads[i])
+            return stack.peek();
+
+        Integer top = stack.pop();
+        stack.push(boxed[keys[i]]);
+        return top;
+    }
+}
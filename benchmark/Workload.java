@@ -0,0 +1,79 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The workload shared by all benchmarks, so that every implementation of an
+ * interface runs through the exact same sequence of operations
+ *
+ * Each benchmark invocation is a single operation, which is a read with the
+ * probability of readRatio, else a write. The keys (or indices/priorities)
+ * are drawn from the distribution over 0 to size-1, the structure is
+ * populated with size elements before the measurement starts and the writes
+ * are designed to keep it at that size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the 10M runs need quite a bit of room for the boxed keys and the nodes
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public abstract class Workload {
+    // the amount of pre-drawn operations, a power of two so that the cursor
+    // can wrap around with a mask
+    private static final int OPS = 1 << 20;
+    private static final int MASK = OPS - 1;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    @Param({"UNIFORM", "ZIPFIAN"})
+    public KeyDistribution distribution;
+
+    @Param({"0.5", "0.9", "1.0"})
+    public double readRatio;
+
+    // boxed 0 to size-1, shared by all operations so that the benchmarks
+    // measure the structures instead of Integer.valueOf
+    protected Integer[] boxed;
+    protected int[] keys;
+    protected boolean[] reads;
+    private int cursor;
+
+    /**
+     * Draws the operations, has to be called by the @Setup of the benchmark
+     * before it populates the structure
+     */
+    protected void prepare() {
+        boxed = new Integer[size];
+        for (int i = 0; i < size; i++)
+            boxed[i] = i;
+
+        keys = distribution.draw(size, OPS);
+        reads = new boolean[OPS];
+        Random rnd = new Random(KeyDistribution.SEED);
+        for (int i = 0; i < OPS; i++)
+            reads[i] = rnd.nextDouble() < readRatio;
+        cursor = 0;
+    }
+
+    /**
+     * @return The index of the next operation in keys and reads
+     */
+    protected int next() {
+        cursor = (cursor + 1) & MASK;
+        return cursor;
+    }
+}
@@ -0,0 +1,47 @@
+package benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates ranks from 0 to n-1 following a zipfian distribution, rank 0 is
+ * the most popular one, based on "Quickly Generating Billion-Record Synthetic
+ * Databases" by Gray et al., which is also what YCSB uses
+ */
+class ZipfianGenerator {
+    // the same skew as YCSB
+    static final double THETA = 0.99;
+
+    private final int n;
+    private final Random rnd;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    ZipfianGenerator(int n, Random rnd) {
+        this.n = n;
+        this.rnd = rnd;
+        this.zetan = zeta(n);
+        this.alpha = 1d / (1d - THETA);
+        this.eta = (1d - Math.pow(2d / n, 1d - THETA)) / (1d - zeta(2) / zetan);
+    }
+
+    int next() {
+        double u = rnd.nextDouble();
+        double uz = u * zetan;
+        if (uz < 1d)
+            return 0;
+        if (uz < 1d + Math.pow(0.5d, THETA))
+            return Math.min(1, n - 1);
+
+        int rank = (int) (n * Math.pow(eta * u - eta + 1d, alpha));
+        return Math.min(rank, n - 1);
+    }
+
+    private static double zeta(int n) {
+        // O(n), but it's only computed once per trial
+        double sum = 0;
+        for (int i = 1; i <= n; i++)
+            sum += 1d / Math.pow(i, THETA);
+        return sum;
+    }
+}
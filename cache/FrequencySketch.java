@@ -0,0 +1,103 @@
+package cache;
+
+// a count-min sketch of how often the keys were used lately, every key has a
+// 4 bit counter in each of 4 rows, picked by 4 different hashes, and its
+// frequency is the smallest of those counters, which can be too high if some
+// other keys share all 4 of its counters, but never too low, 16 counters are
+// packed into a long and the rows share the same array
+//
+// the counters stop at 15 and all of them are halved after every
+// 10 * maxSize increments, so that a key that was popular a while ago loses
+// against the keys that are popular now
+final class FrequencySketch {
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+        0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    // the low 3 bits of every counter, what is left of a counter after it
+    // is shifted right by one
+    private static final long HALF_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    // about one long, so 16 counters, per entry of the cache
+    FrequencySketch(int maxSize) {
+        int length = 1;
+        while (length < maxSize && length < (1 << 30))
+            length <<= 1;
+        table = new long[length];
+        mask = length - 1;
+        sampleSize = (int) Math.min(10L * Math.max(maxSize, 1), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Counts a use of the key, which ages all the counters every now and then
+     *
+     * @param key The key
+     */
+    void increment(Object key) {
+        int h = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long hash = hash(h, i);
+            int index = (int) hash & mask;
+            int shift = counterShift(hash);
+            if (((table[index] >>> shift) & MAX_COUNT) < MAX_COUNT) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++additions == sampleSize)
+            reset();
+    }
+
+    /**
+     * @param key The key
+     * @return The estimated amount of uses of the key since the last aging,
+     *         at most 15
+     */
+    int frequency(Object key) {
+        int h = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long hash = hash(h, i);
+            int count = (int) (table[(int) hash & mask] >>> counterShift(hash))
+                & MAX_COUNT;
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    // halves every counter, the ones that were odd lose the half, so the
+    // additions are only about halved as well
+    private void reset() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & HALF_MASK;
+        additions >>>= 1;
+    }
+
+    // the low bits pick the long and the top 4 bits the counter in it
+    private static long hash(int h, int row) {
+        long hash = (h + SEEDS[row]) * SEEDS[row];
+        return hash + (hash >>> 32);
+    }
+
+    private static int counterShift(long hash) {
+        return (int) (hash >>> 60) << 2;
+    }
+
+    // the finalizer of murmur3, same as map.Hashing, so that keys with
+    // similar hashcodes don't share their counters
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
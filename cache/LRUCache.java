@@ -0,0 +1,197 @@
+package cache;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+import interfaces.Cache;
+import map.LinearProbingHashMap;
+
+// evicts the entry that was used the longest time ago, the entries are the
+// nodes of a doubly linked list in the order of their last use, like the
+// nodes of LinkedListDeque, and a hash map from the keys to their nodes
+// finds a node without walking the list, so every operation is O(1)
+//
+// the node is the only thing that is ever allocated, once per new key, a
+// hit only moves its node to the front of the list
+public class LRUCache<K, V> implements Cache<K, V> {
+    private final LinearProbingHashMap<K, Node> index;
+    // head is the most recently used entry, tail the next one to go
+    private Node head;
+    private Node tail;
+    private long weight;
+    private final long maxWeight;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    // null if nobody listens
+    private final BiConsumer<? super K, ? super V> listener;
+    private long hits;
+    private long misses;
+
+    // the functions that are passed to the index, created once here so that
+    // passing them doesn't allocate anything
+    private final Function<K, Node> newNode = Node::new;
+    private final BiFunction<K, Node, Node> unlinkNode = (key, node) -> {
+        if (node != null)
+            unlink(node);
+        return null;
+    };
+
+    private class Node {
+        K key;
+        // null until the node is linked in by put(...)
+        V value;
+        int weight;
+        Node prev;
+        Node next;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+
+    // holds up to maxSize entries
+    public LRUCache(int maxSize) {
+        this(maxSize, (key, value) -> 1);
+    }
+
+    // holds entries up to a total weight of maxWeight, e.g. the weigher can
+    // return the size of the value in bytes
+    public LRUCache(long maxWeight, ToIntBiFunction<? super K, ? super V> weigher) {
+        this(maxWeight, weigher, null);
+    }
+
+    // the listener is told about every entry that is evicted, but not about
+    // the ones that are removed or replaced
+    public LRUCache(long maxWeight, ToIntBiFunction<? super K, ? super V> weigher,
+            BiConsumer<? super K, ? super V> listener) {
+        if (maxWeight < 0)
+            throw new IllegalArgumentException("negative max weight: " + maxWeight);
+        this.index = new LinearProbingHashMap<>();
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.listener = listener;
+    }
+
+    @Override
+    public V get(K key) {
+        Node node = index.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        moveToFront(node);
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException("null values are not allowed");
+        int w = weigher.applyAsInt(key, value);
+        if (w < 0)
+            throw new IllegalArgumentException("negative weight: " + w);
+
+        // a single lookup, which either finds the node of the key or adds a
+        // new one
+        Node node = index.computeIfAbsent(key, newNode);
+        if (node.value == null) {
+            linkFirst(node);
+        } else {
+            weight -= node.weight;
+            moveToFront(node);
+        }
+        node.value = value;
+        node.weight = w;
+        weight += w;
+        evict();
+    }
+
+    @Override
+    public void remove(K key) {
+        index.compute(key, unlinkNode);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    // drops the least recently used entries until the rest fit, which might
+    // be all of them if the newest one is heavier than maxWeight
+    private void evict() {
+        while (weight > maxWeight) {
+            Node victim = tail;
+            index.remove(victim.key);
+            unlink(victim);
+            if (listener != null)
+                listener.accept(victim.key, victim.value);
+        }
+    }
+
+    private void moveToFront(Node node) {
+        if (node == head)
+            return;
+
+        // the node isn't the head, so it has a prev
+        node.prev.next = node.next;
+        if (node == tail)
+            tail = node.prev;
+        else
+            node.next.prev = node.prev;
+        node.prev = null;
+        node.next = head;
+        head.prev = node;
+        head = node;
+    }
+
+    private void linkFirst(Node node) {
+        node.next = head;
+        // special case when the list is empty
+        if (head == null)
+            tail = node;
+        else
+            head.prev = node;
+        head = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev == null)
+            head = node.next;
+        else
+            node.prev.next = node.next;
+        if (node.next == null)
+            tail = node.prev;
+        else
+            node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+        weight -= node.weight;
+    }
+
+    @Override
+    public long hits() {
+        return hits;
+    }
+
+    @Override
+    public long misses() {
+        return misses;
+    }
+
+    @Override
+    public long weight() {
+        return weight;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+}
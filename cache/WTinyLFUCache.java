@@ -0,0 +1,239 @@
+package cache;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Cache;
+import map.LinearProbingHashMap;
+
+// window tinylfu, the eviction policy of caffeine, LRUCache evicts the least
+// recently used entry no matter how often it was used before, so a single
+// scan over keys that are never used again flushes out all the popular ones,
+// this cache only lets a new key in if it's used more often than the entry
+// it would replace
+//
+// the entries are split into three lru lists:
+// - window: 1% of the entries, every new key starts here, so that a key that
+//   is used a few times in a row gets its hits before it has to prove itself
+// - probation: the keys that fell out of the window, a key that is used
+//   again here moves on to protected
+// - protected: 80% of the rest, the keys that were used more than once, the
+//   least recently used ones are moved back to probation
+// when an entry falls out of the window while the other two lists are full,
+// a FrequencySketch decides whether it replaces the least recently used key
+// of probation or is evicted itself
+//
+// like LRUCache, a hash map finds the nodes and the lists are linked through
+// the nodes themselves, so a hit doesn't allocate anything
+public class WTinyLFUCache<K, V> implements Cache<K, V> {
+    private final LinearProbingHashMap<K, Node> index;
+    private final FrequencySketch sketch;
+    private final LRUList window = new LRUList();
+    private final LRUList probation = new LRUList();
+    private final LRUList protectedList = new LRUList();
+    private final int maxSize;
+    private final int maxWindowSize;
+    private final int maxProtectedSize;
+    // null if nobody listens
+    private final BiConsumer<? super K, ? super V> listener;
+    private long hits;
+    private long misses;
+
+    // same as in LRUCache, passing these to the index doesn't allocate
+    private final Function<K, Node> newNode = Node::new;
+    private final BiFunction<K, Node, Node> unlinkNode = (key, node) -> {
+        if (node != null)
+            node.list.remove(node);
+        return null;
+    };
+
+    private class Node {
+        K key;
+        // null until the node is linked in by put(...)
+        V value;
+        // the list the node is in
+        LRUList list;
+        Node prev;
+        Node next;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+
+    // head is the most recently used entry
+    private class LRUList {
+        Node head;
+        Node tail;
+        int size;
+
+        void addFirst(Node node) {
+            node.list = this;
+            node.prev = null;
+            node.next = head;
+            // special case when the list is empty
+            if (head == null)
+                tail = node;
+            else
+                head.prev = node;
+            head = node;
+            size++;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null)
+                head = node.next;
+            else
+                node.prev.next = node.next;
+            if (node.next == null)
+                tail = node.prev;
+            else
+                node.next.prev = node.prev;
+            node.list = null;
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToFront(Node node) {
+            if (node == head)
+                return;
+
+            remove(node);
+            addFirst(node);
+        }
+    }
+
+    // holds up to maxSize entries
+    public WTinyLFUCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    // the listener is told about every entry that is evicted, or wasn't let
+    // in, but not about the ones that are removed or replaced
+    public WTinyLFUCache(int maxSize, BiConsumer<? super K, ? super V> listener) {
+        if (maxSize < 0)
+            throw new IllegalArgumentException("negative max size: " + maxSize);
+        this.index = new LinearProbingHashMap<>();
+        this.sketch = new FrequencySketch(maxSize);
+        this.maxSize = maxSize;
+        this.maxWindowSize = maxSize == 0 ? 0 : Math.max(1, maxSize / 100);
+        this.maxProtectedSize = (maxSize - maxWindowSize) * 4 / 5;
+        this.listener = listener;
+    }
+
+    @Override
+    public V get(K key) {
+        Node node = index.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        sketch.increment(key);
+        onAccess(node);
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException("null values are not allowed");
+
+        sketch.increment(key);
+        Node node = index.computeIfAbsent(key, newNode);
+        if (node.value != null) {
+            node.value = value;
+            onAccess(node);
+            return;
+        }
+        node.value = value;
+        window.addFirst(node);
+        evict();
+    }
+
+    @Override
+    public void remove(K key) {
+        index.compute(key, unlinkNode);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    private void onAccess(Node node) {
+        if (node.list != probation) {
+            node.list.moveToFront(node);
+            return;
+        }
+        // the second use of a key in the main part of the cache protects it
+        probation.remove(node);
+        protectedList.addFirst(node);
+        if (protectedList.size > maxProtectedSize) {
+            Node demoted = protectedList.tail;
+            protectedList.remove(demoted);
+            probation.addFirst(demoted);
+        }
+    }
+
+    // moves the entries that don't fit into the window over to probation,
+    // once the cache is full every one of them has to beat the entry that
+    // probation would evict next
+    private void evict() {
+        while (window.size > maxWindowSize) {
+            Node candidate = window.tail;
+            window.remove(candidate);
+            if (probation.size + protectedList.size < maxSize - maxWindowSize) {
+                probation.addFirst(candidate);
+                continue;
+            }
+
+            // probation is only empty if everything is protected
+            Node victim = probation.tail != null ? probation.tail : protectedList.tail;
+            // a tie goes to the victim, a new key has to be more popular
+            // than the one it replaces, not just as popular
+            if (victim != null
+                    && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                victim.list.remove(victim);
+                drop(victim);
+                probation.addFirst(candidate);
+            } else {
+                drop(candidate);
+            }
+        }
+    }
+
+    private void drop(Node node) {
+        index.remove(node.key);
+        if (listener != null)
+            listener.accept(node.key, node.value);
+    }
+
+    @Override
+    public long hits() {
+        return hits;
+    }
+
+    @Override
+    public long misses() {
+        return misses;
+    }
+
+    // every entry weighs 1
+    @Override
+    public long weight() {
+        return size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+}
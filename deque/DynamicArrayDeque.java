@@ -32,7 +32,8 @@ public class DynamicArrayDeque<T> implements Deque<T> {
     public void addFirst(T item) {
         // special case when the deque is empty, moves the tail instead of head
         if (isEmpty()) {
-            deque[tail++] = item;
+            deque[tail] = item;
+            tail = (tail + 1) % deque.length;
             size++;
             return;
         }
@@ -77,11 +78,11 @@ public class DynamicArrayDeque<T> implements Deque<T> {
         
         if (deque.length * SHRINK_THRESHOLD > size)
             deque = resize(deque, SHRINK_FACTOR);
-        // the tail is always pointing to where the element would be next
-        T value = deque[tail-1];
-        deque[tail-1] = null;
+        // the tail is always pointing to where the element would be next,
         // floorMod due to modulos doesn't work well with negative numbers
         tail = Math.floorMod(tail-1, deque.length);
+        T value = deque[tail];
+        deque[tail] = null;
         size--;
         return value;
     }
@@ -99,7 +100,8 @@ public class DynamicArrayDeque<T> implements Deque<T> {
         if (isEmpty())
             return null;
 
-        return deque[tail-1];
+        // the tail might have wrapped around to 0
+        return deque[Math.floorMod(tail-1, deque.length)];
     }  
     
     @Override
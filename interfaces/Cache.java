@@ -0,0 +1,69 @@
+package interfaces;
+
+public interface Cache<K,V> {
+    /**
+     * Finds the value of the key and counts the lookup as a hit or a miss,
+     * a hit also tells the cache that the key was used
+     *
+     * @param key The key
+     * @return The value associated with the key if the key is in the cache,
+     *         else null
+     */
+    V get(K key);
+
+    /**
+     * Associates a value with a key, which might evict other entries, or
+     * even the entry itself if it doesn't fit
+     *
+     * @param key   The key
+     * @param value The value associated to the key, must not be null
+     */
+    void put(K key, V value);
+
+    /**
+     * Removes the key-value entry from the cache, if such key exists, this
+     * doesn't count as an eviction
+     *
+     * @param key The key
+     */
+    void remove(K key);
+
+    /**
+     * Checks whether or not the key is in the cache, unlike get(key) this
+     * neither counts as a hit or a miss nor as a use of the key
+     *
+     * @param key The specified key
+     * @return true if the specified key is in the cache, else false
+     */
+    boolean containsKey(K key);
+
+    /**
+     * @return The amount of lookups that found their key
+     */
+    long hits();
+
+    /**
+     * @return The amount of lookups that didn't find their key
+     */
+    long misses();
+
+    /**
+     * Sums up the weights of the entries, which is the same as size() unless
+     * the cache weighs its entries
+     *
+     * @return The total weight of the entries in the cache
+     */
+    long weight();
+
+    /**
+     * @return true if size() == 0 else false
+     */
+    boolean isEmpty();
+
+    /**
+     * Counts the amount of entries the cache contains
+     *
+     * @return The amount of entries in the cache
+     */
+    int size();
+}
@@ -1,13 +1,70 @@
 package interfaces;
 
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 public interface Map<K,V> {
     /**
      * Associates a value with a key and stores the key-value entry
      * 
      * @param key   The key
      * @param value The value associated to the key
+     * @return The value that was associated with the key before, or null if
+     *         the key didn't exist
+     */
+    V put(K key, V value);
+
+    /**
+     * Associates a value with a key, unless the key already has a value,
+     * a key that is associated with null counts as not having one
+     *
+     * @param key   The key
+     * @param value The value associated to the key
+     * @return The value that was associated with the key before, or null if
+     *         the key didn't exist, in which case the value was put
+     */
+    V putIfAbsent(K key, V value);
+
+    /**
+     * Replaces the value of a key with the result of the function, unlike a
+     * get(key) followed by a put(key, value) the map is only searched once,
+     * the function must not modify the map
+     *
+     * @param key      The key
+     * @param function Computes the new value from the key and the current
+     *                 value, the current value is null if the key doesn't
+     *                 exist, returning null removes the key
+     * @return The new value, or null if the key was removed
+     */
+    V compute(K key, BiFunction<? super K, ? super V, ? extends V> function);
+
+    /**
+     * Associates the result of the function with the key, if the key
+     * doesn't have a value yet, same as compute(key, function) the map is
+     * only searched once and the function must not modify the map
+     *
+     * @param key      The key
+     * @param function Computes the value from the key, returning null leaves
+     *                 the map unchanged
+     * @return The current value of the key, which is the computed one if
+     *         the key didn't have a value
      */
-    void put(K key, V value);
+    V computeIfAbsent(K key, Function<? super K, ? extends V> function);
+
+    /**
+     * Combines the value with the current value of the key, or associates
+     * the value with the key if it doesn't have one, e.g. merge(key, 1,
+     * Integer::sum) counts the key, the map is only searched once and the
+     * function must not modify the map
+     *
+     * @param key      The key
+     * @param value    The value to combine with, must not be null
+     * @param function Computes the new value from the current value and the
+     *                 value, returning null removes the key
+     * @return The new value, or null if the key was removed
+     */
+    V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function);
 
     /**
      * Finds the value associated with the specified key
@@ -17,6 +74,17 @@ public interface Map<K,V> {
      */
     V get(K key);
 
+    /**
+     * Same as get(key), but tells a key that doesn't exist apart from a key
+     * that is associated with null
+     *
+     * @param key          The key
+     * @param defaultValue The value to return if the key doesn't exist
+     * @return The value associated with the key if the key exists, else the
+     *         default value
+     */
+    V getOrDefault(K key, V defaultValue);
+
     /**
      * Removes the key-value entry from the map, if such key exists
      * 
@@ -40,6 +108,29 @@ public interface Map<K,V> {
      */
     Iterable<K> keys();
 
+    /**
+     * Creates a cursor over the entries of the map, which walks the
+     * underlying table or tree directly, so unlike an iterator nothing is
+     * allocated per entry, the order of the entries is up to the
+     * implementation and the map must not be modified while the cursor is in
+     * use, unless the implementation is thread-safe
+     *
+     * @return A cursor positioned before the first entry
+     */
+    MapCursor<K,V> cursor();
+
+    /**
+     * Runs the action on every entry of the map, in the same order as
+     * cursor(), the map must not be modified by the action
+     *
+     * @param action The action, which takes the key and the value
+     */
+    default void forEach(BiConsumer<? super K, ? super V> action) {
+        MapCursor<K,V> cursor = cursor();
+        while (cursor.advance())
+            action.accept(cursor.key(), cursor.value());
+    }
+
     /**
      * @return true if size() == 0 else false
      */
@@ -0,0 +1,28 @@
+package interfaces;
+
+public interface MapCursor<K,V> {
+    /**
+     * Moves the cursor to the next entry, a new cursor starts before the
+     * first entry, so this has to be called before key() and value()
+     *
+     * @return true if the cursor is at an entry, false if there are no more
+     *         entries
+     */
+    boolean advance();
+
+    /**
+     * Retrieves the key of the entry the cursor is at, only valid after
+     * advance() returned true
+     *
+     * @return The key of the current entry
+     */
+    K key();
+
+    /**
+     * Retrieves the value of the entry the cursor is at, only valid after
+     * advance() returned true
+     *
+     * @return The value of the current entry
+     */
+    V value();
+}
@@ -32,4 +32,80 @@ public interface OrderedMap<K,V> extends Map<K,V> {
      *         key, if no such key exists, return null
      */
     K ceilingKey(K key);
+
+    /**
+     * Retrieves an iterable over the keys between lo and hi, both included,
+     * in ascending order, the keys are found while iterating, so the first
+     * k of them cost O(log n + k) no matter how big the map is
+     * 
+     * @param lo The smallest key of the range
+     * @param hi The biggest key of the range
+     * @return The iterable of the keys in the range, empty if lo is bigger
+     *         than hi
+     */
+    Iterable<K> keys(K lo, K hi);
+
+    /**
+     * Retrieves an iterable over the keys that are smaller than or equal to
+     * the specified key, in ascending order
+     * 
+     * @param hi The biggest key of the range
+     * @return The iterable of the keys in the range
+     */
+    Iterable<K> headKeys(K hi);
+
+    /**
+     * Retrieves an iterable over the keys that are bigger than or equal to
+     * the specified key, in ascending order
+     * 
+     * @param lo The smallest key of the range
+     * @return The iterable of the keys in the range
+     */
+    Iterable<K> tailKeys(K lo);
+
+    /**
+     * Retrieves an iterable over all keys, from the biggest to the smallest
+     * 
+     * @return The iterable of the keys in descending order
+     */
+    Iterable<K> descendingKeys();
+
+    /**
+     * Same as keys(lo, hi), but from hi down to lo
+     * 
+     * @param lo The smallest key of the range
+     * @param hi The biggest key of the range
+     * @return The iterable of the keys in the range in descending order
+     */
+    Iterable<K> descendingKeys(K lo, K hi);
+
+    /**
+     * Counts the keys that are smaller than the specified key, which is the
+     * index the key has, or would have, in ascending order
+     * 
+     * @param key The specified key, which doesn't have to be in the map
+     * @return The amount of keys smaller than the key
+     */
+    int rank(K key);
+
+    /**
+     * Retrieves the key at the index in ascending order, the opposite of
+     * rank(key)
+     * 
+     * @param index The index, 0 is the smallest key
+     * @return The key with rank(key) == index
+     * @throws IndexOutOfBoundsException if the index is negative or not
+     *         smaller than size()
+     */
+    K select(int index);
+
+    /**
+     * Counts the keys between lo and hi, both included, without walking
+     * over them like keys(lo, hi)
+     * 
+     * @param lo The smallest key of the range
+     * @param hi The biggest key of the range
+     * @return The amount of keys in the range, 0 if lo is bigger than hi
+     */
+    int count(K lo, K hi);
 }
@@ -1,14 +1,27 @@
 package map;
 
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+import interfaces.MapCursor;
 import interfaces.OrderedMap;
-import list.DynamicArrayList;
 
 public class AVLTreeMap<K extends Comparable<K>,V>
     implements OrderedMap<K,V>
 {
     private Node root;
+    // the nodes on the way down to the node that is added or removed, which
+    // are balanced on the way back up, so that nothing is recursive, an avl
+    // tree is at most 1.44 * log2(n) high, so 64 is enough for any int size
+    @SuppressWarnings("unchecked")
+    private final Node[] path = (Node[]) Array.newInstance(Node.class, 64);
+    // bumped by every operation that fills the path, so that compute(...)
+    // can tell whether its function used the map, which overwrote the path
+    private int modCount;
 
     private class Node {
         K key;
@@ -26,110 +39,208 @@ public class AVLTreeMap<K extends Comparable<K>,V>
     }
 
     @Override
-    public void put(K key, V value) {
-        root = put(key, value, root);
+    public V put(K key, V value) {
+        modCount++;
+        // first we run the basic BST insertion algorithm
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                // update the current value, nothing changes shape
+                clearPath(depth);
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        insert(depth, new Node(key, value, 1, 1));
+        return null;
     }
 
-    private Node put(K key, V value, Node node) {
-        if (node == null)
-            return new Node(key, value, 1, 1);
-        // first we run the basic BST insertion algorithm
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            // if key < node.key
-            node.left = put(key, value, node.left);
-        else if (cmp > 0)
-            // if key > node.key
-            node.right = put(key, value, node.right);
-        else
-            // else update the current value
-            node.value = value;
-        // balance the node to keep the invariant
-        return balance(node);
+    @Override
+    public V putIfAbsent(K key, V value) {
+        modCount++;
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                clearPath(depth);
+                V previous = node.value;
+                if (previous == null)
+                    node.value = value;
+                return previous;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        insert(depth, new Node(key, value, 1, 1));
+        return null;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int expected = ++modCount;
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                break;
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+
+        V value = function.apply(key, node == null ? null : node.value);
+        if (modCount != expected) {
+            clearPath(depth);
+            throw new ConcurrentModificationException(
+                "the function changed the map");
+        }
+        if (node == null && value != null) {
+            // the key doesn't exist, it's added right here
+            insert(depth, new Node(key, value, 1, 1));
+        } else if (node != null && value == null) {
+            removeNode(depth, node);
+        } else {
+            clearPath(depth);
+            if (node != null)
+                node.value = value;
+        }
+        return value;
+    }
+
+    // the rest are compute(...) with a different function, the tree is
+    // still only searched once
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        return compute(key, (k, old) -> old == null ? function.apply(k) : old);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        return compute(key,
+            (k, old) -> old == null ? value : function.apply(old, value));
     }
 
     @Override
     public void remove(K key) {
-        if (!containsKey(key))
+        modCount++;
+        // first we run the basic BST deletion algorithm
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                // found the key to be removed
+                removeNode(depth, node);
+                return;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        // the key doesn't exist
+        clearPath(depth);
+    }
+
+    // links the node of a new key below the last node of the path and
+    // balances the path
+    private void insert(int depth, Node node) {
+        if (depth == 0) {
+            root = node;
             return;
+        }
+        Node parent = path[depth - 1];
+        if (node.key.compareTo(parent.key) < 0)
+            parent.left = node;
+        else
+            parent.right = node;
+        rebalance(depth);
+    }
+
+    // removes the node below the last node of the path and balances the
+    // path, a node with two children takes over the key and the value of
+    // its predecessor, a.k.a. the biggest key in the left subtree, and the
+    // predecessor is removed instead, which has no right child
+    private void removeNode(int depth, Node node) {
+        if (node.left != null && node.right != null) {
+            path[depth++] = node;
+            Node predecessor = node.left;
+            while (predecessor.right != null) {
+                path[depth++] = predecessor;
+                predecessor = predecessor.right;
+            }
+            node.key = predecessor.key;
+            node.value = predecessor.value;
+            node = predecessor;
+        }
+        // the node has one or no children, so we just assign the other one
+        replace(depth, node, node.left != null ? node.left : node.right);
+        rebalance(depth);
+    }
 
-        if (!isEmpty())
-            root = remove(key, root);
+    // points the last node of the path, or the root if the path is empty,
+    // to the new child instead of the old one
+    private void replace(int depth, Node old, Node child) {
+        if (depth == 0) {
+            root = child;
+            return;
+        }
+        Node parent = path[depth - 1];
+        if (parent.left == old)
+            parent.left = child;
+        else
+            parent.right = child;
     }
 
-    private Node remove(K key, Node node) {
-        if (node == null)
-            return null;
-        // first we run the basic BST deletion algorithm
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            node.left = remove(key, node.left);
-        else if (cmp > 0)
-            node.right = remove(key, node.right);
-        else {
-            // found the key to be removed
-            if (node.right == null)
-                // the case when the node to be removed only has one or no
-                // children, so we just assign the other sibling
-                return node.left;
-            else if (node.left == null)
-                return node.right;
-            // else the node to be removed has two children then we removed it
-            // by replace it with its successor, first we save the node
-            Node t = node;
-            // find its successor, a.k.a. the biggest key in the left subtree,
-            // or the smallest key in the right subtree, and replace it with
-            // the node to be removed
-            node = maxKey(node.left);
-            // remove the maxKey from the old left tree
-            node.left = removeMax(t.left);
-            // simply assign the old right tree to the new node
-            node.right = t.right;
+    // balances the nodes of the path from the bottom up, every one of them
+    // is replaced in its parent by the root that balance(node) returns
+    private void rebalance(int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            Node node = path[i];
+            path[i] = null;
+            replace(i, node, balance(node));
         }
-        // balance the node to keep the invariant
-        return balance(node);
+    }
+
+    // forgets the path of an operation that didn't change the shape of the
+    // tree, so that it doesn't keep the nodes alive
+    private void clearPath(int depth) {
+        Arrays.fill(path, 0, depth, null);
     }
 
     public void removeMax() {
         if (isEmpty())
             throw new NoSuchElementException();
 
-        root = removeMax(root);
-    }
-
-    private Node removeMax(Node node) {
-        // same as the BST removeMax(node), except it also updates the height
-        if (node.right == null)
-            // removing the maximum by assigning the left node as the right
-            // node of the parent of the node
-            return node.left;
-        // assuming this is the last step, also when node.right.right == null,
-        // then we just assign node.right.left to node.right, irrelevant of
-        // node.right.left is null or not, the link to node.right.right is
-        // automatically served
-        node.right = removeMax(node.right);
-        // update the size/height
-        updateHeight(node);
-        updateSize(node);
-        return node;
+        // same as the BST removeMax(), except the path is balanced afterwards
+        modCount++;
+        int depth = 0;
+        Node node = root;
+        while (node.right != null) {
+            path[depth++] = node;
+            node = node.right;
+        }
+        replace(depth, node, node.left);
+        rebalance(depth);
     }
 
     public void removeMin() {
         if (isEmpty())
             throw new NoSuchElementException();
 
-        root = removeMin(root);
-    }
-
-    private Node removeMin(Node node) {
-        // same as the BST removeMin(node), except it also updates the height
-        if (node.left == null)
-            return node.right;
-        
-        node.left = removeMin(node.left);
-        updateHeight(node);
-        updateSize(node);
-        return node;
+        modCount++;
+        int depth = 0;
+        Node node = root;
+        while (node.left != null) {
+            path[depth++] = node;
+            node = node.left;
+        }
+        replace(depth, node, node.right);
+        rebalance(depth);
     }
 
     private Node rotateLeft(Node node) {
@@ -214,16 +325,21 @@ public class AVLTreeMap<K extends Comparable<K>,V>
 
     @Override
     public V get(K key) {
-        Node result = searchKey(key, root);
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        Node result = searchKey(key);
         if (result == null)
-            return null;
+            return defaultValue;
 
         return result.value;
     }
 
     @Override
     public boolean containsKey(K key) {
-        return searchKey(key, root) != null;
+        return searchKey(key) != null;
     }
 
     @Override
@@ -231,16 +347,12 @@ public class AVLTreeMap<K extends Comparable<K>,V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        return minKey(root).key;
-    }
-
-    private Node minKey(Node node) {
-        // keep recursively traversing the left node until it's null,
-        // then the lastest non-null node is the minimum key
-        if (node.left != null)
-            return minKey(node.left);
-
-        return node;
+        // keep traversing the left node until it's null, then the lastest
+        // non-null node is the minimum key
+        Node node = root;
+        while (node.left != null)
+            node = node.left;
+        return node.key;
     }
 
     @Override
@@ -248,80 +360,111 @@ public class AVLTreeMap<K extends Comparable<K>,V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        return maxKey(root).key;
+        // same with the right node
+        Node node = root;
+        while (node.right != null)
+            node = node.right;
+        return node.key;
     }
 
-    private Node maxKey(Node node) {
-        // keep recursively traversing the right node until it's null,
-        // then the lastest non-null node is the maximum key
-        if (node.right != null)
-            return maxKey(node.right);
-
-        return node;
+    @Override
+    public K floorKey(K key) {
+        // the last node on the way down whose key is smaller is the floor,
+        // unless the key itself is found
+        Node floor = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                // if key == node.key, we have found the floor
+                return node.key;
+            if (cmp < 0) {
+                // if key < node.key, keep looking in the left subtree, the
+                // floor cannot be in the right tree
+                node = node.left;
+            } else {
+                // else key > node.key, the node is the floor unless there is
+                // a better one in the right subtree
+                floor = node;
+                node = node.right;
+            }
+        }
+        return floor == null ? null : floor.key;
     }
 
     @Override
-    public K floorKey(K key) {
-        Node result = floorKey(key, root);
-        if (result == null)
-            return null;
-        return result.key;
+    public K ceilingKey(K key) {
+        // almost identical to floorKey(key) but with left and right, < and >
+        // interchanged
+        Node ceiling = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node.key;
+            if (cmp > 0) {
+                node = node.right;
+            } else {
+                ceiling = node;
+                node = node.left;
+            }
+        }
+        return ceiling == null ? null : ceiling.key;
     }
 
-    private Node floorKey(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0)
-            // if key == node.key, we have found the floor
-            return node;
-        else if (cmp < 0)
-            // if key < node.key, keep looking in the left subtree, the floor
-            // cannot be in the right tree
-            return floorKey(key, node.left);
-        
-        // else key > node.key, the floor might be in the right subtree
-        Node right = floorKey(key, node.right);
-        if (right != null)
-            // found the floor in the right subtree
-            return right;
-        // else the floor is not in the right subtree, then current node is
-        // the floor
-        return node;
+    @Override
+    public int rank(K key) {
+        return countBelow(key, false);
     }
 
     @Override
-    public K ceilingKey(K key) {
-        Node result = ceilingKey(key, root);
-        if (result == null)
-            return null;
-        return result.key;
+    public K select(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException();
+
+        // the size of the left subtree is the rank of the node within its
+        // subtree, so go left if the index is smaller, and right without the
+        // keys of the left subtree and the node if it's bigger
+        Node node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index > left) {
+                index -= left + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
     }
 
-    private Node ceilingKey(K key, Node node) {
-        // almost identical to floorKey(key,node) but with left and right,
-        // < and > interchanged
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0)
-            // if key == node.key, we have found the ceiling
-            return node;
-        else if (cmp > 0)
-            // if key > node.key, keep looking in the right subtree, the ceiling
-            // cannot be in the left tree
-            return ceilingKey(key, node.right);
-        
-        // else key < node.key, the floor might be in the left subtree
-        Node left = ceilingKey(key, node.left);
-        if (left != null)
-            // found the floor in the right subtree
-            return left;
-        // else the floor is not in the right subtree, then current node is
-        // the floor
-        return node;
+    @Override
+    public int count(K lo, K hi) {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    // the amount of keys smaller than the key, or smaller than or equal to it
+    // if inclusive, every step to the right passes the node and its left
+    // subtree
+    private int countBelow(K key, boolean inclusive) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return count + size(node.left) + (inclusive ? 1 : 0);
+            }
+        }
+        return count;
     }
 
     @Override
@@ -343,33 +486,122 @@ public class AVLTreeMap<K extends Comparable<K>,V>
 
     @Override
     public Iterable<K> keys() {
-        DynamicArrayList<K> list = new DynamicArrayList<>();
-        inorder(root, list);
-        return list;
+        return Cursors.keys(this);
     }
 
-    private Node searchKey(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            // if key < node.key
-            return searchKey(key, node.left);
-        else if (cmp > 0)
-            // if key > node.key
-            return searchKey(key, node.right);
-        else
-            return node;
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, false));
     }
 
-    private void inorder(Node node, DynamicArrayList<K> list) {
-        if (node == null)
-            return;
-        // recursively traverse from the node in an sorted order from the left
-        // child to the parent to the right child over all nodes
-        inorder(node.left, list);
-        list.add(node.key);
-        inorder(node.right, list);
+    @Override
+    public Iterable<K> headKeys(K hi) {
+        return Cursors.keys(() -> new Cursor(null, hi, false));
+    }
+
+    @Override
+    public Iterable<K> tailKeys(K lo) {
+        return Cursors.keys(() -> new Cursor(lo, null, false));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys() {
+        return Cursors.keys(() -> new Cursor(null, null, true));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, true));
+    }
+
+    @Override
+    public MapCursor<K,V> cursor() {
+        return new Cursor(null, null, false);
+    }
+
+    // the same walk as the cursor of BinarySearchTreeMap, the bounds are
+    // null if the range is open on that side
+    private class Cursor implements MapCursor<K,V> {
+        private final K lo;
+        private final K hi;
+        private final boolean descending;
+        private Object[] stack = new Object[32];
+        private int depth;
+        private Node current;
+
+        Cursor(K lo, K hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            // like push(root), but without the nodes in front of the range
+            // and the subtrees on their near side
+            Node node = root;
+            while (node != null) {
+                if (descending ? isAbove(node.key) : isBelow(node.key)) {
+                    node = descending ? node.left : node.right;
+                } else {
+                    push(node);
+                    node = descending ? node.right : node.left;
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean advance() {
+            if (depth == 0)
+                return false;
+
+            current = (Node) stack[--depth];
+            if (descending ? isBelow(current.key) : isAbove(current.key)) {
+                // every key after this one is past the range too
+                depth = 0;
+                return false;
+            }
+            for (Node node = descending ? current.left : current.right;
+                    node != null; node = descending ? node.right : node.left)
+                push(node);
+            return true;
+        }
+
+        private void push(Node node) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, 2 * depth);
+            stack[depth++] = node;
+        }
+
+        private boolean isBelow(K key) {
+            return lo != null && key.compareTo(lo) < 0;
+        }
+
+        private boolean isAbove(K key) {
+            return hi != null && key.compareTo(hi) > 0;
+        }
+
+        @Override
+        public K key() {
+            return current.key;
+        }
+
+        @Override
+        public V value() {
+            return current.value;
+        }
+    }
+
+    private Node searchKey(K key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0)
+                // if key < node.key
+                node = node.left;
+            else if (cmp > 0)
+                // if key > node.key
+                node = node.right;
+            else
+                return node;
+        }
+        return null;
     }
 }
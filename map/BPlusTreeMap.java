@@ -0,0 +1,710 @@
+package map;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.MapCursor;
+import interfaces.OrderedMap;
+
+// a b+ tree, the binary trees visit a node per comparison, and every node is
+// usually a cache miss of its own, the nodes here hold up to fanout keys in
+// one array, so a lookup only visits log_fanout(n) nodes and does the binary
+// search within a node on keys that are next to each other in memory
+//
+// all entries are in the leaves, the inner nodes only hold separators that
+// tell the children apart, every node but the root is at least half full,
+// and the leaves are linked in both directions, so a range scan walks the
+// arrays of one leaf after another instead of going up and down the tree
+//
+// the inner nodes also know the amount of keys below each of their children,
+// which is what rank(key) and select(index) need
+@SuppressWarnings("unchecked")
+public class BPlusTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+    private final int fanout;
+    // the least amount of keys in a leaf, or children of an inner node,
+    // except for the root
+    private final int minSize;
+    private Node root;
+    // the ends of the list of leaves
+    private Leaf first;
+    private Leaf last;
+    private int size;
+    // the inner nodes on the way down to the leaf of a write, and the index
+    // of the child that was taken in each of them
+    private final Inner[] path = new Inner[MAX_HEIGHT];
+    private final int[] slots = new int[MAX_HEIGHT];
+
+    private static final int DEFAULT_FANOUT = 64;
+    // every node below the root has at least 2 entries, so more than 32
+    // levels would take more than 2^31 keys
+    private static final int MAX_HEIGHT = 32;
+
+    private abstract static class Node {
+        // the keys of a leaf, or the separators of an inner node, where
+        // keys[i] is the smallest key that may be below children[i + 1]
+        final Object[] keys;
+        // the amount of keys of a leaf, or of children of an inner node
+        int size;
+
+        Node(int length) {
+            keys = new Object[length];
+        }
+    }
+
+    // the arrays have room for one more entry than the fanout, a node that
+    // overflows is split right after the insert
+    private static final class Leaf extends Node {
+        final Object[] values;
+        Leaf prev;
+        Leaf next;
+
+        Leaf(int fanout) {
+            super(fanout + 1);
+            values = new Object[fanout + 1];
+        }
+    }
+
+    private static final class Inner extends Node {
+        final Node[] children;
+        // the amount of keys below every child
+        final int[] counts;
+
+        Inner(int fanout) {
+            super(fanout);
+            children = new Node[fanout + 1];
+            counts = new int[fanout + 1];
+        }
+    }
+
+    public BPlusTreeMap() {
+        this(DEFAULT_FANOUT);
+    }
+
+    // the fanout is the most keys a leaf holds and the most children an inner
+    // node has, 32 to 128 keeps the tree at a handful of levels even for
+    // millions of keys, without making the search in a node too long
+    public BPlusTreeMap(int fanout) {
+        if (fanout < 4)
+            throw new IllegalArgumentException("fanout below 4: " + fanout);
+        this.fanout = fanout;
+        this.minSize = fanout / 2;
+        Leaf leaf = new Leaf(fanout);
+        root = leaf;
+        first = leaf;
+        last = leaf;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int depth = descend(key);
+        Leaf leaf = leafAt(depth);
+        int index = indexOf(leaf, key);
+        if (index >= 0) {
+            clearPath(depth);
+            V previous = (V) leaf.values[index];
+            leaf.values[index] = value;
+            return previous;
+        }
+        insert(depth, leaf, -index - 1, key, value);
+        return null;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        int depth = descend(key);
+        Leaf leaf = leafAt(depth);
+        int index = indexOf(leaf, key);
+        if (index >= 0) {
+            clearPath(depth);
+            V previous = (V) leaf.values[index];
+            if (previous == null)
+                leaf.values[index] = value;
+            return previous;
+        }
+        insert(depth, leaf, -index - 1, key, value);
+        return null;
+    }
+
+    // the deletes work from the leaf upwards, so unlike in RedBlackTreeMap
+    // the key can be removed right where the search ended
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int depth = descend(key);
+        Leaf leaf = leafAt(depth);
+        int index = indexOf(leaf, key);
+        V value = function.apply(key, index >= 0 ? (V) leaf.values[index] : null);
+        if (index < 0) {
+            if (value != null)
+                insert(depth, leaf, -index - 1, key, value);
+            else
+                clearPath(depth);
+        } else if (value == null) {
+            delete(depth, leaf, index);
+        } else {
+            clearPath(depth);
+            leaf.values[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        return compute(key, (k, old) -> old == null ? function.apply(k) : old);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        return compute(key,
+            (k, old) -> old == null ? value : function.apply(old, value));
+    }
+
+    @Override
+    public void remove(K key) {
+        int depth = descend(key);
+        Leaf leaf = leafAt(depth);
+        int index = indexOf(leaf, key);
+        if (index >= 0)
+            delete(depth, leaf, index);
+        else
+            clearPath(depth);
+    }
+
+    // walks down to the leaf of the key and records the way in path and
+    // slots, returns the depth of the leaf
+    private int descend(K key) {
+        int depth = 0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int slot = childIndex(inner, key);
+            path[depth] = inner;
+            slots[depth++] = slot;
+            node = inner.children[slot];
+        }
+        return depth;
+    }
+
+    private Leaf leafAt(int depth) {
+        if (depth == 0)
+            return (Leaf) root;
+        return (Leaf) path[depth - 1].children[slots[depth - 1]];
+    }
+
+    // the same walk as descend(key), for the reads, which leave the path
+    // alone
+    private Leaf findLeaf(K key) {
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            node = inner.children[childIndex(inner, key)];
+        }
+        return (Leaf) node;
+    }
+
+    // the index of the child the key belongs to, which is the amount of
+    // separators that are smaller than or equal to the key
+    private int childIndex(Inner inner, K key) {
+        int lo = 0;
+        int hi = inner.size - 2;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key.compareTo((K) inner.keys[mid]) < 0)
+                hi = mid - 1;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // the index of the key in the leaf, or -(insertion point) - 1 if it's not
+    // there, like Arrays.binarySearch(...)
+    private int indexOf(Leaf leaf, K key) {
+        int lo = 0;
+        int hi = leaf.size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = key.compareTo((K) leaf.keys[mid]);
+            if (cmp > 0)
+                lo = mid + 1;
+            else if (cmp < 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    private void clearPath(int depth) {
+        Arrays.fill(path, 0, depth, null);
+    }
+
+    private void insert(int depth, Leaf leaf, int index, K key, V value) {
+        System.arraycopy(leaf.keys, index, leaf.keys, index + 1, leaf.size - index);
+        System.arraycopy(leaf.values, index, leaf.values, index + 1, leaf.size - index);
+        leaf.keys[index] = key;
+        leaf.values[index] = value;
+        leaf.size++;
+        size++;
+        for (int i = 0; i < depth; i++)
+            path[i].counts[slots[i]]++;
+
+        if (leaf.size > fanout)
+            split(depth, leaf);
+        clearPath(depth);
+    }
+
+    // moves the upper half of the leaf into a new leaf right after it
+    private void split(int depth, Leaf leaf) {
+        Leaf right = new Leaf(fanout);
+        int half = leaf.size / 2;
+        right.size = leaf.size - half;
+        System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+        System.arraycopy(leaf.values, half, right.values, 0, right.size);
+        Arrays.fill(leaf.keys, half, leaf.size, null);
+        Arrays.fill(leaf.values, half, leaf.size, null);
+        leaf.size = half;
+
+        right.prev = leaf;
+        right.next = leaf.next;
+        if (leaf.next == null)
+            last = right;
+        else
+            leaf.next.prev = right;
+        leaf.next = right;
+        addChild(depth, right.keys[0], leaf, leaf.size, right, right.size);
+    }
+
+    // same for an inner node, the separator between the halves moves up
+    // into the parent instead of staying in either of them
+    private void split(int depth, Inner inner) {
+        Inner right = new Inner(fanout);
+        int half = inner.size / 2;
+        right.size = inner.size - half;
+        Object separator = inner.keys[half - 1];
+        System.arraycopy(inner.keys, half, right.keys, 0, right.size - 1);
+        System.arraycopy(inner.children, half, right.children, 0, right.size);
+        System.arraycopy(inner.counts, half, right.counts, 0, right.size);
+        Arrays.fill(inner.keys, half - 1, inner.size - 1, null);
+        Arrays.fill(inner.children, half, inner.size, null);
+        inner.size = half;
+        addChild(depth, separator, inner, count(inner), right, count(right));
+    }
+
+    // adds the right half of a split node next to the left one, in the
+    // parent at depth - 1, which might have to split as well, a split root
+    // gets a new root above it
+    private void addChild(int depth, Object separator, Node left, int leftCount,
+            Node right, int rightCount) {
+        if (depth == 0) {
+            Inner inner = new Inner(fanout);
+            inner.keys[0] = separator;
+            inner.children[0] = left;
+            inner.children[1] = right;
+            inner.counts[0] = leftCount;
+            inner.counts[1] = rightCount;
+            inner.size = 2;
+            root = inner;
+            return;
+        }
+
+        Inner parent = path[depth - 1];
+        int slot = slots[depth - 1];
+        int moved = parent.size - slot - 1;
+        System.arraycopy(parent.keys, slot, parent.keys, slot + 1, moved);
+        System.arraycopy(parent.children, slot + 1, parent.children, slot + 2, moved);
+        System.arraycopy(parent.counts, slot + 1, parent.counts, slot + 2, moved);
+        parent.keys[slot] = separator;
+        parent.children[slot + 1] = right;
+        parent.counts[slot] = leftCount;
+        parent.counts[slot + 1] = rightCount;
+        parent.size++;
+        if (parent.size > fanout)
+            split(depth - 1, parent);
+    }
+
+    private static int count(Inner inner) {
+        int count = 0;
+        for (int i = 0; i < inner.size; i++)
+            count += inner.counts[i];
+        return count;
+    }
+
+    private void delete(int depth, Leaf leaf, int index) {
+        System.arraycopy(leaf.keys, index + 1, leaf.keys, index, leaf.size - index - 1);
+        System.arraycopy(leaf.values, index + 1, leaf.values, index, leaf.size - index - 1);
+        leaf.size--;
+        leaf.keys[leaf.size] = null;
+        leaf.values[leaf.size] = null;
+        size--;
+        for (int i = 0; i < depth; i++)
+            path[i].counts[slots[i]]--;
+
+        // a node that falls below the minimum takes an entry from a sibling,
+        // or merges with it if the sibling can't spare one, which takes a
+        // child away from the parent, so it goes on upwards
+        Node node = leaf;
+        for (int i = depth; i > 0 && node.size < minSize; i--) {
+            refill(i, node);
+            node = path[i - 1];
+        }
+        // the root is left with a single child after the merge of the last
+        // two, the tree gets a level lower
+        if (root instanceof Inner && root.size == 1)
+            root = ((Inner) root).children[0];
+        clearPath(depth);
+    }
+
+    private void refill(int depth, Node node) {
+        Inner parent = path[depth - 1];
+        int slot = slots[depth - 1];
+        // every inner node has at least 2 children, so there is always a
+        // sibling on one side
+        if (slot > 0) {
+            Node left = parent.children[slot - 1];
+            if (left.size > minSize)
+                borrowFromLeft(parent, slot, left, node);
+            else
+                merge(parent, slot - 1, left, node);
+        } else {
+            Node right = parent.children[slot + 1];
+            if (right.size > minSize)
+                borrowFromRight(parent, slot, node, right);
+            else
+                merge(parent, slot, node, right);
+        }
+    }
+
+    // moves the last entry of the left sibling to the front of the node
+    private void borrowFromLeft(Inner parent, int slot, Node left, Node node) {
+        System.arraycopy(node.keys, 0, node.keys, 1, node.size);
+        if (node instanceof Leaf) {
+            Leaf from = (Leaf) left;
+            Leaf to = (Leaf) node;
+            System.arraycopy(to.values, 0, to.values, 1, to.size);
+            to.keys[0] = from.keys[from.size - 1];
+            to.values[0] = from.values[from.size - 1];
+            from.keys[from.size - 1] = null;
+            from.values[from.size - 1] = null;
+            parent.keys[slot - 1] = to.keys[0];
+            parent.counts[slot - 1]--;
+            parent.counts[slot]++;
+        } else {
+            // the separator in the parent comes down in front of the moved
+            // child, and the last separator of the sibling goes up instead
+            Inner from = (Inner) left;
+            Inner to = (Inner) node;
+            System.arraycopy(to.children, 0, to.children, 1, to.size);
+            System.arraycopy(to.counts, 0, to.counts, 1, to.size);
+            int moved = from.counts[from.size - 1];
+            to.keys[0] = parent.keys[slot - 1];
+            to.children[0] = from.children[from.size - 1];
+            to.counts[0] = moved;
+            parent.keys[slot - 1] = from.keys[from.size - 2];
+            from.keys[from.size - 2] = null;
+            from.children[from.size - 1] = null;
+            parent.counts[slot - 1] -= moved;
+            parent.counts[slot] += moved;
+        }
+        left.size--;
+        node.size++;
+    }
+
+    // moves the first entry of the right sibling to the end of the node
+    private void borrowFromRight(Inner parent, int slot, Node node, Node right) {
+        if (node instanceof Leaf) {
+            Leaf to = (Leaf) node;
+            Leaf from = (Leaf) right;
+            to.keys[to.size] = from.keys[0];
+            to.values[to.size] = from.values[0];
+            System.arraycopy(from.keys, 1, from.keys, 0, from.size - 1);
+            System.arraycopy(from.values, 1, from.values, 0, from.size - 1);
+            from.keys[from.size - 1] = null;
+            from.values[from.size - 1] = null;
+            parent.keys[slot] = from.keys[0];
+            parent.counts[slot]++;
+            parent.counts[slot + 1]--;
+        } else {
+            Inner to = (Inner) node;
+            Inner from = (Inner) right;
+            int moved = from.counts[0];
+            to.keys[to.size - 1] = parent.keys[slot];
+            to.children[to.size] = from.children[0];
+            to.counts[to.size] = moved;
+            parent.keys[slot] = from.keys[0];
+            System.arraycopy(from.keys, 1, from.keys, 0, from.size - 2);
+            System.arraycopy(from.children, 1, from.children, 0, from.size - 1);
+            System.arraycopy(from.counts, 1, from.counts, 0, from.size - 1);
+            from.keys[from.size - 2] = null;
+            from.children[from.size - 1] = null;
+            parent.counts[slot] += moved;
+            parent.counts[slot + 1] -= moved;
+        }
+        node.size++;
+        right.size--;
+    }
+
+    // appends the right node to the left one, which is children[slot] of the
+    // parent, and removes the right one from the parent
+    private void merge(Inner parent, int slot, Node left, Node right) {
+        if (left instanceof Leaf) {
+            Leaf into = (Leaf) left;
+            Leaf from = (Leaf) right;
+            System.arraycopy(from.keys, 0, into.keys, into.size, from.size);
+            System.arraycopy(from.values, 0, into.values, into.size, from.size);
+            into.next = from.next;
+            if (from.next == null)
+                last = into;
+            else
+                from.next.prev = into;
+        } else {
+            Inner into = (Inner) left;
+            Inner from = (Inner) right;
+            into.keys[into.size - 1] = parent.keys[slot];
+            System.arraycopy(from.keys, 0, into.keys, into.size, from.size - 1);
+            System.arraycopy(from.children, 0, into.children, into.size, from.size);
+            System.arraycopy(from.counts, 0, into.counts, into.size, from.size);
+        }
+        left.size += right.size;
+
+        parent.counts[slot] += parent.counts[slot + 1];
+        int moved = parent.size - slot - 2;
+        System.arraycopy(parent.keys, slot + 1, parent.keys, slot, moved);
+        System.arraycopy(parent.children, slot + 2, parent.children, slot + 1, moved);
+        System.arraycopy(parent.counts, slot + 2, parent.counts, slot + 1, moved);
+        parent.size--;
+        parent.keys[parent.size - 1] = null;
+        parent.children[parent.size] = null;
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        Leaf leaf = findLeaf(key);
+        int index = indexOf(leaf, key);
+        return index >= 0 ? (V) leaf.values[index] : defaultValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return indexOf(findLeaf(key), key) >= 0;
+    }
+
+    @Override
+    public K minKey() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+
+        return (K) first.keys[0];
+    }
+
+    @Override
+    public K maxKey() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+
+        return (K) last.keys[last.size - 1];
+    }
+
+    // the leaf of the key holds the keys between its separators, so the
+    // floor is either in it or the last key of the leaf before, only the
+    // root can be an empty leaf
+    @Override
+    public K floorKey(K key) {
+        Leaf leaf = findLeaf(key);
+        int index = indexOf(leaf, key);
+        if (index < 0)
+            index = -index - 2;
+        if (index >= 0)
+            return (K) leaf.keys[index];
+        return leaf.prev == null ? null : (K) leaf.prev.keys[leaf.prev.size - 1];
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        Leaf leaf = findLeaf(key);
+        int index = indexOf(leaf, key);
+        if (index < 0)
+            index = -index - 1;
+        if (index < leaf.size)
+            return (K) leaf.keys[index];
+        return leaf.next == null ? null : (K) leaf.next.keys[0];
+    }
+
+    @Override
+    public int rank(K key) {
+        return countBelow(key, false);
+    }
+
+    @Override
+    public K select(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException();
+
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int slot = 0;
+            while (index >= inner.counts[slot])
+                index -= inner.counts[slot++];
+            node = inner.children[slot];
+        }
+        return (K) node.keys[index];
+    }
+
+    @Override
+    public int count(K lo, K hi) {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    // the amount of keys smaller than the key, or smaller than or equal to it
+    // if inclusive, which are the keys below the children in front of the
+    // one the key belongs to on every level, and the ones in front of it in
+    // its leaf
+    private int countBelow(K key, boolean inclusive) {
+        int count = 0;
+        Node node = root;
+        while (node instanceof Inner) {
+            Inner inner = (Inner) node;
+            int slot = childIndex(inner, key);
+            for (int i = 0; i < slot; i++)
+                count += inner.counts[i];
+            node = inner.children[slot];
+        }
+        int index = indexOf((Leaf) node, key);
+        if (index < 0)
+            return count - index - 1;
+        return count + index + (inclusive ? 1 : 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, false));
+    }
+
+    @Override
+    public Iterable<K> headKeys(K hi) {
+        return Cursors.keys(() -> new Cursor(null, hi, false));
+    }
+
+    @Override
+    public Iterable<K> tailKeys(K lo) {
+        return Cursors.keys(() -> new Cursor(lo, null, false));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys() {
+        return Cursors.keys(() -> new Cursor(null, null, true));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, true));
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor(null, null, false);
+    }
+
+    // walks the leaves through their links, so it only goes down the tree
+    // once to find the start of the range, the bounds are null if the range
+    // is open on that side
+    private class Cursor implements MapCursor<K, V> {
+        private final K lo;
+        private final K hi;
+        private final boolean descending;
+        // null once the cursor is past the end
+        private Leaf leaf;
+        // the index of the current entry in the leaf, it starts one step in
+        // front of the first one
+        private int index;
+
+        Cursor(K lo, K hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            if (descending) {
+                leaf = hi == null ? last : findLeaf(hi);
+                int i = hi == null ? leaf.size - 1 : indexOf(leaf, hi);
+                // the index of the floor of hi, plus one
+                index = i >= 0 ? i + 1 : -i - 1;
+            } else {
+                leaf = lo == null ? first : findLeaf(lo);
+                int i = lo == null ? 0 : indexOf(leaf, lo);
+                // the index of the ceiling of lo, minus one
+                index = (i >= 0 ? i : -i - 1) - 1;
+            }
+        }
+
+        @Override
+        public boolean advance() {
+            if (leaf == null)
+                return false;
+
+            if (descending) {
+                if (--index < 0) {
+                    leaf = leaf.prev;
+                    if (leaf == null)
+                        return false;
+                    index = leaf.size - 1;
+                }
+                if (lo != null && key().compareTo(lo) < 0)
+                    leaf = null;
+            } else {
+                if (++index >= leaf.size) {
+                    leaf = leaf.next;
+                    if (leaf == null)
+                        return false;
+                    index = 0;
+                }
+                if (hi != null && key().compareTo(hi) > 0)
+                    leaf = null;
+            }
+            return leaf != null;
+        }
+
+        @Override
+        public K key() {
+            return (K) leaf.keys[index];
+        }
+
+        @Override
+        public V value() {
+            return (V) leaf.values[index];
+        }
+    }
+
+    // just the arrays of the leaves one after another
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (Leaf leaf = first; leaf != null; leaf = leaf.next) {
+            for (int i = 0; i < leaf.size; i++)
+                action.accept((K) leaf.keys[i], (V) leaf.values[i]);
+        }
+    }
+}
@@ -1,14 +1,21 @@
 package map;
 
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+import interfaces.MapCursor;
 import interfaces.OrderedMap;
-import list.DynamicArrayList;
 
 public class BinarySearchTreeMap<K extends Comparable<K>,V>
     implements OrderedMap<K,V>
 {
     private Node root;
+    // bumped by every change to the shape of the tree, so that compute(...)
+    // can tell whether its function moved the parent it found
+    private int modCount;
 
     private class Node {
         K key;
@@ -27,35 +34,148 @@ public class BinarySearchTreeMap<K extends Comparable<K>,V>
         root = null;
     }
 
+    // all the operations walk down the tree in a loop instead of recursing,
+    // since the tree isn't balanced a sorted input turns it into a list,
+    // which would be as many stack frames as keys, the sizes of the nodes
+    // above a node that is added or removed are fixed by walking down to it
+    // a second time, see addToSizes(key, node, delta), which doesn't need
+    // any memory for the way back up
+
     @Override
-    public void put(K key, V value) {
-        root = put(key, value, root);
+    public V put(K key, V value) {
+        Node parent = null;
+        Node node = root;
+        int cmp = 0;
+        while (node != null) {
+            cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                // update the current value
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            parent = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        attach(parent, cmp, new Node(key, value, 1));
+        return null;
     }
 
-    private Node put(K key, V value, Node node) {
-        if (node == null)
-            return new Node(key, value, 1);
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            // if key < node.key
-            node.left = put(key, value, node.left);
-        else if (cmp > 0)
-            // if key > node.key
-            node.right = put(key, value, node.right);
-        else
-            // else update the current value
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Node parent = null;
+        Node node = root;
+        int cmp = 0;
+        while (node != null) {
+            cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                V previous = node.value;
+                if (previous == null)
+                    node.value = value;
+                return previous;
+            }
+            parent = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        attach(parent, cmp, new Node(key, value, 1));
+        return null;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        Node parent = null;
+        Node node = root;
+        int cmp = 0;
+        while (node != null) {
+            cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                break;
+            parent = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+
+        int expected = modCount;
+        V value = function.apply(key, node == null ? null : node.value);
+        if (modCount != expected)
+            throw new ConcurrentModificationException(
+                "the function changed the map");
+        if (node == null) {
+            // the key doesn't exist, it's added right here unless the
+            // function says otherwise
+            if (value != null)
+                attach(parent, cmp, new Node(key, value, 1));
+        } else if (value == null) {
+            unlink(parent, node);
+        } else {
             node.value = value;
-        // update the size
-        node.size = 1 + size(node.left) + size(node.right);
-        return node;
+        }
+        return value;
+    }
+
+    // the rest are compute(...) with a different function, the tree is
+    // still only searched once
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        return compute(key, (k, old) -> old == null ? function.apply(k) : old);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        return compute(key,
+            (k, old) -> old == null ? value : function.apply(old, value));
+    }
+
+    // links the node of a new key below the parent, on the side that the
+    // key compared to the parent's key, or makes it the root
+    private void attach(Node parent, int cmp, Node node) {
+        modCount++;
+        if (parent == null)
+            root = node;
+        else if (cmp < 0)
+            parent.left = node;
+        else
+            parent.right = node;
+        addToSizes(node.key, node, 1);
+    }
+
+    // takes the node out of the tree, the parent is null for the root
+    private void unlink(Node parent, Node node) {
+        addToSizes(node.key, node, -1);
+        replace(parent, node, removeNode(node));
+    }
+
+    // adds delta to the size of every node on the way down to the node of
+    // the key, not including the node itself
+    private void addToSizes(K key, Node node, int delta) {
+        Node n = root;
+        while (n != node) {
+            n.size += delta;
+            n = key.compareTo(n.key) < 0 ? n.left : n.right;
+        }
+    }
+
+    // points the parent, or the root if there is no parent, to the new
+    // child instead of the old one
+    private void replace(Node parent, Node old, Node child) {
+        modCount++;
+        if (parent == null)
+            root = child;
+        else if (parent.left == old)
+            parent.left = child;
+        else
+            parent.right = child;
     }
 
     @Override
     public V get(K key) {
-        Node result = searchKey(key, root);
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        Node result = searchKey(key);
         if (result == null)
-            return null;
+            return defaultValue;
 
         return result.value;
     }
@@ -64,87 +184,85 @@ public class BinarySearchTreeMap<K extends Comparable<K>,V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        root = removeMax(root);
-    }
-
-    private Node removeMax(Node node) {
-        if (node.right == null)
-            // removing the maximum by assigning the left node as the right
-            // node of the parent of the node
-            return node.left;
-        // assuming this is the last step, also when node.right.right == null,
-        // then we just assign node.right.left to node.right, irrelevant of
-        // node.right.left is null or not, the link to node.right.right is
-        // automatically served
-        node.right = removeMax(node.right);
-        // update the size
-        node.size = 1 + size(node.left) + size(node.right);
-        return node;
+        // keep going right, every node on the way loses the maximum from
+        // its subtree
+        Node parent = null;
+        Node node = root;
+        while (node.right != null) {
+            node.size--;
+            parent = node;
+            node = node.right;
+        }
+        // the left subtree of the maximum takes its place
+        replace(parent, node, node.left);
     }
 
     public void removeMin() {
         if (isEmpty())
             throw new NoSuchElementException();
 
-        root = removeMin(root);
-    }
-
-    private Node removeMin(Node node) {
-        // same idea as removeMax(node), but with left and right interchanged
-        if (node.left == null)
-            return node.right;
-        
-        node.left = removeMin(node.left);
-        node.size = 1 + size(node.left) + size(node.right);
-        return node;
+        // same idea as removeMax(), but with left and right interchanged
+        Node parent = null;
+        Node node = root;
+        while (node.left != null) {
+            node.size--;
+            parent = node;
+            node = node.left;
+        }
+        replace(parent, node, node.right);
     }
 
     @Override
     public void remove(K key) {
-        if (!containsKey(key))
-            return;
-
-        if (!isEmpty())
-            root = remove(key, root);
+        Node parent = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                // found the key to be removed
+                unlink(parent, node);
+                return;
+            }
+            parent = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        // else the key doesn't exist
     }
 
-    private Node remove(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            node.left = remove(key, node.left);
-        else if (cmp > 0)
-            node.right = remove(key, node.right);
-        else {
-            // found the key to be removed
-            if (node.right == null)
-                // the case when the node to be removed only has one or no
-                // children, so we just assign the other sibling
-                return node.left;
-            else if (node.left == null)
-                return node.right;
-            // else the node to be removed has two children then we removed it
-            // by replace it with its successor, first we save the node
-            Node t = node;
-            // find its successor, a.k.a. the biggest key in the left subtree,
-            // or the smallest key in the right subtree, and replace it with
-            // the node to be removed
-            node = maxKey(node.left);
-            // remove the maxKey from the old left tree
-            node.left = removeMax(t.left);
-            // simply assign the old right tree to the new node
-            node.right = t.right;
+    // removes the node from its subtree and returns the new root of it, the
+    // sizes of the nodes above the subtree are left to the caller
+    private Node removeNode(Node node) {
+        if (node.right == null)
+            // the case when the node to be removed only has one or no
+            // children, so we just assign the other sibling
+            return node.left;
+        else if (node.left == null)
+            return node.right;
+        // else the node to be removed has two children then we replace it
+        // with its predecessor, a.k.a. the biggest key in the left subtree,
+        // every node on the way there loses the predecessor from its subtree
+        Node parent = null;
+        Node predecessor = node.left;
+        while (predecessor.right != null) {
+            predecessor.size--;
+            parent = predecessor;
+            predecessor = predecessor.right;
+        }
+        if (parent != null) {
+            // the predecessor isn't the left child itself, so it leaves its
+            // left subtree to its parent and takes over the one of the node
+            parent.right = predecessor.left;
+            predecessor.left = node.left;
         }
-        // update the size
-        node.size = 1 + size(node.left) + size(node.right);
-        return node;
+        // simply assign the old right tree to the new node
+        predecessor.right = node.right;
+        predecessor.size = node.size - 1;
+        return predecessor;
     }
 
     @Override
     public boolean containsKey(K key) {
-        return searchKey(key, root) != null;
+        return searchKey(key) != null;
     }
 
     @Override
@@ -152,16 +270,12 @@ public class BinarySearchTreeMap<K extends Comparable<K>,V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        return minKey(root).key;
-    }
-
-    private Node minKey(Node node) {
-        // keep recursively traversing the left node until it's null,
-        // then the lastest non-null node is the minimum key
-        if (node.left != null)
-            return minKey(node.left);
-
-        return node;
+        // keep traversing the left node until it's null, then the lastest
+        // non-null node is the minimum key
+        Node node = root;
+        while (node.left != null)
+            node = node.left;
+        return node.key;
     }
 
     @Override
@@ -169,82 +283,116 @@ public class BinarySearchTreeMap<K extends Comparable<K>,V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        return maxKey(root).key;
+        // same with the right node
+        Node node = root;
+        while (node.right != null)
+            node = node.right;
+        return node.key;
     }
 
-    private Node maxKey(Node node) {
-        // keep recursively traversing the right node until it's null,
-        // then the lastest non-null node is the maximum key
-        if (node.right != null)
-            return maxKey(node.right);
-
-        return node;
+    @Override
+    public K floorKey(K key) {
+        // the last node on the way down whose key is smaller is the floor,
+        // unless the key itself is found
+        Node floor = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                // if key == node.key, we have found the floor
+                return node.key;
+            if (cmp < 0) {
+                // if key < node.key, keep looking in the left subtree, the
+                // floor cannot be in the right tree
+                node = node.left;
+            } else {
+                // else key > node.key, the node is the floor unless there is
+                // a better one in the right subtree
+                floor = node;
+                node = node.right;
+            }
+        }
+        return floor == null ? null : floor.key;
     }
 
     @Override
-    public K floorKey(K key) {
-        Node result = floorKey(key, root);
-        if (result == null)
-            return null;
-        return result.key;
+    public K ceilingKey(K key) {
+        // almost identical to floorKey(key) but with left and right, < and >
+        // interchanged
+        Node ceiling = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node.key;
+            if (cmp > 0) {
+                node = node.right;
+            } else {
+                ceiling = node;
+                node = node.left;
+            }
+        }
+        return ceiling == null ? null : ceiling.key;
+    }
+    
+    // rank(key), select(index) and count(lo, hi) only look at the sizes of
+    // the subtrees on one way down, which is O(log n) as long as the tree
+    // is about balanced, and O(n) for sorted input like everything else here
+    @Override
+    public int rank(K key) {
+        return countBelow(key, false);
     }
 
-    private Node floorKey(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0)
-            // if key == node.key, we have found the floor
-            return node;
-        else if (cmp < 0)
-            // if key < node.key, keep looking in the left subtree, the floor
-            // cannot be in the right tree
-            return floorKey(key, node.left);
-        
-        // else key > node.key, the floor might be in the right subtree
-        Node right = floorKey(key, node.right);
-        if (right != null)
-            // found the floor in the right subtree
-            return right;
-        // else the floor is not in the right subtree, then current node is
-        // the floor
-        return node;
+    @Override
+    public K select(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException();
+
+        // the size of the left subtree is the rank of the node within its
+        // subtree, so go left if the index is smaller, and right without the
+        // keys of the left subtree and the node if it's bigger
+        Node node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index > left) {
+                index -= left + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
     }
 
     @Override
-    public K ceilingKey(K key) {
-        Node result = ceilingKey(key, root);
-        if (result == null)
-            return null;
-        return result.key;
+    public int count(K lo, K hi) {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+
+        return countBelow(hi, true) - countBelow(lo, false);
     }
 
-    private Node ceilingKey(K key, Node node) {
-        // almost identical to floorKey(key,node) but with left and right,
-        // < and > interchanged
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0)
-            // if key == node.key, we have found the ceiling
-            return node;
-        else if (cmp > 0)
-            // if key > node.key, keep looking in the right subtree, the ceiling
-            // cannot be in the left tree
-            return ceilingKey(key, node.right);
-        
-        // else key < node.key, the floor might be in the left subtree
-        Node left = ceilingKey(key, node.left);
-        if (left != null)
-            // found the floor in the right subtree
-            return left;
-        // else the floor is not in the right subtree, then current node is
-        // the floor
-        return node;
+    // the amount of keys smaller than the key, or smaller than or equal to it
+    // if inclusive, every step to the right passes the node and its left
+    // subtree
+    private int countBelow(K key, boolean inclusive) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return count + size(node.left) + (inclusive ? 1 : 0);
+            }
+        }
+        return count;
     }
-    
+
     @Override
     public boolean isEmpty() {
         return size() == 0;
@@ -264,33 +412,127 @@ public class BinarySearchTreeMap<K extends Comparable<K>,V>
 
     @Override
     public Iterable<K> keys() {
-        DynamicArrayList<K> list = new DynamicArrayList<>();
-        inorder(root, list);
-        return list;
+        return Cursors.keys(this);
     }
 
-    private Node searchKey(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            // if key < node.key
-            return searchKey(key, node.left);
-        else if (cmp > 0)
-            // if key > node.key
-            return searchKey(key, node.right);
-        else
-            return node;
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, false));
     }
 
-    private void inorder(Node node, DynamicArrayList<K> list) {
-        if (node == null)
-            return;
-        // recursively traverse from the node in an sorted order from the left
-        // child to the parent to the right child over all nodes
-        inorder(node.left, list);
-        list.add(node.key);
-        inorder(node.right, list);
+    @Override
+    public Iterable<K> headKeys(K hi) {
+        return Cursors.keys(() -> new Cursor(null, hi, false));
+    }
+
+    @Override
+    public Iterable<K> tailKeys(K lo) {
+        return Cursors.keys(() -> new Cursor(lo, null, false));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys() {
+        return Cursors.keys(() -> new Cursor(null, null, true));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, true));
+    }
+
+    @Override
+    public MapCursor<K,V> cursor() {
+        return new Cursor(null, null, false);
+    }
+
+    // an in-order walk with an explicit stack instead of recursion, so that
+    // it can stop after every node, the stack holds the nodes whose left
+    // subtree is being walked, or the right one if the walk goes backwards
+    //
+    // the bounds are null if the range is open on that side, the first
+    // descent skips the subtrees in front of the range and the walk ends at
+    // the first key past it, so k keys cost O(log n + k)
+    private class Cursor implements MapCursor<K,V> {
+        private final K lo;
+        private final K hi;
+        private final boolean descending;
+        private Object[] stack = new Object[32];
+        private int depth;
+        private Node current;
+
+        Cursor(K lo, K hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            // like push(root), but without the nodes in front of the range
+            // and the subtrees on their near side
+            Node node = root;
+            while (node != null) {
+                if (descending ? isAbove(node.key) : isBelow(node.key)) {
+                    node = descending ? node.left : node.right;
+                } else {
+                    push(node);
+                    node = descending ? node.right : node.left;
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean advance() {
+            if (depth == 0)
+                return false;
+
+            current = (Node) stack[--depth];
+            if (descending ? isBelow(current.key) : isAbove(current.key)) {
+                // every key after this one is past the range too
+                depth = 0;
+                return false;
+            }
+            for (Node node = descending ? current.left : current.right;
+                    node != null; node = descending ? node.right : node.left)
+                push(node);
+            return true;
+        }
+
+        private void push(Node node) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, 2 * depth);
+            stack[depth++] = node;
+        }
+
+        private boolean isBelow(K key) {
+            return lo != null && key.compareTo(lo) < 0;
+        }
+
+        private boolean isAbove(K key) {
+            return hi != null && key.compareTo(hi) > 0;
+        }
+
+        @Override
+        public K key() {
+            return current.key;
+        }
+
+        @Override
+        public V value() {
+            return current.value;
+        }
+    }
+
+    private Node searchKey(K key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0)
+                // if key < node.key
+                node = node.left;
+            else if (cmp > 0)
+                // if key > node.key
+                node = node.right;
+            else
+                return node;
+        }
+        return null;
     }
 }
@@ -0,0 +1,506 @@
+package map;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// every key has exactly two buckets of 4 slots it can be in, one for each of
+// two hash functions, so a lookup looks at no more than 8 slots and a stash
+// of 4, an insert that finds both buckets full kicks an entry out to its
+// other bucket, which might kick out another one and so on, until someone
+// finds a free slot or the walk gets too long, the entry that is left without
+// a slot goes into the stash
+//
+// keys with the same hashcode have the same two buckets at every table size,
+// so once more than 8 of them are in the map no amount of room or kicking
+// places the rest, those and whatever doesn't fit into the full stash go
+// into an overflow SeparateChainingHashMap instead, which treeifies them if
+// they're Comparable, a lookup only looks there if it isn't empty
+@SuppressWarnings("unchecked")
+public class CuckooHashMap<K, V> implements Map<K, V> {
+    // bucket b is the slots b * BUCKET_SIZE to (b + 1) * BUCKET_SIZE - 1
+    private K[] keys;
+    private V[] values;
+    // the entries whose kick-out walk failed, a lookup checks these after
+    // its two buckets
+    private K[] stashKeys;
+    private V[] stashValues;
+    private int stashSize;
+    // null unless some keys didn't fit into the table or the stash, see
+    // spill(key, value)
+    private SeparateChainingHashMap<K, V> overflow;
+    // the amount of entries in the table, the stash and the overflow map
+    private int size;
+    // the two hash functions are the same mix with different seeds
+    private final int seed1;
+    private final int seed2;
+    // xorshift state for picking the entries to kick out, a fixed pattern
+    // could kick the same entries back and forth forever
+    private int random;
+
+    private static final int BUCKET_SIZE = 4;
+    // has to be a power of two times BUCKET_SIZE, see Hashing
+    private static final int INIT_SIZE = 64;
+    // with two choices of 4 slots each the walks stay short up to about 95%
+    private static final float MAX_LOAD_FACTOR = 0.9f;
+    // well below half of the load a grow leaves behind, so that a few
+    // removes after a grow don't shrink the table right back
+    private static final float MIN_LOAD_FACTOR = 0.125f;
+    // a stash this full with the table half empty means the walks fail
+    // because of the hash functions, not the load, a bigger table helps
+    private static final float STASH_GROW_LOAD_FACTOR = 0.5f;
+    // the length of the longest kick-out walk before giving up
+    private static final int MAX_KICKS = 256;
+    // failed walks are rare, so the stash should never really fill up
+    // unless the table is too full
+    private static final int STASH_SIZE = 4;
+    // find(key) of a key in the overflow map
+    private static final int OVERFLOW = Integer.MAX_VALUE;
+
+    public CuckooHashMap() {
+        this(false);
+    }
+
+    // same as LinearProbingHashMap(randomSeed), both hash functions get a
+    // seed of their own
+    public CuckooHashMap(boolean randomSeed) {
+        seed1 = randomSeed ? Hashing.randomSeed() : 0;
+        seed2 = randomSeed ? Hashing.randomSeed() : 0x9e3779b9;
+        random = 0x2545f491;
+        init(INIT_SIZE);
+    }
+
+    private void init(int capacity) {
+        keys = (K[]) new Object[capacity];
+        values = (V[]) new Object[capacity];
+        stashKeys = (K[]) new Object[STASH_SIZE];
+        stashValues = (V[]) new Object[STASH_SIZE];
+        stashSize = 0;
+        overflow = null;
+        size = 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int index = find(key);
+        if (index >= 0) {
+            // if the key already exists, update the value
+            V previous = valueAt(index, key);
+            setValue(index, key, value);
+            return previous;
+        }
+        add(key, value);
+        return null;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        int index = find(key);
+        if (index < 0) {
+            add(key, value);
+            return null;
+        }
+        V previous = valueAt(index, key);
+        if (previous == null)
+            setValue(index, key, value);
+        return previous;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int index = find(key);
+        V value = function.apply(key, index < 0 ? null : valueAt(index, key));
+        if (index < 0) {
+            if (value != null)
+                add(key, value);
+        } else if (value == null) {
+            delete(index, key);
+        } else {
+            setValue(index, key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        int index = find(key);
+        V previous = index < 0 ? null : valueAt(index, key);
+        if (previous != null)
+            return previous;
+
+        V value = function.apply(key);
+        if (value == null)
+            return null;
+        if (index < 0)
+            add(key, value);
+        else
+            setValue(index, key, value);
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        int index = find(key);
+        if (index < 0) {
+            add(key, value);
+            return value;
+        }
+        V previous = valueAt(index, key);
+        V merged = previous == null ? value : function.apply(previous, value);
+        if (merged == null)
+            delete(index, key);
+        else
+            setValue(index, key, merged);
+        return merged;
+    }
+
+    // the key must not exist in the map, the free slot is looked for only
+    // after the resize, so nothing that find(key) returned has to stay valid
+    private void add(K key, V value) {
+        if ((double) (placed() + 1) / keys.length > MAX_LOAD_FACTOR)
+            resize(2 * keys.length);
+        size++;
+        insert(key, value);
+
+        if (stashSize == STASH_SIZE
+                && (double) placed() / keys.length > STASH_GROW_LOAD_FACTOR)
+            // the walks started failing too often, which means the table is
+            // fuller than the hash functions can handle, more room fixes that
+            resize(2 * keys.length);
+    }
+
+    // the entries in the table and the stash, the ones in the overflow map
+    // don't take up any room, and more room wouldn't help them either
+    private int placed() {
+        return overflow == null ? size : size - overflow.size();
+    }
+
+    // the key must not exist in the map
+    private void insert(K key, V value) {
+        int h = key.hashCode();
+        int slot = freeSlot(bucket1(h));
+        if (slot < 0)
+            slot = freeSlot(bucket2(h));
+        if (slot >= 0) {
+            keys[slot] = key;
+            values[slot] = value;
+            return;
+        }
+        if (crowded(h)) {
+            // the walk would only shuffle its twins around
+            spill(key, value);
+            return;
+        }
+
+        // both buckets are full, so kick a random entry out of one of them
+        // and move it to its other bucket, and repeat for whoever lives there
+        int bucket = (nextRandom() & 1) == 0 ? bucket1(h) : bucket2(h);
+        for (int kick = 0; kick < MAX_KICKS; kick++) {
+            int victim = bucket * BUCKET_SIZE + (nextRandom() & (BUCKET_SIZE - 1));
+            K k = keys[victim];
+            V v = values[victim];
+            keys[victim] = key;
+            values[victim] = value;
+            key = k;
+            value = v;
+
+            h = key.hashCode();
+            int b1 = bucket1(h);
+            bucket = b1 == bucket ? bucket2(h) : b1;
+            slot = freeSlot(bucket);
+            if (slot >= 0) {
+                keys[slot] = key;
+                values[slot] = value;
+                return;
+            }
+        }
+        // whoever was kicked out last has nowhere to go
+        stash(key, value);
+    }
+
+    private void stash(K key, V value) {
+        if (stashSize == STASH_SIZE || crowded(key.hashCode())) {
+            spill(key, value);
+            return;
+        }
+        stashKeys[stashSize] = key;
+        stashValues[stashSize] = value;
+        stashSize++;
+    }
+
+    private void spill(K key, V value) {
+        if (overflow == null)
+            overflow = new SeparateChainingHashMap<>();
+        overflow.put(key, value);
+    }
+
+    // whether both buckets of the hashcode are full of keys with the same
+    // hashcode, which no table size can tell apart
+    private boolean crowded(int h) {
+        return sameHash(bucket1(h), h) && sameHash(bucket2(h), h);
+    }
+
+    private boolean sameHash(int bucket, int h) {
+        int start = bucket * BUCKET_SIZE;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (keys[i] == null || keys[i].hashCode() != h)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        int index = find(key);
+        if (index < 0)
+            return defaultValue;
+
+        return valueAt(index, key);
+    }
+
+    @Override
+    public void remove(K key) {
+        int index = find(key);
+        if (index >= 0)
+            delete(index, key);
+    }
+
+    private void delete(int index, K key) {
+        if (index == OVERFLOW) {
+            overflow.remove(key);
+            if (overflow.isEmpty())
+                overflow = null;
+            size--;
+        } else if (index < keys.length) {
+            keys[index] = null;
+            values[index] = null;
+            size--;
+            // the freed slot might be where a stashed entry belongs
+            if (stashSize > 0)
+                unstash(index / BUCKET_SIZE);
+        } else {
+            // the order of the stash doesn't matter, fill the hole with the
+            // last one
+            index -= keys.length;
+            stashSize--;
+            stashKeys[index] = stashKeys[stashSize];
+            stashValues[index] = stashValues[stashSize];
+            stashKeys[stashSize] = null;
+            stashValues[stashSize] = null;
+            size--;
+        }
+        // check to make sure the table is not too empty
+        if ((double) placed() / keys.length < MIN_LOAD_FACTOR
+                && keys.length > INIT_SIZE)
+            resize(keys.length / 2);
+    }
+
+    // moves the first stashed entry that belongs to the bucket into it
+    private void unstash(int bucket) {
+        for (int i = 0; i < stashSize; i++) {
+            int h = stashKeys[i].hashCode();
+            if (bucket1(h) != bucket && bucket2(h) != bucket)
+                continue;
+
+            int slot = freeSlot(bucket);
+            keys[slot] = stashKeys[i];
+            values[slot] = stashValues[i];
+            stashSize--;
+            stashKeys[i] = stashKeys[stashSize];
+            stashValues[i] = stashValues[stashSize];
+            stashKeys[stashSize] = null;
+            stashValues[stashSize] = null;
+            return;
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(key) >= 0;
+    }
+
+    // the slot of the key in either of its buckets, or keys.length + i if
+    // it's at index i of the stash, the same numbering as the cursor,
+    // OVERFLOW if it's in the overflow map, or -1
+    private int find(K key) {
+        int index = indexOf(key);
+        if (index >= 0)
+            return index;
+
+        index = stashIndexOf(key);
+        if (index >= 0)
+            return keys.length + index;
+        return overflow != null && overflow.containsKey(key) ? OVERFLOW : -1;
+    }
+
+    private V valueAt(int index, K key) {
+        if (index == OVERFLOW)
+            return overflow.get(key);
+        return index < keys.length
+            ? values[index]
+            : stashValues[index - keys.length];
+    }
+
+    private void setValue(int index, K key, V value) {
+        if (index == OVERFLOW)
+            overflow.put(key, value);
+        else if (index < keys.length)
+            values[index] = value;
+        else
+            stashValues[index - keys.length] = value;
+    }
+
+    // the slot of the key in either of its buckets, or -1
+    private int indexOf(K key) {
+        int h = key.hashCode();
+        int index = indexIn(bucket1(h), key);
+        if (index >= 0)
+            return index;
+
+        return indexIn(bucket2(h), key);
+    }
+
+    private int indexIn(int bucket, K key) {
+        int start = bucket * BUCKET_SIZE;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (keys[i] != null && keys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private int stashIndexOf(K key) {
+        for (int i = 0; i < stashSize; i++) {
+            if (stashKeys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    private int freeSlot(int bucket) {
+        int start = bucket * BUCKET_SIZE;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            if (keys[i] == null)
+                return i;
+        }
+        return -1;
+    }
+
+    private int bucket1(int hashCode) {
+        return Hashing.mix(hashCode, seed1) & (keys.length / BUCKET_SIZE - 1);
+    }
+
+    private int bucket2(int hashCode) {
+        return Hashing.mix(hashCode, seed2) & (keys.length / BUCKET_SIZE - 1);
+    }
+
+    private int nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 17;
+        random ^= random << 5;
+        return random;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null)
+                action.accept(keys[i], values[i]);
+        }
+        for (int i = 0; i < stashSize; i++)
+            action.accept(stashKeys[i], stashValues[i]);
+        if (overflow != null)
+            overflow.forEach(action);
+    }
+
+    // walks through the table, the stash and the overflow map, an index past
+    // the end of the table is an index into the stash
+    private class Cursor implements MapCursor<K, V> {
+        private int index = -1;
+        // set once the table and the stash are done
+        private MapCursor<K, V> rest;
+
+        @Override
+        public boolean advance() {
+            if (rest != null)
+                return rest.advance();
+            while (++index < keys.length) {
+                if (keys[index] != null)
+                    return true;
+            }
+            if (index - keys.length < stashSize)
+                return true;
+            if (overflow == null)
+                return false;
+            rest = overflow.cursor();
+            return rest.advance();
+        }
+
+        @Override
+        public K key() {
+            if (rest != null)
+                return rest.key();
+            return index < keys.length
+                ? keys[index]
+                : stashKeys[index - keys.length];
+        }
+
+        @Override
+        public V value() {
+            if (rest != null)
+                return rest.value();
+            return index < keys.length
+                ? values[index]
+                : stashValues[index - keys.length];
+        }
+    }
+
+    private void resize(int newSize) {
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        K[] oldStashKeys = stashKeys;
+        V[] oldStashValues = stashValues;
+        int oldStashSize = stashSize;
+        SeparateChainingHashMap<K, V> oldOverflow = overflow;
+        int oldSize = size;
+        init(newSize);
+        size = oldSize;
+        // the keys are known to be distinct, so skip the lookup part of put
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null)
+                insert(oldKeys[i], oldValues[i]);
+        }
+        for (int i = 0; i < oldStashSize; i++)
+            insert(oldStashKeys[i], oldStashValues[i]);
+        if (oldOverflow != null)
+            oldOverflow.forEach(this::insert);
+    }
+}
@@ -0,0 +1,59 @@
+package map;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// helpers for the maps that only walk their entries through a cursor
+final class Cursors {
+    private Cursors() {}
+
+    /**
+     * Wraps the cursor of the map into the iterable that keys() returns, so
+     * a loop over the keys only allocates the iterator and the cursor instead
+     * of a copy of every key
+     *
+     * @param map The map
+     * @return The keys of the map, in the order of its cursor
+     */
+    static <K> Iterable<K> keys(Map<K, ?> map) {
+        return keys(map::cursor);
+    }
+
+    /**
+     * Same as keys(map), for a part of the map or another order than the
+     * one of cursor()
+     *
+     * @param cursors Creates a new cursor for every iterator
+     * @return The keys of the cursors
+     */
+    static <K> Iterable<K> keys(Supplier<? extends MapCursor<K, ?>> cursors) {
+        return () -> new Iterator<K>() {
+            private final MapCursor<K, ?> cursor = cursors.get();
+            // advance() moves the cursor, so hasNext() has to remember
+            // whether it already did
+            private boolean advanced;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (!advanced) {
+                    hasNext = cursor.advance();
+                    advanced = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public K next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                advanced = false;
+                return cursor.key();
+            }
+        };
+    }
+}
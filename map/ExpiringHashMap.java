@@ -0,0 +1,312 @@
+package map;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// a map whose entries disappear once their time to live is over, every write
+// of a key starts its ttl over, the ttl is the one of the map unless it's
+// given to put(key, value, ttl, unit)
+//
+// the entries are the timers of a TimingWheel, so an expired entry is found
+// without looking at the others, every operation advances the wheel and
+// removes what expired since the last one, and sweep() does the same for a
+// map that isn't used for a while, an entry whose ttl is over is never
+// returned even if it wasn't removed yet
+//
+// a LinearProbingHashMap maps the keys to their timers, all the public
+// methods synchronize on the map, so that sweep() can run on another thread,
+// null values are not allowed
+public class ExpiringHashMap<K, V> implements Map<K, V> {
+    private final LinearProbingHashMap<K, Node> index;
+    private final TimingWheel wheel = new TimingWheel(0);
+    private final long ttl;
+    private final LongSupplier ticker;
+    // the ticker at the start, the wheel needs times that don't go negative
+    private final long origin;
+
+    // a ttl of 2^62 ns is about 146 years, and keeps now + ttl from
+    // overflowing
+    private static final long MAX_TTL = 1L << 62;
+
+    // same trick as the caches, passing these to the index doesn't allocate
+    private final Function<K, Node> newNode = Node::new;
+    private final BiFunction<K, Node, Node> unlinkNode = (key, node) -> {
+        if (node != null)
+            wheel.cancel(node);
+        return null;
+    };
+
+    private class Node extends TimingWheel.Timer {
+        K key;
+        // null until the node gets its first value
+        V value;
+
+        Node(K key) {
+            this.key = key;
+        }
+
+        @Override
+        void expire() {
+            index.remove(key);
+        }
+    }
+
+    public ExpiringHashMap(long ttl, TimeUnit unit) {
+        this(ttl, unit, System::nanoTime);
+    }
+
+    // the ticker returns the current time in nanoseconds, it doesn't have to
+    // start at 0 but it must never go backwards
+    public ExpiringHashMap(long ttl, TimeUnit unit, LongSupplier ticker) {
+        this.ttl = toNanos(ttl, unit);
+        this.ticker = ticker;
+        this.origin = ticker.getAsLong();
+        this.index = new LinearProbingHashMap<>();
+    }
+
+    @Override
+    public synchronized V put(K key, V value) {
+        return write(key, value, ttl);
+    }
+
+    /**
+     * Same as put(key, value), but with a ttl of its own instead of the one
+     * of the map
+     *
+     * @param key   The key
+     * @param value The value associated to the key
+     * @param ttl   How long the entry lives, in the unit
+     * @param unit  The unit of the ttl
+     * @return The value that was associated with the key before, or null if
+     *         the key didn't exist
+     */
+    public synchronized V put(K key, V value, long ttl, TimeUnit unit) {
+        return write(key, value, toNanos(ttl, unit));
+    }
+
+    private V write(K key, V value, long ttl) {
+        checkValue(value);
+        long now = advance();
+        Node node = index.computeIfAbsent(key, newNode);
+        V previous = isLive(node, now) ? node.value : null;
+        set(node, value, now + ttl);
+        return previous;
+    }
+
+    @Override
+    public synchronized V putIfAbsent(K key, V value) {
+        checkValue(value);
+        long now = advance();
+        Node node = index.computeIfAbsent(key, newNode);
+        if (isLive(node, now))
+            return node.value;
+
+        set(node, value, now + ttl);
+        return null;
+    }
+
+    // the rest of the writes find the node of the key once, or add a new one
+    // with a null value, and only remove it again when the function says so
+    @Override
+    public synchronized V compute(K key,
+            BiFunction<? super K, ? super V, ? extends V> function) {
+        long now = advance();
+        Node node = index.computeIfAbsent(key, newNode);
+        V value = function.apply(key, isLive(node, now) ? node.value : null);
+        if (value == null) {
+            discard(node);
+            return null;
+        }
+        set(node, value, now + ttl);
+        return value;
+    }
+
+    @Override
+    public synchronized V computeIfAbsent(K key,
+            Function<? super K, ? extends V> function) {
+        long now = advance();
+        Node node = index.computeIfAbsent(key, newNode);
+        if (isLive(node, now))
+            return node.value;
+
+        V value = function.apply(key);
+        if (value == null) {
+            discard(node);
+            return null;
+        }
+        set(node, value, now + ttl);
+        return value;
+    }
+
+    @Override
+    public synchronized V merge(K key, V value,
+            BiFunction<? super V, ? super V, ? extends V> function) {
+        checkValue(value);
+        long now = advance();
+        Node node = index.computeIfAbsent(key, newNode);
+        V merged = isLive(node, now) ? function.apply(node.value, value) : value;
+        if (merged == null) {
+            discard(node);
+            return null;
+        }
+        set(node, merged, now + ttl);
+        return merged;
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public synchronized V getOrDefault(K key, V defaultValue) {
+        Node node = find(key);
+        return node == null ? defaultValue : node.value;
+    }
+
+    @Override
+    public synchronized void remove(K key) {
+        advance();
+        index.compute(key, unlinkNode);
+    }
+
+    @Override
+    public synchronized boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Removes the entries that expired since the last operation, which every
+     * operation does anyway, e.g. run it every few seconds with
+     * sweepEvery(executor, period, unit) to free the memory of a map that
+     * might not be used for a while
+     */
+    public synchronized void sweep() {
+        advance();
+    }
+
+    /**
+     * Runs sweep() on the executor with the period between the runs
+     *
+     * @param executor The executor
+     * @param period   The time between the end of a sweep and the next one
+     * @param unit     The unit of the period
+     * @return The scheduled sweeps, cancelling it stops them
+     */
+    public ScheduledFuture<?> sweepEvery(ScheduledExecutorService executor,
+            long period, TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(this::sweep, period, period, unit);
+    }
+
+    // the node of the key if it's still alive, an expired one is removed
+    // right away, since its timer might still wait for the end of the tick
+    private Node find(K key) {
+        long now = advance();
+        Node node = index.get(key);
+        if (node == null)
+            return null;
+        if (isLive(node, now))
+            return node;
+
+        discard(node);
+        return null;
+    }
+
+    private long advance() {
+        long now = ticker.getAsLong() - origin;
+        wheel.advance(now);
+        return now;
+    }
+
+    // a new node still has a null value
+    private boolean isLive(Node node, long now) {
+        return node.value != null && node.deadline - now > 0;
+    }
+
+    private void set(Node node, V value, long deadline) {
+        wheel.cancel(node);
+        node.value = value;
+        node.deadline = deadline;
+        wheel.schedule(node);
+    }
+
+    private void discard(Node node) {
+        wheel.cancel(node);
+        index.remove(node.key);
+    }
+
+    private static long toNanos(long ttl, TimeUnit unit) {
+        if (ttl < 0)
+            throw new IllegalArgumentException("negative ttl: " + ttl);
+        return Math.min(unit.toNanos(ttl), MAX_TTL);
+    }
+
+    private static void checkValue(Object value) {
+        if (value == null)
+            throw new NullPointerException("null values are not allowed");
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // the entries that expired during the current tick of the wheel are
+    // still counted
+    @Override
+    public synchronized int size() {
+        advance();
+        return index.size();
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    // skips the entries that expired before the cursor was created, and
+    // like the cursors of the other maps it must not be used while the map
+    // is modified, which includes sweep()
+    @Override
+    public synchronized MapCursor<K, V> cursor() {
+        long now = advance();
+        MapCursor<K, Node> nodes = index.cursor();
+        return new MapCursor<K, V>() {
+            @Override
+            public boolean advance() {
+                while (nodes.advance()) {
+                    if (isLive(nodes.value(), now))
+                        return true;
+                }
+                return false;
+            }
+
+            @Override
+            public K key() {
+                return nodes.key();
+            }
+
+            @Override
+            public V value() {
+                return nodes.value().value;
+            }
+        };
+    }
+
+    @Override
+    public synchronized void forEach(BiConsumer<? super K, ? super V> action) {
+        long now = advance();
+        index.forEach((key, node) -> {
+            if (isLive(node, now))
+                action.accept(key, node.value);
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package map;
+
+// compares the control bytes of SwissHashMap a whole group at a time, there
+// are two implementations, one with the vector api, which turns a group into
+// a single simd compare, and a plain java one, the vector one is only used
+// when it's asked for with -Dmap.vectorGroupMatcher=true and the vector api,
+// which is still an incubator module, is enabled with
+// --add-modules jdk.incubator.vector
+interface GroupMatcher {
+    // the amount of control bytes in a group, 16 bytes fit a 128-bit vector,
+    // which every cpu with simd has
+    int GROUP_SIZE = 16;
+    String VECTOR_PROPERTY = "map.vectorGroupMatcher";
+
+    /**
+     * Finds the control bytes of the group that are equal to the given byte
+     *
+     * @param ctrl   The control bytes
+     * @param offset The index of the first byte of the group
+     * @param value  The byte to look for
+     * @return A bitmask of the matches, bit i is set if the i:th byte of the
+     *         group matches
+     */
+    int match(byte[] ctrl, int offset, byte value);
+
+    /**
+     * Finds the control bytes of the group that are negative, i.e. the
+     * empty and deleted slots, since the fingerprint of a full slot is never
+     * negative
+     *
+     * @param ctrl   The control bytes
+     * @param offset The index of the first byte of the group
+     * @return A bitmask of the matches, bit i is set if the i:th byte of the
+     *         group matches
+     */
+    int matchNegative(byte[] ctrl, int offset);
+
+    /**
+     * Picks the vector implementation if it was asked for and the vector api
+     * is available, else the scalar one
+     *
+     * @return The matcher to use on this jvm
+     */
+    static GroupMatcher create() {
+        // java 17 doesn't compile VectorMask.toLong() into a single
+        // instruction yet, which makes the vector matcher about 3 times
+        // slower than the scalar one there, so it's opt-in for the jvms that
+        // do, rather than guessing from the version
+        if (!Boolean.getBoolean(VECTOR_PROPERTY))
+            return new ScalarGroupMatcher();
+
+        try {
+            GroupMatcher matcher = new VectorGroupMatcher();
+            // make sure every vector class it needs can actually be loaded
+            matcher.match(new byte[GROUP_SIZE], 0, (byte) 0);
+            return matcher;
+        } catch (LinkageError e) {
+            return new ScalarGroupMatcher();
+        }
+    }
+}
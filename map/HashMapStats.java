@@ -0,0 +1,148 @@
+package map;
+
+import java.util.Arrays;
+
+// a snapshot of the shape of a LinearProbingHashMap or a
+// SeparateChainingHashMap, taken by their stats() method, which walks the
+// whole table, so it costs O(capacity) but nothing at all until it's called
+//
+// what tells the usual problems apart:
+// - bad hashcodes: distribution() well above 1 and a long tail in the
+//   histogram even though the load factor is fine
+// - tombstones: a lot of deleted() slots in a linear probing map, which
+//   make the misses walk further than the size suggests
+// - resize storms: resizes() and resizeNanos() going up while size() stays
+//   about the same, only counted after recordStats() was called on the map
+public final class HashMapStats {
+    private final String histogramName;
+    private final long[] histogram;
+    private final int size;
+    private final int capacity;
+    private final int deleted;
+    private final double loadFactor;
+    private final double distribution;
+    private final long resizes;
+    private final long resizeNanos;
+
+    HashMapStats(String histogramName, long[] histogram, int size,
+            int capacity, int deleted, double loadFactor, double distribution,
+            long resizes, long resizeNanos) {
+        this.histogramName = histogramName;
+        this.histogram = histogram;
+        this.size = size;
+        this.capacity = capacity;
+        this.deleted = deleted;
+        this.loadFactor = loadFactor;
+        this.distribution = distribution;
+        this.resizes = resizes;
+        this.resizeNanos = resizeNanos;
+    }
+
+    // for a LinearProbingHashMap histogram()[i] is the amount of keys that
+    // are found with i probes, so [0] is always 0, for a
+    // SeparateChainingHashMap it's the amount of buckets that hold i keys, a
+    // tree bucket counts with its size
+    public long[] histogram() {
+        return histogram.clone();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // the length of the table, while an incremental resize is in progress
+    // it's the length of the new one
+    public int capacity() {
+        return capacity;
+    }
+
+    // the slots that are marked as deleted, always 0 for separate chaining
+    public int deleted() {
+        return deleted;
+    }
+
+    // the load factor the map itself resizes by, for linear probing the
+    // deleted slots count as full
+    public double loadFactor() {
+        return loadFactor;
+    }
+
+    // how evenly the mixed hashes spread the keys over the table, with the
+    // formula from sedgewick's algorithms: the sum of b(b + 1) / 2 over the
+    // amount b of keys whose hash picks a slot, divided by what that sum is
+    // expected to be for random hashes, so 1 is as good as random and
+    // anything much above it means the hashcodes collide
+    public double distribution() {
+        return distribution;
+    }
+
+    public long resizes() {
+        return resizes;
+    }
+
+    // the time spent on moving the entries into the new tables, including
+    // the steps of an incremental resize
+    public long resizeNanos() {
+        return resizeNanos;
+    }
+
+    /**
+     * @param counts The amount of keys whose hash picks each slot
+     * @param keys   The sum of the counts
+     * @return The value of distribution() for the counts
+     */
+    static double distribution(int[] counts, int keys) {
+        if (keys == 0)
+            return 1.0;
+
+        double sum = 0;
+        for (int count : counts)
+            sum += count * (count + 1.0) / 2;
+        double m = counts.length;
+        return sum / (keys / (2 * m) * (keys + 2 * m - 1));
+    }
+
+    /**
+     * Increments histogram[length], growing the histogram if it's too short
+     *
+     * @param histogram The histogram
+     * @param length    The length to count
+     * @return The histogram, or a longer copy of it
+     */
+    static long[] count(long[] histogram, int length) {
+        if (length >= histogram.length)
+            histogram = Arrays.copyOf(histogram,
+                Math.max(length + 1, 2 * histogram.length));
+        histogram[length]++;
+        return histogram;
+    }
+
+    /**
+     * @param histogram The histogram
+     * @return A copy of the histogram without the zeroes at the end
+     */
+    static long[] trim(long[] histogram) {
+        int length = histogram.length;
+        while (length > 0 && histogram[length - 1] == 0)
+            length--;
+        return Arrays.copyOf(histogram, length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("size ").append(size)
+            .append(", capacity ").append(capacity)
+            .append(", deleted ").append(deleted)
+            .append(String.format(", load factor %.3f", loadFactor))
+            .append(String.format(", distribution %.3f", distribution))
+            .append(", resizes ").append(resizes)
+            .append(String.format(" (%.3f ms)", resizeNanos / 1e6))
+            .append('\n').append(histogramName).append(':');
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] != 0)
+                sb.append(' ').append(i).append('=').append(histogram[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package map;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// hashing helpers shared by the hash maps, all of them use tables whose
+// length is a power of two, so that the index can be computed with a mask
+// instead of a modulo, which is a lot cheaper than an integer division
+final class Hashing {
+    private Hashing() {}
+
+    /**
+     * Scrambles the hashcode so that every bit of it affects the low bits,
+     * which are the only bits a power of two table looks at, otherwise keys
+     * such as sequential ids or even numbers only ever land in a few slots
+     *
+     * @param hashCode The hashcode of the key
+     * @param seed     The seed of the map, 0 if it's not seeded
+     * @return The mixed hash
+     */
+    static int mix(int hashCode, int seed) {
+        // the finalizer of murmur3, every input bit flips every output bit
+        // with a probability of about 1/2
+        int h = hashCode ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Same as mix(hashCode, 0), but for the primitive long keys, so that
+     * the upper 32 bits aren't thrown away
+     *
+     * @param key The key
+     * @return The mixed hash
+     */
+    static int mix(long key) {
+        return (int) mix64(key);
+    }
+
+    /**
+     * Same as mix(key), but keeps all 64 bits, for the tables that can have
+     * more than 2^32 slots
+     *
+     * @param key The key, or a hash of it that isn't mixed well enough
+     * @return The mixed hash
+     */
+    static long mix64(long key) {
+        // the 64-bit finalizer of murmur3
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Creates a seed for a map that doesn't want its layout to be
+     * predictable, so that an attacker can't pick keys that all land in the
+     * same slot, note that keys with the exact same hashcode still collide no
+     * matter what the seed is
+     *
+     * @return A random seed
+     */
+    static int randomSeed() {
+        return ThreadLocalRandom.current().nextInt();
+    }
+}
@@ -0,0 +1,352 @@
+package map;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// a linear probing hash map from int to int, the keys and values are stored
+// as they are in two int arrays, so nothing is ever boxed as long as the
+// int overloads are used, the Map<Integer, Integer> methods are only there
+// for compatibility and box/unbox on every call
+public class IntIntHashMap implements Map<Integer, Integer> {
+    private int[] keys;
+    private int[] values;
+    // the amount of entries in the arrays, i.e. not counting the 0 key
+    private int size;
+    // 0 marks an empty slot in the keys array, so the entry of the key 0
+    // has to live outside of the arrays
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    private static final int EMPTY = 0;
+    // has to be a power of two, see Hashing
+    private static final int INIT_SIZE = 64;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final float MIN_LOAD_FACTOR = 0.25f;
+
+    public IntIntHashMap() {
+        keys = new int[INIT_SIZE];
+        values = new int[INIT_SIZE];
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value
+     * @return The value that was associated with the key before, or 0 if
+     *         the key didn't exist, same as get(key)
+     */
+    public int put(int key, int value) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return 0;
+        }
+        int previous = valueAt(index);
+        setValue(index, value);
+        return previous;
+    }
+
+    /**
+     * Same as merge(key, value, function) of interfaces.Map, without boxing
+     * anything, e.g. merge(key, 1, Integer::sum) counts the key
+     *
+     * @param key      The key
+     * @param value    The value to combine with
+     * @param function Computes the new value from the current value and the
+     *                 value
+     * @return The new value
+     */
+    public int merge(int key, int value, IntBinaryOperator function) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return value;
+        }
+        int merged = function.applyAsInt(valueAt(index), value);
+        setValue(index, merged);
+        return merged;
+    }
+
+    /**
+     * @param key The key
+     * @return The value associated with the key, or 0 if the key doesn't
+     *         exist, use getOrDefault(key, defaultValue) or containsKey(key)
+     *         when 0 is a valid value
+     */
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    public int getOrDefault(int key, int defaultValue) {
+        int index = find(key);
+        return index < 0 ? defaultValue : valueAt(index);
+    }
+
+    public void remove(int key) {
+        int index = find(key);
+        if (index >= 0)
+            delete(index);
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    // the 0 key lives outside of the arrays, so find(key) and the helpers
+    // below pretend that it's in the slot right after the last one
+    private int find(int key) {
+        if (key == EMPTY)
+            return hasZeroKey ? keys.length : -keys.length - 1;
+
+        int mask = keys.length - 1;
+        int index = hash(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key)
+                return index;
+            index = (index + 1) & mask;
+        }
+        return -index - 1;
+    }
+
+    private int valueAt(int index) {
+        return index == keys.length ? zeroValue : values[index];
+    }
+
+    private void setValue(int index, int value) {
+        if (index == keys.length)
+            zeroValue = value;
+        else
+            values[index] = value;
+    }
+
+    // puts the key into the free slot that find(key) returned
+    private void insert(int index, int key, int value) {
+        if (index == keys.length) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        size++;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    private void delete(int index) {
+        if (index == keys.length) {
+            hasZeroKey = false;
+            return;
+        }
+        shiftBack(index);
+        size--;
+        if ((double) size / keys.length < MIN_LOAD_FACTOR
+                && keys.length > INIT_SIZE)
+            resize(keys.length / 2);
+    }
+
+    // every operation that might add the key grows the table before it looks
+    // for the key, so that the slot it finds is still the right one
+    private void growIfFull() {
+        if ((double) size / keys.length > MAX_LOAD_FACTOR)
+            resize(2 * keys.length);
+    }
+
+    // instead of leaving a deleted marker behind, the entries after the
+    // removed one are moved back into the hole whenever their probe
+    // sequence passes through it, there is no deleted marker to spare
+    // anyway since every int is a valid key
+    private void shiftBack(int hole) {
+        int mask = keys.length - 1;
+        int index = (hole + 1) & mask;
+        while (keys[index] != EMPTY) {
+            int home = hash(keys[index]);
+            // the entry can fill the hole if the hole lies between its home
+            // slot and its current slot, i.e. it's at least as far away from
+            // its home as from the hole
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hole = index;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private int hash(int key) {
+        return Hashing.mix(key, 0) & (keys.length - 1);
+    }
+
+    private void resize(int newSize) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[newSize];
+        values = new int[newSize];
+        int mask = newSize - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+
+            int index = hash(oldKeys[i]);
+            while (keys[index] != EMPTY)
+                index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    // --------------------------interfaces.Map methods-------------------------
+
+    @Override
+    public Integer put(Integer key, Integer value) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return null;
+        }
+        Integer previous = valueAt(index);
+        setValue(index, value);
+        return previous;
+    }
+
+    @Override
+    public Integer putIfAbsent(Integer key, Integer value) {
+        growIfFull();
+        int index = find(key);
+        if (index >= 0)
+            return valueAt(index);
+
+        insert(-index - 1, key, value);
+        return null;
+    }
+
+    @Override
+    public Integer compute(Integer key, BiFunction<? super Integer, ? super Integer, ? extends Integer> function) {
+        growIfFull();
+        int index = find(key);
+        Integer value = function.apply(key, index < 0 ? null : valueAt(index));
+        if (index < 0) {
+            if (value != null)
+                insert(-index - 1, key, value);
+        } else if (value == null) {
+            delete(index);
+        } else {
+            setValue(index, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Integer computeIfAbsent(Integer key, Function<? super Integer, ? extends Integer> function) {
+        growIfFull();
+        int index = find(key);
+        if (index >= 0)
+            return valueAt(index);
+
+        Integer value = function.apply(key);
+        if (value != null)
+            insert(-index - 1, key, value);
+        return value;
+    }
+
+    @Override
+    public Integer merge(Integer key, Integer value, BiFunction<? super Integer, ? super Integer, ? extends Integer> function) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return value;
+        }
+        Integer merged = function.apply(valueAt(index), value);
+        if (merged == null)
+            delete(index);
+        else
+            setValue(index, merged);
+        return merged;
+    }
+
+    @Override
+    public Integer get(Integer key) {
+        int index = find(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public Integer getOrDefault(Integer key, Integer defaultValue) {
+        int index = find(key);
+        return index < 0 ? defaultValue : valueAt(index);
+    }
+
+    @Override
+    public void remove(Integer key) {
+        remove(key.intValue());
+    }
+
+    @Override
+    public boolean containsKey(Integer key) {
+        return containsKey(key.intValue());
+    }
+
+    @Override
+    public Iterable<Integer> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // key() and value() box, intKey() and intValue() walk the map without
+    // allocating anything
+    public final class Cursor implements MapCursor<Integer, Integer> {
+        // -1 is the entry of the 0 key, which lives outside of the arrays
+        private int index = hasZeroKey ? -2 : -1;
+
+        private Cursor() {}
+
+        @Override
+        public boolean advance() {
+            while (++index < keys.length) {
+                if (index < 0 || keys[index] != EMPTY)
+                    return true;
+            }
+            return false;
+        }
+
+        public int intKey() {
+            return index < 0 ? EMPTY : keys[index];
+        }
+
+        public int intValue() {
+            return index < 0 ? zeroValue : values[index];
+        }
+
+        @Override
+        public Integer key() {
+            return intKey();
+        }
+
+        @Override
+        public Integer value() {
+            return intValue();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+}
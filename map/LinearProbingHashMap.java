@@ -1,143 +1,325 @@
 package map;
 
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 import interfaces.Map;
+import interfaces.MapCursor;
 
 @SuppressWarnings("unchecked")
 public class LinearProbingHashMap<K, V> implements Map<K, V> {
-    private Object[] table;
-    // the size of all non-deleted nodes
+    // the keys and the values live in two parallel arrays, the entry at index
+    // i is keys[i] -> values[i], so no object is created per entry and a
+    // probe only walks over the keys array instead of chasing pointers to
+    // nodes, the keys array is Object[] since it also holds DELETED
+    private Object[] keys;
+    private V[] values;
+    // the size of all non-deleted entries
     private int size;
-    // the size of all deleted nodes
+    // the size of all deleted entries
     private int deleted;
-    // to represent a deleted node
-    private final Node DELETED;
+    // mixed into every hash, 0 unless the map is created with a random seed
+    private final int seed;
+    // in incremental mode, a resize only allocates the new table and the
+    // entries are moved over a few slots at a time by every operation, until
+    // then the entries not yet moved are still in the old table
+    private final boolean incremental;
+    private Object[] oldKeys;
+    private V[] oldValues;
+    // every slot of the old table before this index has been moved
+    private int migrated;
+    // only counted after recordStats(), see HashMapStats
+    private boolean recording;
+    private long resizes;
+    private long resizeNanos;
+    // to represent a deleted entry, shared between all maps since it never
+    // leaves the keys array anyway
+    private static final Object DELETED = new Object();
 
+    // has to be a power of two, see Hashing
     private static final int INIT_SIZE = 64;
     // according to some very complicated math calculations which i don't
-    // understand the optimal load factor should be below 3/4 
+    // understand the optimal load factor should be below 3/4
     private static final float MAX_LOAD_FACTOR = 0.75f;
     // even though the smaller the load factor is, the faster the hashmap is,
     // it's still not really worth the memory trade-off
     private static final float MIN_LOAD_FACTOR = 0.25f;
+    // the amount of old slots every operation moves during an incremental
+    // resize, with 16 the old table is gone long before the new one can
+    // reach MAX_LOAD_FACTOR, both when growing and when shrinking
+    private static final int MIGRATION_STEP = 16;
 
-    private class Node {
-        K key;
-        V value;
+    public LinearProbingHashMap() {
+        this(false);
+    }
 
-        public Node(K key, V value) {
-            this.key = key;
-            this.value = value;
-        }
+    // a randomly seeded map places the keys differently on every instance,
+    // use it when the keys come from somewhere you don't trust
+    public LinearProbingHashMap(boolean randomSeed) {
+        this(randomSeed, false);
     }
 
-    public LinearProbingHashMap() {
-        table = new Object[INIT_SIZE];
+    // an incremental map never rehashes the whole table in a single
+    // operation, so no operation costs O(n), at the price of looking into
+    // two tables while a resize is in progress
+    public LinearProbingHashMap(boolean randomSeed, boolean incremental) {
+        keys = new Object[INIT_SIZE];
+        values = (V[]) new Object[INIT_SIZE];
         size = 0;
         deleted = 0;
-        DELETED = new Node(null, null);
+        seed = randomSeed ? Hashing.randomSeed() : 0;
+        this.incremental = incremental;
     }
 
     @Override
-    public void put(K key, V value) {
-        if (loadFactor() > MAX_LOAD_FACTOR)
-            resize(2 * table.length);
+    public V put(K key, V value) {
+        beforeInsert();
+        int index = find(key);
+        if (index >= 0) {
+            // if the key already exists, update the value
+            V previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        // the key doesn't exist in the table, it might still be in the old
+        // table though, in which case it's moved over instead
+        int old = indexOfOld(key);
+        V previous = old < 0 ? null : oldValues[old];
+        insert(-index - 1, old, key, value);
+        return previous;
+    }
 
-        int index = hash(key);
-        Node node = node(table[index]);
-        while (node != null && !isDeleted(node)) {
-            if (node.key.equals(key)) {
-                // if the key already exists, update the value
-                node.value = value;
-                return;
-            }
-            // else keep going through the table to look for an empty spot
-            index = (index + 1) % table.length;
-            node = node(table[index]);
+    @Override
+    public V putIfAbsent(K key, V value) {
+        beforeInsert();
+        int index = find(key);
+        if (index >= 0) {
+            V previous = values[index];
+            if (previous == null)
+                values[index] = value;
+            return previous;
         }
-        // if the node to be replaced is a deleted node then adjust the
-        // deleted size
-        if (isDeleted(node))
-            deleted--;
-        // the key doesn't exist in the table, so create a new node
-        size++;
-        table[index] = new Node(key, value);
+        int old = indexOfOld(key);
+        V previous = old < 0 ? null : oldValues[old];
+        if (previous == null)
+            insert(-index - 1, old, key, value);
+        return previous;
     }
 
     @Override
-    public V get(K key) {
-        int index = hash(key);
-        Node node = node(table[index]);
-        while (node != null) {
-            if (!isDeleted(node) && node.key.equals(key))
-                // we have found our key
-                return node.value;
-            // keep looking until we found either an empty cell or the key
-            // we are looking for
-            index = (index + 1) % table.length;
-            node = node(table[index]);
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        beforeInsert();
+        int index = find(key);
+        if (index >= 0) {
+            V value = function.apply(key, values[index]);
+            if (value == null)
+                delete(index);
+            else
+                values[index] = value;
+            return value;
+        }
+        int old = indexOfOld(key);
+        V value = function.apply(key, old < 0 ? null : oldValues[old]);
+        if (value != null) {
+            insert(-index - 1, old, key, value);
+        } else if (old >= 0) {
+            clearOld(old);
+            size--;
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        beforeInsert();
+        int index = find(key);
+        if (index >= 0 && values[index] != null)
+            return values[index];
+        int old = index < 0 ? indexOfOld(key) : -1;
+        if (old >= 0 && oldValues[old] != null)
+            return oldValues[old];
+
+        V value = function.apply(key);
+        if (value == null)
+            return null;
+        if (index >= 0)
+            values[index] = value;
+        else
+            insert(-index - 1, old, key, value);
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        beforeInsert();
+        int index = find(key);
+        if (index >= 0) {
+            V previous = values[index];
+            V merged = previous == null ? value : function.apply(previous, value);
+            if (merged == null)
+                delete(index);
+            else
+                values[index] = merged;
+            return merged;
         }
-        return null;
+        int old = indexOfOld(key);
+        V previous = old < 0 ? null : oldValues[old];
+        V merged = previous == null ? value : function.apply(previous, value);
+        if (merged != null) {
+            insert(-index - 1, old, key, merged);
+        } else if (old >= 0) {
+            clearOld(old);
+            size--;
+        }
+        return merged;
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        migrate();
+        int index = indexOf(key, keys);
+        if (index >= 0)
+            return values[index];
+        // the key might not have been moved yet
+        index = indexOfOld(key);
+        if (index >= 0)
+            return oldValues[index];
+        return defaultValue;
     }
 
     @Override
     public void remove(K key) {
-        int index = hash(key);
-        Node node = node(table[index]);
-        while (node != null) {
-            if (!isDeleted(node) && node.key.equals(key)) {
-                // don't delete the key directly, just set the node as deleted
-                table[index] = DELETED;
-                deleted++;
-                size--;
-                // check to make sure the table is not too empty
-                if (loadFactor() < MIN_LOAD_FACTOR)
-                    resize(table.length / 2);
-                return;
-            }
-            // keep looking until we found either an empty cell or the key
-            // we are looking for
-            index = (index + 1) % table.length;
-            node = node(table[index]);
+        migrate();
+        int index = indexOf(key, keys);
+        if (index >= 0) {
+            delete(index);
+            return;
+        }
+        // the key might not have been moved yet
+        index = indexOfOld(key);
+        if (index >= 0) {
+            clearOld(index);
+            size--;
         }
     }
 
     @Override
     public boolean containsKey(K key) {
+        migrate();
+        return indexOf(key, keys) >= 0 || indexOfOld(key) >= 0;
+    }
+
+    // every operation that might add the key makes room before it looks for
+    // the key, so that the slot it finds is still the right one afterwards
+    private void beforeInsert() {
+        migrate();
+        if (loadFactor() > MAX_LOAD_FACTOR && !isMigrating())
+            resize(2 * keys.length);
+    }
+
+    // looks for the key in the table, returns its slot if it's there, else
+    // -(slot + 1) of the slot where it goes, which is the first deleted slot
+    // on the way, but we still need to look past those since the key might
+    // be further down the probe sequence
+    private int find(K key) {
         int index = hash(key);
-        Node node = node(table[index]);
-        while (node != null) {
-            if (!isDeleted(node) && node.key.equals(key))
-                // the key exists
-                return true;
+        int free = -1;
+        Object k = keys[index];
+        while (k != null) {
+            if (isDeleted(k)) {
+                if (free < 0)
+                    free = index;
+            } else if (k.equals(key)) {
+                return index;
+            }
+            // else keep going through the table to look for an empty spot
+            index = (index + 1) & (keys.length - 1);
+            k = keys[index];
+        }
+        return -(free >= 0 ? free : index) - 1;
+    }
+
+    // puts the key into the slot that find(key) returned, the key is moved
+    // over from the old table if it's there at index old, else it's new
+    private void insert(int index, int old, K key, V value) {
+        // if the slot to be reused is a deleted slot then adjust the deleted
+        // size
+        if (isDeleted(keys[index]))
+            deleted--;
+        if (old >= 0)
+            clearOld(old);
+        else
+            size++;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    private void delete(int index) {
+        // don't delete the key directly, just mark the slot as deleted
+        keys[index] = DELETED;
+        values[index] = null;
+        deleted++;
+        size--;
+        // check to make sure the table is not too empty
+        if (loadFactor() < MIN_LOAD_FACTOR && keys.length > INIT_SIZE
+                && !isMigrating())
+            resize(keys.length / 2);
+    }
+
+    private int indexOf(K key, Object[] table) {
+        int index = hash(key, table.length);
+        Object k = table[index];
+        while (k != null) {
+            if (!isDeleted(k) && k.equals(key))
+                // we have found our key
+                return index;
             // keep looking until we found either an empty cell or the key
             // we are looking for
-            index = (index + 1) % table.length;
-            node = node(table[index]);
+            index = (index + 1) & (table.length - 1);
+            k = table[index];
         }
-        return false;
+        return -1;
     }
 
-    private double loadFactor() {
-        return (double) (size + deleted) / table.length;
+    // the slot of the key in the old table if there is an old table and the
+    // key hasn't been moved yet, else -1
+    private int indexOfOld(K key) {
+        if (!isMigrating())
+            return -1;
+
+        return indexOf(key, oldKeys);
     }
 
-    private int hash(K key) {
-        // first, remove the signed bit in the hashcode so that it's guaranteed
-        // a positive number as negative modulo in java is scuffed and then
-        // we simply compress the result into a range of 0 to table.length-1
-        // and we get the index translated from the key's hashcode
-        return (key.hashCode() & 0x7fffffff) % table.length;
+    private void clearOld(int index) {
+        // the slot has to be marked as deleted rather than emptied, since the
+        // keys after it that aren't moved yet must still be reachable
+        oldKeys[index] = DELETED;
+        oldValues[index] = null;
     }
 
-    private Node node(Object obj) {
-        if (obj == null)
-            return null;
+    private double loadFactor() {
+        return (double) (size + deleted) / keys.length;
+    }
 
-        return (Node) obj;
+    private int hash(Object key) {
+        return hash(key, keys.length);
     }
 
-    private boolean isDeleted(Node node) {
-        return node == DELETED;
+    private int hash(Object key, int length) {
+        // the table length is always a power of two, so masking the mixed
+        // hash with length-1 compresses it into a range of 0 to length-1,
+        // no need to worry about the sign bit either
+        return Hashing.mix(key.hashCode(), seed) & (length - 1);
+    }
+
+    private boolean isDeleted(Object key) {
+        return key == DELETED;
     }
 
     @Override
@@ -150,27 +332,163 @@ public class LinearProbingHashMap<K, V> implements Map<K, V> {
         return size;
     }
 
+    // makes stats() count the resizes and the time they take, the rest of
+    // the stats are taken from the table when stats() is called, so a map
+    // that doesn't record pays nothing, one that does calls nanoTime twice
+    // per resize, and per operation while an incremental resize is going on
+    public void recordStats() {
+        recording = true;
+    }
+
+    // walks the whole table, the probe length of a key is the distance from
+    // the slot its hash picks to the slot it's in, plus one
+    public HashMapStats stats() {
+        long[] probes = new long[8];
+        int[] homes = new int[keys.length];
+        if (isMigrating())
+            probes = probeLengths(oldKeys, probes, homes);
+        probes = probeLengths(keys, probes, homes);
+        return new HashMapStats("probe lengths", HashMapStats.trim(probes),
+            size, keys.length, deleted, loadFactor(),
+            HashMapStats.distribution(homes, size), resizes, resizeNanos);
+    }
+
+    // the homes are counted in the current table, even for the keys that
+    // are still in the old one
+    private long[] probeLengths(Object[] table, long[] probes, int[] homes) {
+        for (int i = 0; i < table.length; i++) {
+            Object k = table[i];
+            if (k == null || isDeleted(k))
+                continue;
+            int home = hash(k, table.length);
+            probes = HashMapStats.count(probes, ((i - home) & (table.length - 1)) + 1);
+            homes[hash(k)]++;
+        }
+        return probes;
+    }
+
     @Override
     public Iterable<K> keys() {
-        // too much pain in the ass trying to figure out an efficient way
-        // to make an iterable for this
-        throw new UnsupportedOperationException();
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    // the same walk as the cursor, without the cursor
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (isMigrating())
+            forEach(oldKeys, oldValues, action);
+        forEach(keys, values, action);
     }
 
-    // awful resize function, it suffers the same problem as
-    // SeparateChainingHashMap, and as always, it's a fix for another day
+    private void forEach(Object[] keys, V[] values,
+            BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            Object k = keys[i];
+            if (k != null && !isDeleted(k))
+                action.accept((K) k, values[i]);
+        }
+    }
+
+    // walks through the old table first, if there is one, and then the new
+    // one, an entry that was moved is marked as deleted in the old table, so
+    // no entry is seen twice
+    private class Cursor implements MapCursor<K, V> {
+        private Object[] table = isMigrating() ? oldKeys : keys;
+        private V[] tableValues = isMigrating() ? oldValues : values;
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            while (true) {
+                while (++index < table.length) {
+                    Object k = table[index];
+                    if (k != null && !isDeleted(k))
+                        return true;
+                }
+                if (table == keys)
+                    return false;
+
+                table = keys;
+                tableValues = values;
+                index = -1;
+            }
+        }
+
+        @Override
+        public K key() {
+            return (K) table[index];
+        }
+
+        @Override
+        public V value() {
+            return tableValues[index];
+        }
+    }
+
+    // only moves the references over instead of calling put, newSize has to
+    // be a power of two, in incremental mode this only swaps the tables and
+    // leaves the moving to migrate()
     private void resize(int newSize) {
-        Object[] oldTable = table;
-        table = new Object[newSize];
-        // reset the sizes
-        size = 0;
+        long start = recording ? System.nanoTime() : 0;
+        oldKeys = keys;
+        oldValues = values;
+        migrated = 0;
+        keys = new Object[newSize];
+        values = (V[]) new Object[newSize];
+        // the deleted slots are simply dropped
         deleted = 0;
-        // add everything from old table to the new table
-        for (Object obj : oldTable) {
-            Node node = node(obj);
-            if (node != null && !isDeleted(node)) {
-                this.put(node.key, node.value);
-            }
+        if (!incremental)
+            migrate(oldKeys.length);
+        if (recording) {
+            resizes++;
+            resizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    private boolean isMigrating() {
+        return oldKeys != null;
+    }
+
+    private void migrate() {
+        if (!isMigrating())
+            return;
+
+        long start = recording ? System.nanoTime() : 0;
+        migrate(MIGRATION_STEP);
+        if (recording)
+            resizeNanos += System.nanoTime() - start;
+    }
+
+    // moves the next slots of the old table to the new table
+    private void migrate(int slots) {
+        int end = Math.min(migrated + slots, oldKeys.length);
+        for (int i = migrated; i < end; i++) {
+            Object k = oldKeys[i];
+            if (k == null || isDeleted(k))
+                continue;
+            // the key is known not to exist in the new table, a put would
+            // have removed it from the old table, so just take the first
+            // free slot
+            int index = hash(k);
+            while (keys[index] != null && !isDeleted(keys[index]))
+                index = (index + 1) & (keys.length - 1);
+            if (isDeleted(keys[index]))
+                deleted--;
+            keys[index] = k;
+            values[index] = oldValues[i];
+            // same reason as in clearOld(index)
+            oldKeys[i] = DELETED;
+            oldValues[i] = null;
+        }
+        migrated = end;
+        if (migrated == oldKeys.length) {
+            oldKeys = null;
+            oldValues = null;
         }
     }
 }
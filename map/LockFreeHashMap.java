@@ -0,0 +1,523 @@
+package map;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// a thread-safe linear probing hash map that never locks, every write is a
+// compare-and-set on a single slot, loosely based on Cliff Click's
+// NonBlockingHashMap
+//
+// the rules that make it work:
+// - a key slot goes from null to a key exactly once and then never changes,
+//   a removed entry only gets its value replaced with TOMBSTONE, the
+//   tombstones are dropped the next time the table is copied
+// - a resize creates the next table and every thread that passes by helps
+//   copying the old one, a slot being copied has its value wrapped in a
+//   Prime and a slot that's done is TOMBPRIME (or KEY_DEAD if it was empty),
+//   nothing is ever written into a slot that is done, whoever wants to
+//   write there has to go to the next table
+// - a write to a key that exists in the old table first finishes copying
+//   that slot, so the next table always has the latest value
+//
+// null values are not allowed, since null is what "not in the map" looks
+// like in the table
+@SuppressWarnings("unchecked")
+public class LockFreeHashMap<K, V> implements Map<K, V> {
+    // the oldest table that is still in use, the tables it's being copied
+    // into hang off its next
+    private final AtomicReference<Table> table;
+    private final LongAdder size;
+
+    // has to be a power of two, see Hashing
+    private static final int INIT_SIZE = 16;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    // the amount of slots a helping thread copies at a time
+    private static final int COPY_CHUNK = 1024;
+
+    // the value of a removed entry
+    private static final Object TOMBSTONE = new Object();
+    // the key of a slot that was empty when it got copied
+    private static final Object KEY_DEAD = new Object();
+    // the value of a slot that is done copying
+    private static final Prime TOMBPRIME = new Prime(TOMBSTONE);
+    // what putIfMatch(...) expects to replace, besides a specific value
+    private static final Object MATCH_ANY = new Object();
+    private static final Object MATCH_ABSENT = new Object();
+    // only used by the copy, which must not fill a slot that anybody wrote
+    // to, not even a tombstone of a remove that came after the copied value
+    private static final Object MATCH_EMPTY = new Object();
+
+    // a value that is being copied to the next table
+    private static final class Prime {
+        final Object value;
+
+        Prime(Object value) {
+            this.value = value;
+        }
+    }
+
+    private static final class Table {
+        // the key of slot i is at 2i and its value at 2i+1, so both of them
+        // usually share a cache line
+        final AtomicReferenceArray<Object> kvs;
+        final int length;
+        // the amount of claimed key slots, they're never freed again
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicReference<Table> next = new AtomicReference<>();
+        // the next chunk of slots to be copied
+        final AtomicInteger copyIndex = new AtomicInteger();
+        // the amount of slots that are done copying
+        final AtomicInteger copyDone = new AtomicInteger();
+
+        Table(int length) {
+            this.length = length;
+            this.kvs = new AtomicReferenceArray<>(2 * length);
+        }
+
+        Object key(int i) {
+            return kvs.get(2 * i);
+        }
+
+        Object value(int i) {
+            return kvs.get(2 * i + 1);
+        }
+
+        boolean casKey(int i, Object expected, Object key) {
+            return kvs.compareAndSet(2 * i, expected, key);
+        }
+
+        boolean casValue(int i, Object expected, Object value) {
+            return kvs.compareAndSet(2 * i + 1, expected, value);
+        }
+
+        // a probe sequence longer than this means the table is too crowded,
+        // the key is then looked for or put into the next table instead
+        int reprobeLimit() {
+            return 10 + (length >> 2);
+        }
+    }
+
+    public LockFreeHashMap() {
+        table = new AtomicReference<>(new Table(INIT_SIZE));
+        size = new LongAdder();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        checkValue(value);
+        return (V) putIfMatch(table.get(), key, hash(key), value, MATCH_ANY,
+            true);
+    }
+
+    /**
+     * Atomically associates the value with the key if the key doesn't exist
+     *
+     * @param key   The key
+     * @param value The value
+     * @return The current value if the key already exists, else null
+     */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        checkValue(value);
+        return (V) putIfMatch(table.get(), key, hash(key), value,
+            MATCH_ABSENT, true);
+    }
+
+    /**
+     * Atomically replaces the value of the key with the result of the
+     * function, note that the function might be called more than once when
+     * other threads write to the same key at the same time
+     *
+     * @param key      The key
+     * @param function Computes the new value from the key and the current
+     *                 value, the current value is null if the key doesn't
+     *                 exist, returning null removes the key
+     * @return The new value
+     */
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int h = hash(key);
+        while (true) {
+            V old = get(key);
+            V value = function.apply(key, old);
+            if (old == null && value == null)
+                return null;
+
+            Object expected = old == null ? MATCH_ABSENT : old;
+            Object put = value == null ? TOMBSTONE : value;
+            Object seen = putIfMatch(table.get(), key, h, put, expected, true);
+            if (seen == old)
+                return value;
+            // someone else changed the value in between, try again
+        }
+    }
+
+    /**
+     * Same as putIfAbsent(key, value) with a computed value, the function is
+     * only called if the key doesn't exist, but it might still be called
+     * when another thread puts the key at the same time, whose value wins
+     *
+     * @param key      The key
+     * @param function Computes the value from the key, returning null leaves
+     *                 the map unchanged
+     * @return The current value of the key
+     */
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        V current = get(key);
+        if (current != null)
+            return current;
+
+        V value = function.apply(key);
+        if (value == null)
+            return null;
+        current = putIfAbsent(key, value);
+        return current == null ? value : current;
+    }
+
+    /**
+     * Atomically combines the value with the current value of the key, same
+     * as compute(key, function) the function might be called more than once
+     *
+     * @param key      The key
+     * @param value    The value to combine with
+     * @param function Computes the new value from the current value and the
+     *                 value, returning null removes the key
+     * @return The new value
+     */
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        checkValue(value);
+        int h = hash(key);
+        while (true) {
+            V old = get(key);
+            V merged = old == null ? value : function.apply(old, value);
+            Object expected = old == null ? MATCH_ABSENT : old;
+            Object put = merged == null ? TOMBSTONE : merged;
+            Object seen = putIfMatch(table.get(), key, h, put, expected, true);
+            if (seen == old)
+                return merged;
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        int h = hash(key);
+        Table t = table.get();
+        while (t != null) {
+            int mask = t.length - 1;
+            int index = h & mask;
+            int probes = 0;
+            while (true) {
+                Object k = t.key(index);
+                if (k == null)
+                    // keys never disappear, so the key has never been here
+                    // and thus never been in any of the next tables either
+                    return null;
+                if (k != KEY_DEAD && (k == key || k.equals(key))) {
+                    Object v = t.value(index);
+                    if (v == TOMBPRIME)
+                        // copied, look in the next table
+                        break;
+                    if (v instanceof Prime)
+                        // still the latest value, no one can write to the key
+                        // before the copy is done
+                        return (V) ((Prime) v).value;
+                    return v == TOMBSTONE ? null : (V) v;
+                }
+                if (k == KEY_DEAD || ++probes >= t.reprobeLimit())
+                    // the key can't be in this table
+                    break;
+                index = (index + 1) & mask;
+            }
+            t = t.next.get();
+        }
+        return null;
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        // null values aren't allowed, so null means the key doesn't exist
+        V value = get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    @Override
+    public void remove(K key) {
+        putIfMatch(table.get(), key, hash(key), TOMBSTONE, MATCH_ANY, true);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    // the one method that does every write, puts the value (or TOMBSTONE to
+    // remove) if the current value matches the expected one, returns the
+    // current value, or null if the key doesn't exist, so the write
+    // happened if and only if the returned value matches the expected one
+    private Object putIfMatch(Table t, Object key, int h, Object put,
+            Object expected, boolean count) {
+        outer:
+        while (true) {
+            int mask = t.length - 1;
+            int index = h & mask;
+            int probes = 0;
+            // first find the slot of the key, or claim an empty one
+            while (true) {
+                Object k = t.key(index);
+                if (k == null) {
+                    if (put == TOMBSTONE)
+                        // no need to claim a slot for a key that's removed
+                        return null;
+                    if (t.casKey(index, null, key)) {
+                        t.claimed.incrementAndGet();
+                        break;
+                    }
+                    // someone else was faster, maybe with the same key
+                    k = t.key(index);
+                }
+                if (k != KEY_DEAD && (k == key || k.equals(key)))
+                    break;
+                if (k == KEY_DEAD || ++probes >= t.reprobeLimit()) {
+                    if (put == TOMBSTONE && t.next.get() == null)
+                        return null;
+                    // no room for the key in this table, so it goes into the
+                    // next one, which has to be bigger, otherwise a lot of
+                    // keys with the same hash would overflow that one as well
+                    t = resize(t, true);
+                    continue outer;
+                }
+                index = (index + 1) & mask;
+            }
+
+            if (t.claimed.get() > MAX_LOAD_FACTOR * t.length)
+                resize(t, false);
+            if (t.next.get() != null) {
+                // the table is being copied, so the write goes into the next
+                // table, after moving the current value of the key there
+                copySlot(t, index);
+                helpCopy(t);
+                t = t.next.get();
+                continue;
+            }
+
+            // then swap the value
+            while (true) {
+                Object v = t.value(index);
+                if (v instanceof Prime) {
+                    // a resize started right under our nose
+                    copySlot(t, index);
+                    t = t.next.get();
+                    continue outer;
+                }
+                Object old = v == TOMBSTONE ? null : v;
+                if (!matches(expected, v) || (old == null && put == TOMBSTONE))
+                    return old;
+                if (t.casValue(index, v, put)) {
+                    if (count && old == null)
+                        size.increment();
+                    else if (count && put == TOMBSTONE)
+                        size.decrement();
+                    return old;
+                }
+            }
+        }
+    }
+
+    private boolean matches(Object expected, Object v) {
+        if (expected == MATCH_EMPTY)
+            return v == null;
+
+        Object old = v == TOMBSTONE ? null : v;
+        if (expected == MATCH_ANY)
+            return true;
+        if (expected == MATCH_ABSENT)
+            return old == null;
+        return expected == old;
+    }
+
+    // makes sure the next table of t exists and returns it
+    private Table resize(Table t, boolean grow) {
+        Table next = t.next.get();
+        if (next != null)
+            return next;
+
+        // big enough to be between 1/4 and 1/2 full, which can also mean
+        // shrinking if most of the claimed slots are tombstones
+        long live = size.sum();
+        int length = grow ? 2 * t.length : INIT_SIZE;
+        while (length < 2 * live && length < (1 << 30))
+            length *= 2;
+        t.next.compareAndSet(null, new Table(length));
+        return t.next.get();
+    }
+
+    // copies the next unclaimed chunk of t, if any
+    private void helpCopy(Table t) {
+        // checked first so that the index doesn't overflow when a lot of
+        // writes pass by after the copy is done
+        if (t.copyIndex.get() >= t.length)
+            return;
+
+        int start = t.copyIndex.getAndAdd(COPY_CHUNK);
+        if (start >= t.length)
+            return;
+
+        int end = Math.min(start + COPY_CHUNK, t.length);
+        for (int i = start; i < end; i++)
+            copySlot(t, i);
+    }
+
+    // moves the slot to the next table, it doesn't matter how many threads
+    // do this at the same time, it happens only once
+    private void copySlot(Table t, int index) {
+        // an empty slot is closed for good
+        Object k = t.key(index);
+        while (k == null) {
+            if (t.casKey(index, null, KEY_DEAD)) {
+                slotCopied(t);
+                return;
+            }
+            k = t.key(index);
+        }
+        if (k == KEY_DEAD)
+            return;
+
+        // wrap the value so that nobody can write to it anymore
+        Object v = t.value(index);
+        while (!(v instanceof Prime)) {
+            Prime box = v == null || v == TOMBSTONE
+                ? TOMBPRIME
+                : new Prime(v);
+            if (t.casValue(index, v, box)) {
+                if (box == TOMBPRIME) {
+                    // nothing to move
+                    slotCopied(t);
+                    return;
+                }
+                v = box;
+                break;
+            }
+            v = t.value(index);
+        }
+        if (v == TOMBPRIME)
+            return;
+
+        // only fills the slot in the next table if it's still empty, so
+        // copying it twice doesn't matter
+        Table next = t.next.get();
+        putIfMatch(next, k, hash(k), ((Prime) v).value, MATCH_EMPTY, false);
+        if (t.casValue(index, v, TOMBPRIME))
+            slotCopied(t);
+    }
+
+    private void slotCopied(Table t) {
+        if (t.copyDone.incrementAndGet() < t.length)
+            return;
+
+        // t is done, the next table replaces it, and maybe the one after
+        // that if it got done in the meantime
+        Table top = table.get();
+        while (top.copyDone.get() == top.length && top.next.get() != null) {
+            table.compareAndSet(top, top.next.get());
+            top = table.get();
+        }
+    }
+
+    private int hash(Object key) {
+        return Hashing.mix(key.hashCode(), 0);
+    }
+
+    private void checkValue(V value) {
+        if (value == null)
+            throw new NullPointerException("null values are not allowed");
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // only a snapshot, the map can change while it's being counted
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    // weakly consistent, the entries that are in the map for the whole walk
+    // are seen exactly once, the ones written meanwhile might or might not be
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor(newestTable());
+    }
+
+    // finishes every copy that is in progress, so that all entries are in
+    // a single table
+    private Table newestTable() {
+        Table t = table.get();
+        while (t.next.get() != null) {
+            for (int i = 0; i < t.length; i++)
+                copySlot(t, i);
+            t = t.next.get();
+        }
+        return t;
+    }
+
+    private class Cursor implements MapCursor<K, V> {
+        private final Table t;
+        private int index = -1;
+        // the slot can change right after advance() looks at it, so the
+        // entry is read once
+        private K key;
+        private V value;
+
+        Cursor(Table t) {
+            this.t = t;
+        }
+
+        @Override
+        public boolean advance() {
+            while (++index < t.length) {
+                Object k = t.key(index);
+                if (k == null || k == KEY_DEAD)
+                    continue;
+
+                Object v = t.value(index);
+                // another resize started after the cursor was created, the
+                // entry might already be in the next table
+                if (v instanceof Prime)
+                    v = get((K) k);
+                if (v == null || v == TOMBSTONE)
+                    continue;
+
+                key = (K) k;
+                value = (V) v;
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package map;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// a thread-safe separate chaining hash map, the table is split into
+// segments which are basically small independent hash maps with a lock each,
+// so writers only block the writers of the same segment instead of the whole
+// map, and readers never lock at all, this is how java's ConcurrentHashMap
+// used to work before java 8
+public class LockStripedHashMap<K, V> implements Map<K, V> {
+    private final Segment<K, V>[] segments;
+    // the segment of a hash is picked by its top bits, so that it doesn't
+    // correlate with the bucket inside of the segment, which is picked by the
+    // low bits
+    private final int segmentShift;
+
+    // has to be a power of two, enough to keep 32+ writing threads apart
+    private static final int DEFAULT_SEGMENTS = 64;
+    // has to be a power of two, see Hashing
+    private static final int SEGMENT_INIT_SIZE = 16;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+
+    // the key and hash never change, the value and next are volatile so that
+    // a reader without the lock always sees the latest writes
+    private static final class Node<K, V> {
+        final int hash;
+        final K key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, K key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment<K, V> {
+        // the lock of the table
+        final ReentrantLock lock = new ReentrantLock();
+        // replaced as a whole on resize, the elements of an atomic array are
+        // read and written with volatile semantics, so a reader sees a node
+        // fully initialized once it's in the table
+        volatile AtomicReferenceArray<Node<K, V>> table;
+        // only written while holding the lock
+        volatile int size;
+
+        Segment() {
+            table = new AtomicReferenceArray<>(SEGMENT_INIT_SIZE);
+            size = 0;
+        }
+
+        // no locking, the reader either sees the table before or after a
+        // resize and both of them contain every key that was in the map
+        Node<K, V> find(K key, int hash) {
+            AtomicReferenceArray<Node<K, V>> t = table;
+            Node<K, V> node = t.get(hash & (t.length() - 1));
+            while (node != null) {
+                if (node.hash == hash && node.key.equals(key))
+                    return node;
+                node = node.next;
+            }
+            return null;
+        }
+
+        // onlyIfAbsent leaves a key that has a value alone, returns the
+        // value the key had before
+        V put(K key, int hash, V value, boolean onlyIfAbsent) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Node<K, V>> t = table;
+                int index = hash & (t.length() - 1);
+                Node<K, V> head = t.get(index);
+                for (Node<K, V> node = head; node != null; node = node.next) {
+                    if (node.hash == hash && node.key.equals(key)) {
+                        V previous = node.value;
+                        if (previous == null || !onlyIfAbsent)
+                            node.value = value;
+                        return previous;
+                    }
+                }
+                add(t, index, head, key, hash, value);
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        V compute(K key, int hash,
+                BiFunction<? super K, ? super V, ? extends V> function) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Node<K, V>> t = table;
+                int index = hash & (t.length() - 1);
+                Node<K, V> head = t.get(index);
+                Node<K, V> prev = null;
+                Node<K, V> node = head;
+                while (node != null && !(node.hash == hash && node.key.equals(key))) {
+                    prev = node;
+                    node = node.next;
+                }
+                V value = function.apply(key, node == null ? null : node.value);
+                if (node == null) {
+                    if (value != null)
+                        add(t, index, head, key, hash, value);
+                } else if (value == null) {
+                    unlink(t, index, prev, node);
+                } else {
+                    node.value = value;
+                }
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        V merge(K key, int hash, V value,
+                BiFunction<? super V, ? super V, ? extends V> function) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Node<K, V>> t = table;
+                int index = hash & (t.length() - 1);
+                Node<K, V> head = t.get(index);
+                Node<K, V> prev = null;
+                Node<K, V> node = head;
+                while (node != null && !(node.hash == hash && node.key.equals(key))) {
+                    prev = node;
+                    node = node.next;
+                }
+                if (node == null) {
+                    add(t, index, head, key, hash, value);
+                    return value;
+                }
+                V merged = node.value == null
+                    ? value
+                    : function.apply(node.value, value);
+                if (merged == null)
+                    unlink(t, index, prev, node);
+                else
+                    node.value = merged;
+                return merged;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key, int hash) {
+            lock.lock();
+            try {
+                AtomicReferenceArray<Node<K, V>> t = table;
+                int index = hash & (t.length() - 1);
+                Node<K, V> prev = null;
+                for (Node<K, V> node = t.get(index); node != null;
+                        node = node.next) {
+                    if (node.hash == hash && node.key.equals(key)) {
+                        unlink(t, index, prev, node);
+                        return;
+                    }
+                    prev = node;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // the key doesn't exist in the bucket, called while holding the lock
+        private void add(AtomicReferenceArray<Node<K, V>> t, int index,
+                Node<K, V> head, K key, int hash, V value) {
+            // the new node is fully built before it's published
+            t.set(index, new Node<>(hash, key, value, head));
+            size++;
+            if (size > MAX_LOAD_FACTOR * t.length())
+                resize();
+        }
+
+        private void unlink(AtomicReferenceArray<Node<K, V>> t, int index,
+                Node<K, V> prev, Node<K, V> node) {
+            // a reader standing on the removed node can still follow its next
+            // to the rest of the bucket
+            if (prev == null)
+                t.set(index, node.next);
+            else
+                prev.next = node.next;
+            size--;
+        }
+
+        // only grows, and only this segment, so a resize never stops the
+        // whole map, called while holding the lock
+        private void resize() {
+            AtomicReferenceArray<Node<K, V>> oldTable = table;
+            AtomicReferenceArray<Node<K, V>> newTable =
+                new AtomicReferenceArray<>(2 * oldTable.length());
+            int mask = newTable.length() - 1;
+            for (int i = 0; i < oldTable.length(); i++) {
+                // the nodes are copied instead of relinked, since readers
+                // might still be walking through the old buckets and would
+                // otherwise end up in the wrong bucket
+                for (Node<K, V> node = oldTable.get(i); node != null;
+                        node = node.next) {
+                    int index = node.hash & mask;
+                    newTable.set(index, new Node<>(node.hash, node.key,
+                        node.value, newTable.get(index)));
+                }
+            }
+            table = newTable;
+        }
+    }
+
+    public LockStripedHashMap() {
+        this(DEFAULT_SEGMENTS);
+    }
+
+    // the amount of segments is rounded up to a power of two, it's about the
+    // amount of threads that can write at the same time
+    public LockStripedHashMap(int segments) {
+        int n = 1;
+        while (n < segments)
+            n *= 2;
+        this.segments = newSegments(n);
+        for (int i = 0; i < n; i++)
+            this.segments[i] = new Segment<>();
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+    }
+
+    // java can't create an array of a generic type, so it's an array of the
+    // raw type that is cast once here
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> Segment<K, V>[] newSegments(int n) {
+        return (Segment<K, V>[]) new Segment[n];
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    // the function is called while holding the lock of the segment, so it
+    // should be quick and must not touch the map
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int h = hash(key);
+        return segmentFor(h).compute(key, h, function);
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        int h = hash(key);
+        Segment<K, V> segment = segmentFor(h);
+        // the usual case of a key that already has a value doesn't take the
+        // lock and doesn't allocate the function below
+        Node<K, V> node = segment.find(key, h);
+        V current = node == null ? null : node.value;
+        if (current != null)
+            return current;
+
+        // check again under the lock, someone else might have been faster
+        return segment.compute(key, h,
+            (k, old) -> old != null ? old : function.apply(k));
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        int h = hash(key);
+        return segmentFor(h).merge(key, h, value, function);
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        int h = hash(key);
+        Node<K, V> node = segmentFor(h).find(key, h);
+        return node == null ? defaultValue : node.value;
+    }
+
+    @Override
+    public void remove(K key) {
+        int h = hash(key);
+        segmentFor(h).remove(key, h);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        int h = hash(key);
+        return segmentFor(h).find(key, h) != null;
+    }
+
+    private int hash(K key) {
+        return Hashing.mix(key.hashCode(), 0);
+    }
+
+    private Segment<K, V> segmentFor(int h) {
+        // with a single segment the shift would be 32, which java treats as
+        // a shift of 0
+        if (segments.length == 1)
+            return segments[0];
+
+        return segments[h >>> segmentShift];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // only a snapshot, the segments can change while they're being counted
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments)
+            size += segment.size;
+        return size;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    // weakly consistent and never locks, every entry that is in the map for
+    // the whole walk is seen exactly once, the ones that are put or removed
+    // meanwhile might or might not be, the table of a segment is read once
+    // when the cursor gets to it, a resize copies the nodes instead of
+    // relinking them so the old table stays a valid snapshot
+    private class Cursor implements MapCursor<K, V> {
+        private int segment = -1;
+        private AtomicReferenceArray<Node<K, V>> table;
+        private int bucket;
+        private Node<K, V> node;
+
+        @Override
+        public boolean advance() {
+            if (node != null)
+                node = node.next;
+            while (node == null) {
+                if (table != null && ++bucket < table.length()) {
+                    node = table.get(bucket);
+                } else if (++segment < segments.length) {
+                    table = segments[segment].table;
+                    bucket = -1;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return node.key;
+        }
+
+        @Override
+        public V value() {
+            return node.value;
+        }
+    }
+}
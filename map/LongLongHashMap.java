@@ -0,0 +1,343 @@
+package map;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongBinaryOperator;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// the long to long version of IntIntHashMap, see there for the details
+public class LongLongHashMap implements Map<Long, Long> {
+    private long[] keys;
+    private long[] values;
+    // the amount of entries in the arrays, i.e. not counting the 0 key
+    private int size;
+    // 0 marks an empty slot in the keys array, so the entry of the key 0
+    // has to live outside of the arrays
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    private static final long EMPTY = 0;
+    // has to be a power of two, see Hashing
+    private static final int INIT_SIZE = 64;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final float MIN_LOAD_FACTOR = 0.25f;
+
+    public LongLongHashMap() {
+        keys = new long[INIT_SIZE];
+        values = new long[INIT_SIZE];
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value
+     * @return The value that was associated with the key before, or 0 if
+     *         the key didn't exist, same as get(key)
+     */
+    public long put(long key, long value) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return 0;
+        }
+        long previous = valueAt(index);
+        setValue(index, value);
+        return previous;
+    }
+
+    /**
+     * Same as merge(key, value, function) of interfaces.Map, without boxing
+     * anything, e.g. merge(key, 1, Long::sum) counts the key
+     *
+     * @param key      The key
+     * @param value    The value to combine with
+     * @param function Computes the new value from the current value and the
+     *                 value
+     * @return The new value
+     */
+    public long merge(long key, long value, LongBinaryOperator function) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return value;
+        }
+        long merged = function.applyAsLong(valueAt(index), value);
+        setValue(index, merged);
+        return merged;
+    }
+
+    /**
+     * @param key The key
+     * @return The value associated with the key, or 0 if the key doesn't
+     *         exist, use getOrDefault(key, defaultValue) or containsKey(key)
+     *         when 0 is a valid value
+     */
+    public long get(long key) {
+        return getOrDefault(key, 0);
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        int index = find(key);
+        return index < 0 ? defaultValue : valueAt(index);
+    }
+
+    public void remove(long key) {
+        int index = find(key);
+        if (index >= 0)
+            delete(index);
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    // the 0 key is in the slot after the last one, see IntIntHashMap
+    private int find(long key) {
+        if (key == EMPTY)
+            return hasZeroKey ? keys.length : -keys.length - 1;
+
+        int mask = keys.length - 1;
+        int index = hash(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key)
+                return index;
+            index = (index + 1) & mask;
+        }
+        return -index - 1;
+    }
+
+    private long valueAt(int index) {
+        return index == keys.length ? zeroValue : values[index];
+    }
+
+    private void setValue(int index, long value) {
+        if (index == keys.length)
+            zeroValue = value;
+        else
+            values[index] = value;
+    }
+
+    // puts the key into the free slot that find(key) returned
+    private void insert(int index, long key, long value) {
+        if (index == keys.length) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        size++;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    private void delete(int index) {
+        if (index == keys.length) {
+            hasZeroKey = false;
+            return;
+        }
+        shiftBack(index);
+        size--;
+        if ((double) size / keys.length < MIN_LOAD_FACTOR
+                && keys.length > INIT_SIZE)
+            resize(keys.length / 2);
+    }
+
+    private void growIfFull() {
+        if ((double) size / keys.length > MAX_LOAD_FACTOR)
+            resize(2 * keys.length);
+    }
+
+    // same as IntIntHashMap
+    private void shiftBack(int hole) {
+        int mask = keys.length - 1;
+        int index = (hole + 1) & mask;
+        while (keys[index] != EMPTY) {
+            int home = hash(keys[index]);
+            // the entry can fill the hole if the hole lies between its home
+            // slot and its current slot, i.e. it's at least as far away from
+            // its home as from the hole
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hole = index;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private int hash(long key) {
+        return Hashing.mix(key) & (keys.length - 1);
+    }
+
+    private void resize(int newSize) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[newSize];
+        values = new long[newSize];
+        int mask = newSize - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+
+            int index = hash(oldKeys[i]);
+            while (keys[index] != EMPTY)
+                index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    // --------------------------interfaces.Map methods-------------------------
+
+    @Override
+    public Long put(Long key, Long value) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return null;
+        }
+        Long previous = valueAt(index);
+        setValue(index, value);
+        return previous;
+    }
+
+    @Override
+    public Long putIfAbsent(Long key, Long value) {
+        growIfFull();
+        int index = find(key);
+        if (index >= 0)
+            return valueAt(index);
+
+        insert(-index - 1, key, value);
+        return null;
+    }
+
+    @Override
+    public Long compute(Long key, BiFunction<? super Long, ? super Long, ? extends Long> function) {
+        growIfFull();
+        int index = find(key);
+        Long value = function.apply(key, index < 0 ? null : valueAt(index));
+        if (index < 0) {
+            if (value != null)
+                insert(-index - 1, key, value);
+        } else if (value == null) {
+            delete(index);
+        } else {
+            setValue(index, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Long computeIfAbsent(Long key, Function<? super Long, ? extends Long> function) {
+        growIfFull();
+        int index = find(key);
+        if (index >= 0)
+            return valueAt(index);
+
+        Long value = function.apply(key);
+        if (value != null)
+            insert(-index - 1, key, value);
+        return value;
+    }
+
+    @Override
+    public Long merge(Long key, Long value, BiFunction<? super Long, ? super Long, ? extends Long> function) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return value;
+        }
+        Long merged = function.apply(valueAt(index), value);
+        if (merged == null)
+            delete(index);
+        else
+            setValue(index, merged);
+        return merged;
+    }
+
+    @Override
+    public Long get(Long key) {
+        int index = find(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public Long getOrDefault(Long key, Long defaultValue) {
+        int index = find(key);
+        return index < 0 ? defaultValue : valueAt(index);
+    }
+
+    @Override
+    public void remove(Long key) {
+        remove(key.longValue());
+    }
+
+    @Override
+    public boolean containsKey(Long key) {
+        return containsKey(key.longValue());
+    }
+
+    @Override
+    public Iterable<Long> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // key() and value() box, longKey() and longValue() walk the map without
+    // allocating anything
+    public final class Cursor implements MapCursor<Long, Long> {
+        // -1 is the entry of the 0 key, which lives outside of the arrays
+        private int index = hasZeroKey ? -2 : -1;
+
+        private Cursor() {}
+
+        @Override
+        public boolean advance() {
+            while (++index < keys.length) {
+                if (index < 0 || keys[index] != EMPTY)
+                    return true;
+            }
+            return false;
+        }
+
+        public long longKey() {
+            return index < 0 ? EMPTY : keys[index];
+        }
+
+        public long longValue() {
+            return index < 0 ? zeroValue : values[index];
+        }
+
+        @Override
+        public Long key() {
+            return longKey();
+        }
+
+        @Override
+        public Long value() {
+            return longValue();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+}
@@ -0,0 +1,339 @@
+package map;
+
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// the long to object version of IntIntHashMap, see there for the details,
+// only the keys are primitive here
+@SuppressWarnings("unchecked")
+public class LongObjectHashMap<V> implements Map<Long, V> {
+    private long[] keys;
+    private V[] values;
+    // the amount of entries in the arrays, i.e. not counting the 0 key
+    private int size;
+    // 0 marks an empty slot in the keys array, so the entry of the key 0
+    // has to live outside of the arrays
+    private boolean hasZeroKey;
+    private V zeroValue;
+
+    private static final long EMPTY = 0;
+    // has to be a power of two, see Hashing
+    private static final int INIT_SIZE = 64;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final float MIN_LOAD_FACTOR = 0.25f;
+
+    public LongObjectHashMap() {
+        keys = new long[INIT_SIZE];
+        values = (V[]) new Object[INIT_SIZE];
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    /**
+     * @param key   The key
+     * @param value The value
+     * @return The value that was associated with the key before, or null if
+     *         the key didn't exist
+     */
+    public V put(long key, V value) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return null;
+        }
+        V previous = valueAt(index);
+        setValue(index, value);
+        return previous;
+    }
+
+    /**
+     * Same as computeIfAbsent(key, function) of interfaces.Map, without
+     * boxing the key
+     *
+     * @param key      The key
+     * @param function Computes the value from the key, returning null leaves
+     *                 the map unchanged
+     * @return The current value of the key
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        growIfFull();
+        int index = find(key);
+        V value = index < 0 ? null : valueAt(index);
+        if (value != null)
+            return value;
+
+        value = function.apply(key);
+        if (value == null)
+            return null;
+        if (index < 0)
+            insert(-index - 1, key, value);
+        else
+            setValue(index, value);
+        return value;
+    }
+
+    public V get(long key) {
+        return getOrDefault(key, null);
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        int index = find(key);
+        return index < 0 ? defaultValue : valueAt(index);
+    }
+
+    public void remove(long key) {
+        int index = find(key);
+        if (index >= 0)
+            delete(index);
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    // the 0 key is in the slot after the last one, see IntIntHashMap
+    private int find(long key) {
+        if (key == EMPTY)
+            return hasZeroKey ? keys.length : -keys.length - 1;
+
+        int mask = keys.length - 1;
+        int index = hash(key);
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key)
+                return index;
+            index = (index + 1) & mask;
+        }
+        return -index - 1;
+    }
+
+    private V valueAt(int index) {
+        return index == keys.length ? zeroValue : values[index];
+    }
+
+    private void setValue(int index, V value) {
+        if (index == keys.length)
+            zeroValue = value;
+        else
+            values[index] = value;
+    }
+
+    // puts the key into the free slot that find(key) returned
+    private void insert(int index, long key, V value) {
+        if (index == keys.length) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        size++;
+        keys[index] = key;
+        values[index] = value;
+    }
+
+    private void delete(int index) {
+        if (index == keys.length) {
+            hasZeroKey = false;
+            zeroValue = null;
+            return;
+        }
+        shiftBack(index);
+        size--;
+        if ((double) size / keys.length < MIN_LOAD_FACTOR
+                && keys.length > INIT_SIZE)
+            resize(keys.length / 2);
+    }
+
+    private void growIfFull() {
+        if ((double) size / keys.length > MAX_LOAD_FACTOR)
+            resize(2 * keys.length);
+    }
+
+    // same as IntIntHashMap
+    private void shiftBack(int hole) {
+        int mask = keys.length - 1;
+        int index = (hole + 1) & mask;
+        while (keys[index] != EMPTY) {
+            int home = hash(keys[index]);
+            // the entry can fill the hole if the hole lies between its home
+            // slot and its current slot, i.e. it's at least as far away from
+            // its home as from the hole
+            if (((index - home) & mask) >= ((index - hole) & mask)) {
+                keys[hole] = keys[index];
+                values[hole] = values[index];
+                hole = index;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+    }
+
+    private int hash(long key) {
+        return Hashing.mix(key) & (keys.length - 1);
+    }
+
+    private void resize(int newSize) {
+        long[] oldKeys = keys;
+        V[] oldValues = values;
+        keys = new long[newSize];
+        values = (V[]) new Object[newSize];
+        int mask = newSize - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY)
+                continue;
+
+            int index = hash(oldKeys[i]);
+            while (keys[index] != EMPTY)
+                index = (index + 1) & mask;
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    // --------------------------interfaces.Map methods-------------------------
+
+    @Override
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override
+    public V putIfAbsent(Long key, V value) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return null;
+        }
+        V previous = valueAt(index);
+        if (previous == null)
+            setValue(index, value);
+        return previous;
+    }
+
+    @Override
+    public V compute(Long key, BiFunction<? super Long, ? super V, ? extends V> function) {
+        growIfFull();
+        int index = find(key);
+        V value = function.apply(key, index < 0 ? null : valueAt(index));
+        if (index < 0) {
+            if (value != null)
+                insert(-index - 1, key, value);
+        } else if (value == null) {
+            delete(index);
+        } else {
+            setValue(index, value);
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(Long key, Function<? super Long, ? extends V> function) {
+        growIfFull();
+        int index = find(key);
+        V value = index < 0 ? null : valueAt(index);
+        if (value != null)
+            return value;
+
+        value = function.apply(key);
+        if (value == null)
+            return null;
+        if (index < 0)
+            insert(-index - 1, key, value);
+        else
+            setValue(index, value);
+        return value;
+    }
+
+    @Override
+    public V merge(Long key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        growIfFull();
+        int index = find(key);
+        if (index < 0) {
+            insert(-index - 1, key, value);
+            return value;
+        }
+        V previous = valueAt(index);
+        V merged = previous == null ? value : function.apply(previous, value);
+        if (merged == null)
+            delete(index);
+        else
+            setValue(index, merged);
+        return merged;
+    }
+
+    @Override
+    public V get(Long key) {
+        return get(key.longValue());
+    }
+
+    @Override
+    public V getOrDefault(Long key, V defaultValue) {
+        return getOrDefault(key.longValue(), defaultValue);
+    }
+
+    @Override
+    public void remove(Long key) {
+        remove(key.longValue());
+    }
+
+    @Override
+    public boolean containsKey(Long key) {
+        return containsKey(key.longValue());
+    }
+
+    @Override
+    public Iterable<Long> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // key() boxes, longKey() walks the map without allocating anything
+    public final class Cursor implements MapCursor<Long, V> {
+        // -1 is the entry of the 0 key, which lives outside of the arrays
+        private int index = hasZeroKey ? -2 : -1;
+
+        private Cursor() {}
+
+        @Override
+        public boolean advance() {
+            while (++index < keys.length) {
+                if (index < 0 || keys[index] != EMPTY)
+                    return true;
+            }
+            return false;
+        }
+
+        public long longKey() {
+            return index < 0 ? EMPTY : keys[index];
+        }
+
+        @Override
+        public Long key() {
+            return longKey();
+        }
+
+        @Override
+        public V value() {
+            return index < 0 ? zeroValue : values[index];
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return hasZeroKey ? size + 1 : size;
+    }
+}
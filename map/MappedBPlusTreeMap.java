@@ -0,0 +1,1282 @@
+package map;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.MapCursor;
+import interfaces.OrderedMap;
+
+// a b+ tree in a file, for ordered indexes that don't fit into memory, the
+// keys and the values are byte arrays of a fixed length like in
+// OffHeapHashMap, the keys are ordered byte by byte as unsigned numbers, so
+// big endian numbers that aren't negative are in numerical order
+//
+// every node is a page of 4 KB, which is read and written through a
+// PageCache that maps the file in chunks and unmaps the ones that weren't
+// used for a while, so the process only maps as much of the file as the
+// cache size allows, the nodes are BPlusTreeMap's, except that the leaves
+// aren't linked, a cursor keeps the way down to its leaf instead
+//
+// the pages of the last commit() are never written to, a change copies the
+// pages it touches to free pages first, along with every page on the way up
+// to the root, like lmdb does, a page that was already copied since the last
+// commit is changed in place, commit() writes the copies to disk and only
+// then switches the header over to the new root, so after a crash the file
+// is the tree of the last commit, and the pages that only the old tree used
+// are free from then on, close() commits as well
+//
+// every page has the number of the commit it was written for, which is how a
+// change tells the pages it may change in place from the ones it must copy,
+// the free pages aren't kept in the file, opening it walks the inner pages
+// of the tree and takes every page that isn't in the tree as free
+public class MappedBPlusTreeMap implements OrderedMap<byte[], byte[]>,
+        AutoCloseable {
+    private final int keySize;
+    private final int valueSize;
+    private final int entrySize;
+    // the most entries of a leaf and children of an inner node, there is
+    // room for one more, a node that overflows is split right away
+    private final int leafMax;
+    private final int innerMax;
+    private final int leafMin;
+    private final int innerMin;
+    // the offset of the separators in an inner page, after the children
+    private final int innerKeys;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final PageCache pages;
+    // the index of the record in the header that has the last commit
+    private int record;
+    // the current tree, which is the one of the last commit until a change
+    private int root;
+    // the leaves are at this depth, 0 if the root is a leaf
+    private int height;
+    private long size;
+    // the page after the last one that was ever used
+    private int pageCount;
+    // the commit the changes go into, the pages written for it can be
+    // changed in place
+    private long txn;
+    private boolean modified;
+    private boolean closed;
+    // pages that neither tree uses
+    private int[] free = new int[16];
+    private int freeCount;
+    // pages that the last commit uses but the current tree doesn't anymore,
+    // they are free once the current tree is committed
+    private int[] released = new int[16];
+    private int releasedCount;
+    // the pages from the root down to the leaf of a change, and the index of
+    // the child that was taken in each of them
+    private final int[] nodes = new int[MAX_HEIGHT + 1];
+    private final int[] slots = new int[MAX_HEIGHT + 1];
+    // for moving the entries of a page around within the page
+    private final byte[] scratch = new byte[PAGE_SIZE];
+
+    private static final long MAGIC = 0x4d61707065644254L;
+    private static final int PAGE_SIZE = 4096;
+    // 256 KB, mapping a chunk costs a system call, so a chunk is a lot of
+    // pages that were probably written together
+    private static final int CHUNK_PAGES = 64;
+    private static final long DEFAULT_CACHE_SIZE = 1L << 30;
+    // every change has to find the pages it already touched still mapped,
+    // which are at most a few per level
+    private static final int MIN_CHUNKS = 128;
+    // every node below the root has at least 4 entries, so 16 levels would
+    // already be more pages than an int can count
+    private static final int MAX_HEIGHT = 32;
+    private static final int MIN_FANOUT = 8;
+
+    // the header
+    private static final int KEY_SIZE = 8;
+    private static final int VALUE_SIZE = 12;
+    // the index of the record of the last commit, a single byte so that
+    // switching it can't be torn in half
+    private static final int CURRENT = 16;
+    // two records of a commit, commit() writes the one that isn't in use and
+    // then switches CURRENT over
+    private static final int RECORDS = 24;
+    private static final int RECORD_SIZE = 32;
+    private static final int ROOT = 0;
+    private static final int HEIGHT = 4;
+    private static final int PAGES = 8;
+    private static final int SIZE = 16;
+    private static final int TXN = 24;
+
+    // a page starts with the commit it was written for and the amount of
+    // entries or children, a leaf has the entries after that, a key followed
+    // by its value, an inner node has the children, a page number and the
+    // amount of keys below it, and then the separators like in BPlusTreeMap
+    private static final int PAGE_TXN = 0;
+    private static final int COUNT = 8;
+    private static final int PAGE_HEADER = 12;
+    private static final int CHILD_SIZE = 12;
+
+    // the pages are big endian, so 8 bytes of a key compare as one unsigned
+    // long, no matter whether they're in an array or in a page
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ByteOrder.BIG_ENDIAN);
+
+    public MappedBPlusTreeMap(Path path, int keySize, int valueSize)
+            throws IOException {
+        this(path, keySize, valueSize, DEFAULT_CACHE_SIZE);
+    }
+
+    // opens the map in the file, or creates it if the file doesn't exist,
+    // the cache size is how much of the file is mapped at most
+    public MappedBPlusTreeMap(Path path, int keySize, int valueSize,
+            long cacheSize) throws IOException {
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.entrySize = keySize + valueSize;
+        leafMax = keySize <= 0 || valueSize < 0
+            ? 0
+            : (PAGE_SIZE - PAGE_HEADER) / entrySize - 1;
+        innerMax = keySize <= 0
+            ? 0
+            : (PAGE_SIZE - PAGE_HEADER - CHILD_SIZE) / (CHILD_SIZE + keySize);
+        if (leafMax < MIN_FANOUT || innerMax < MIN_FANOUT)
+            throw new IllegalArgumentException("keys of " + keySize
+                + " bytes and values of " + valueSize
+                + " bytes don't fit " + MIN_FANOUT + " to a page");
+        leafMin = leafMax / 2;
+        innerMin = innerMax / 2;
+        innerKeys = PAGE_HEADER + (innerMax + 1) * CHILD_SIZE;
+
+        long chunkSize = (long) PAGE_SIZE * CHUNK_PAGES;
+        int chunks = (int) Math.min(Integer.MAX_VALUE,
+            Math.max(MIN_CHUNKS, cacheSize / chunkSize));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, PAGE_SIZE);
+            pages = new PageCache(channel, PAGE_SIZE, CHUNK_PAGES, chunks);
+            // the magic is written last, a file without it was never
+            // finished, so it's created from scratch
+            if (header.getLong(0) == MAGIC)
+                reopen();
+            else
+                create();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void create() throws IOException {
+        channel.truncate(PAGE_SIZE);
+        header.putInt(KEY_SIZE, keySize);
+        header.putInt(VALUE_SIZE, valueSize);
+        pageCount = 1;
+        txn = 1;
+        root = allocate();
+        commit();
+        header.putLong(0, MAGIC);
+        header.force();
+    }
+
+    private void reopen() {
+        if (header.getInt(KEY_SIZE) != keySize
+                || header.getInt(VALUE_SIZE) != valueSize)
+            throw new IllegalArgumentException("the file has keys of "
+                + header.getInt(KEY_SIZE) + " bytes and values of "
+                + header.getInt(VALUE_SIZE) + " bytes");
+
+        record = header.get(CURRENT);
+        int offset = RECORDS + record * RECORD_SIZE;
+        root = header.getInt(offset + ROOT);
+        height = header.getInt(offset + HEIGHT);
+        pageCount = (int) header.getLong(offset + PAGES);
+        size = header.getLong(offset + SIZE);
+        txn = header.getLong(offset + TXN) + 1;
+
+        // the leaves are only marked, their numbers are in their parents
+        long[] used = new long[(pageCount + 63) >>> 6];
+        used[0] |= 1;
+        mark(used, root);
+        int[] stack = new int[MAX_HEIGHT * (innerMax + 1)];
+        int[] depths = new int[stack.length];
+        int top = 0;
+        if (height > 0) {
+            stack[top] = root;
+            depths[top++] = 0;
+        }
+        while (top > 0) {
+            top--;
+            ByteBuffer inner = pages.read(stack[top]);
+            int depth = depths[top];
+            for (int i = 0; i < count(inner); i++) {
+                int child = child(inner, i);
+                mark(used, child);
+                if (depth + 1 < height) {
+                    stack[top] = child;
+                    depths[top++] = depth + 1;
+                }
+            }
+        }
+        // the free pages are a stack, the ones at the front of the file go
+        // first
+        for (int page = pageCount - 1; page > 0; page--) {
+            if ((used[page >>> 6] & (1L << page)) == 0)
+                free = push(free, freeCount++, page);
+        }
+    }
+
+    private static void mark(long[] used, int page) {
+        used[page >>> 6] |= 1L << page;
+    }
+
+    /**
+     * Makes the changes since the last commit durable, a crash loses
+     * whatever comes after, and frees the pages that only the last commit
+     * used
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    public void commit() {
+        checkOpen();
+        if (!modified)
+            return;
+
+        // the pages have to be on disk before the header points at them,
+        // and the header is switched with a single byte, so after a crash
+        // it points at either the old or the new tree and never at a mix
+        pages.force();
+        int next = 1 - record;
+        int offset = RECORDS + next * RECORD_SIZE;
+        header.putInt(offset + ROOT, root);
+        header.putInt(offset + HEIGHT, height);
+        header.putLong(offset + PAGES, pageCount);
+        header.putLong(offset + SIZE, size);
+        header.putLong(offset + TXN, txn);
+        header.force();
+        header.put(CURRENT, (byte) next);
+        header.force();
+        record = next;
+
+        for (int i = 0; i < releasedCount; i++)
+            free = push(free, freeCount++, released[i]);
+        releasedCount = 0;
+        txn++;
+        modified = false;
+    }
+
+    /**
+     * Fills an empty map with the entries of the cursor, which is a lot
+     * faster than putting them one by one, the leaves are written one
+     * after another and are full but for the last two of every level
+     *
+     * @param sorted The entries in ascending order of their keys
+     * @throws IllegalStateException    if the map isn't empty
+     * @throws IllegalArgumentException if a key isn't bigger than the one
+     *                                  before
+     */
+    public void load(MapCursor<byte[], byte[]> sorted) {
+        checkOpen();
+        if (size != 0)
+            throw new IllegalStateException("the map isn't empty");
+
+        Loader loader = new Loader();
+        // a copy, the cursor might hand out the same array every time
+        byte[] previous = null;
+        while (sorted.advance()) {
+            byte[] key = sorted.key();
+            byte[] value = sorted.value();
+            checkKey(key);
+            checkValue(value);
+            if (previous == null)
+                previous = new byte[keySize];
+            else if (Arrays.compareUnsigned(previous, key) >= 0)
+                throw new IllegalArgumentException("the keys aren't in order");
+            loader.add(key, value);
+            System.arraycopy(key, 0, previous, 0, keySize);
+        }
+        loader.finish();
+    }
+
+    @Override
+    public byte[] put(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        ByteBuffer leaf = pages.read(descend(key));
+        int index = indexOf(leaf, key);
+        if (index >= 0) {
+            byte[] previous = readValue(leaf, index);
+            touch();
+            writeValue(index, value);
+            return previous;
+        }
+        touch();
+        insert(-index - 1, key, value);
+        return null;
+    }
+
+    /**
+     * Same as put(key, value), without copying the previous value out of
+     * the map
+     *
+     * @param key   The key
+     * @param value The value
+     * @return true if the key didn't exist before, else false
+     */
+    public boolean store(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        int index = indexOf(pages.read(descend(key)), key);
+        touch();
+        if (index >= 0) {
+            writeValue(index, value);
+            return false;
+        }
+        insert(-index - 1, key, value);
+        return true;
+    }
+
+    // the map has no null values, so every key that exists has a value
+    @Override
+    public byte[] putIfAbsent(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        ByteBuffer leaf = pages.read(descend(key));
+        int index = indexOf(leaf, key);
+        if (index >= 0)
+            return readValue(leaf, index);
+
+        touch();
+        insert(-index - 1, key, value);
+        return null;
+    }
+
+    @Override
+    public byte[] compute(byte[] key,
+            BiFunction<? super byte[], ? super byte[], ? extends byte[]> function) {
+        checkKey(key);
+        ByteBuffer leaf = pages.read(descend(key));
+        int index = indexOf(leaf, key);
+        byte[] value = function.apply(key, index >= 0 ? readValue(leaf, index) : null);
+        if (value == null) {
+            if (index >= 0) {
+                touch();
+                delete(index);
+            }
+            return null;
+        }
+        checkValue(value);
+        touch();
+        if (index >= 0)
+            writeValue(index, value);
+        else
+            insert(-index - 1, key, value);
+        return value;
+    }
+
+    @Override
+    public byte[] computeIfAbsent(byte[] key,
+            Function<? super byte[], ? extends byte[]> function) {
+        return compute(key, (k, old) -> old == null ? function.apply(k) : old);
+    }
+
+    @Override
+    public byte[] merge(byte[] key, byte[] value,
+            BiFunction<? super byte[], ? super byte[], ? extends byte[]> function) {
+        checkValue(value);
+        return compute(key,
+            (k, old) -> old == null ? value : function.apply(old, value));
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * Same as get(key), but copies the value into the array instead of a
+     * new one
+     *
+     * @param key   The key
+     * @param value The array to copy the value into, of the value size
+     * @return true if the key exists, else false and the array is untouched
+     */
+    public boolean get(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        ByteBuffer leaf = findLeaf(key);
+        int index = indexOf(leaf, key);
+        if (index < 0)
+            return false;
+
+        leaf.get(entryOffset(index) + keySize, value);
+        return true;
+    }
+
+    @Override
+    public byte[] getOrDefault(byte[] key, byte[] defaultValue) {
+        checkKey(key);
+        ByteBuffer leaf = findLeaf(key);
+        int index = indexOf(leaf, key);
+        return index >= 0 ? readValue(leaf, index) : defaultValue;
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        checkKey(key);
+        int index = indexOf(pages.read(descend(key)), key);
+        if (index >= 0) {
+            touch();
+            delete(index);
+        }
+    }
+
+    @Override
+    public boolean containsKey(byte[] key) {
+        checkKey(key);
+        return indexOf(findLeaf(key), key) >= 0;
+    }
+
+    private ByteBuffer findLeaf(byte[] key) {
+        int page = root;
+        for (int depth = 0; depth < height; depth++) {
+            ByteBuffer inner = pages.read(page);
+            page = child(inner, childIndex(inner, key));
+        }
+        return pages.read(page);
+    }
+
+    // walks down to the leaf of the key and records the way in nodes and
+    // slots, returns the leaf
+    private int descend(byte[] key) {
+        nodes[0] = root;
+        for (int depth = 0; depth < height; depth++) {
+            ByteBuffer inner = pages.read(nodes[depth]);
+            slots[depth] = childIndex(inner, key);
+            nodes[depth + 1] = child(inner, slots[depth]);
+        }
+        return nodes[height];
+    }
+
+    // copies the pages of the way down that the last commit uses, from the
+    // top, so that every parent already is a copy when it's pointed at the
+    // copy of its child, afterwards all of them can be changed in place
+    private void touch() {
+        root = writable(root);
+        nodes[0] = root;
+        for (int depth = 1; depth <= height; depth++) {
+            int page = writable(nodes[depth]);
+            if (page != nodes[depth]) {
+                setChild(pages.write(nodes[depth - 1]), slots[depth - 1], page);
+                nodes[depth] = page;
+            }
+        }
+    }
+
+    // the page itself if it was written for the current commit, else a copy
+    private int writable(int page) {
+        ByteBuffer from = pages.read(page);
+        if (from.getLong(PAGE_TXN) == txn)
+            return page;
+
+        int copy = allocate();
+        ByteBuffer to = pages.write(copy);
+        to.put(PAGE_HEADER, from, PAGE_HEADER, PAGE_SIZE - PAGE_HEADER);
+        to.putInt(COUNT, from.getInt(COUNT));
+        released = push(released, releasedCount++, page);
+        return copy;
+    }
+
+    // an empty page for the current commit
+    private int allocate() {
+        modified = true;
+        int page;
+        if (freeCount > 0) {
+            page = free[--freeCount];
+        } else {
+            if (pageCount == Integer.MAX_VALUE)
+                throw new IllegalStateException("the file is full");
+            page = pageCount++;
+        }
+        ByteBuffer buffer = pages.write(page);
+        buffer.putLong(PAGE_TXN, txn);
+        buffer.putInt(COUNT, 0);
+        return page;
+    }
+
+    // a page that the current tree doesn't use anymore
+    private void drop(int page) {
+        if (pages.read(page).getLong(PAGE_TXN) == txn)
+            free = push(free, freeCount++, page);
+        else
+            released = push(released, releasedCount++, page);
+    }
+
+    private static int[] push(int[] stack, int count, int page) {
+        if (count == stack.length)
+            stack = Arrays.copyOf(stack, 2 * count);
+        stack[count] = page;
+        return stack;
+    }
+
+    private void writeValue(int index, byte[] value) {
+        pages.write(nodes[height]).put(entryOffset(index) + keySize, value);
+    }
+
+    // the rest is BPlusTreeMap on pages, the way down is writable by now
+    private void insert(int index, byte[] key, byte[] value) {
+        ByteBuffer leaf = pages.write(nodes[height]);
+        int count = count(leaf);
+        move(leaf, entryOffset(index), entryOffset(index + 1),
+            (count - index) * entrySize);
+        leaf.put(entryOffset(index), key);
+        leaf.put(entryOffset(index) + keySize, value);
+        leaf.putInt(COUNT, count + 1);
+        addToCounts(1);
+        size++;
+
+        if (count + 1 > leafMax)
+            splitLeaf(height);
+    }
+
+    private void addToCounts(long delta) {
+        for (int depth = 0; depth < height; depth++) {
+            ByteBuffer inner = pages.write(nodes[depth]);
+            setChildCount(inner, slots[depth],
+                childCount(inner, slots[depth]) + delta);
+        }
+    }
+
+    private void splitLeaf(int depth) {
+        ByteBuffer leaf = pages.write(nodes[depth]);
+        int count = count(leaf);
+        int half = count / 2;
+        int right = allocate();
+        ByteBuffer to = pages.write(right);
+        to.put(entryOffset(0), leaf, entryOffset(half), (count - half) * entrySize);
+        to.putInt(COUNT, count - half);
+        leaf.putInt(COUNT, half);
+        addChild(depth, readKey(to, entryOffset(0)), half, right, count - half);
+    }
+
+    // the separator between the halves moves up into the parent
+    private void splitInner(int depth) {
+        ByteBuffer inner = pages.write(nodes[depth]);
+        int count = count(inner);
+        int half = count / 2;
+        int right = allocate();
+        ByteBuffer to = pages.write(right);
+        to.put(childOffset(0), inner, childOffset(half), (count - half) * CHILD_SIZE);
+        to.put(innerKey(0), inner, innerKey(half), (count - half - 1) * keySize);
+        to.putInt(COUNT, count - half);
+        byte[] separator = readKey(inner, innerKey(half - 1));
+        inner.putInt(COUNT, half);
+        addChild(depth, separator, total(inner), right, total(to));
+    }
+
+    // adds the right half of the split node at the depth next to the left
+    // one, a split root gets a new root above it
+    private void addChild(int depth, byte[] separator, long leftCount,
+            int right, long rightCount) {
+        if (depth == 0) {
+            int page = allocate();
+            ByteBuffer inner = pages.write(page);
+            setChild(inner, 0, root);
+            setChildCount(inner, 0, leftCount);
+            setChild(inner, 1, right);
+            setChildCount(inner, 1, rightCount);
+            inner.put(innerKey(0), separator);
+            inner.putInt(COUNT, 2);
+            root = page;
+            height++;
+            return;
+        }
+
+        ByteBuffer parent = pages.write(nodes[depth - 1]);
+        int slot = slots[depth - 1];
+        int count = count(parent);
+        move(parent, innerKey(slot), innerKey(slot + 1), (count - slot - 1) * keySize);
+        move(parent, childOffset(slot + 1), childOffset(slot + 2),
+            (count - slot - 1) * CHILD_SIZE);
+        parent.put(innerKey(slot), separator);
+        setChildCount(parent, slot, leftCount);
+        setChild(parent, slot + 1, right);
+        setChildCount(parent, slot + 1, rightCount);
+        parent.putInt(COUNT, count + 1);
+        if (count + 1 > innerMax)
+            splitInner(depth - 1);
+    }
+
+    private void delete(int index) {
+        ByteBuffer leaf = pages.write(nodes[height]);
+        int count = count(leaf);
+        move(leaf, entryOffset(index + 1), entryOffset(index),
+            (count - index - 1) * entrySize);
+        leaf.putInt(COUNT, count - 1);
+        addToCounts(-1);
+        size--;
+
+        for (int depth = height; depth > 0; depth--) {
+            int min = depth == height ? leafMin : innerMin;
+            if (count(pages.read(nodes[depth])) >= min)
+                break;
+            refill(depth);
+        }
+        // the root is left with a single child after the merge of the last
+        // two, the tree gets a level lower
+        if (height > 0 && count(pages.read(root)) == 1) {
+            int old = root;
+            root = child(pages.read(root), 0);
+            height--;
+            drop(old);
+        }
+    }
+
+    // the node at the depth fell below the minimum, it takes an entry from a
+    // sibling, or merges with it if the sibling can't spare one
+    private void refill(int depth) {
+        boolean leaf = depth == height;
+        int min = leaf ? leafMin : innerMin;
+        ByteBuffer parent = pages.write(nodes[depth - 1]);
+        int slot = slots[depth - 1];
+        if (slot > 0) {
+            int left = child(parent, slot - 1);
+            if (count(pages.read(left)) > min) {
+                borrowFromLeft(parent, slot, sibling(parent, slot - 1), leaf);
+            } else {
+                merge(parent, slot - 1, sibling(parent, slot - 1), nodes[depth], leaf);
+            }
+        } else {
+            int right = child(parent, slot + 1);
+            if (count(pages.read(right)) > min)
+                borrowFromRight(parent, slot, sibling(parent, slot + 1), leaf);
+            else
+                merge(parent, slot, nodes[depth], right, leaf);
+        }
+    }
+
+    // the writable version of the child of the parent, which is pointed at it
+    private int sibling(ByteBuffer parent, int slot) {
+        int page = child(parent, slot);
+        int copy = writable(page);
+        if (copy != page)
+            setChild(parent, slot, copy);
+        return copy;
+    }
+
+    private void borrowFromLeft(ByteBuffer parent, int slot, int leftPage,
+            boolean leaf) {
+        ByteBuffer left = pages.write(leftPage);
+        ByteBuffer node = pages.write(child(parent, slot));
+        int leftCount = count(left);
+        int count = count(node);
+        long moved;
+        if (leaf) {
+            move(node, entryOffset(0), entryOffset(1), count * entrySize);
+            node.put(entryOffset(0), left, entryOffset(leftCount - 1), entrySize);
+            parent.put(innerKey(slot - 1), node, entryOffset(0), keySize);
+            moved = 1;
+        } else {
+            // the separator in the parent comes down in front of the moved
+            // child, and the last separator of the sibling goes up instead
+            move(node, childOffset(0), childOffset(1), count * CHILD_SIZE);
+            move(node, innerKey(0), innerKey(1), (count - 1) * keySize);
+            node.put(childOffset(0), left, childOffset(leftCount - 1), CHILD_SIZE);
+            node.put(innerKey(0), parent, innerKey(slot - 1), keySize);
+            parent.put(innerKey(slot - 1), left, innerKey(leftCount - 2), keySize);
+            moved = childCount(node, 0);
+        }
+        left.putInt(COUNT, leftCount - 1);
+        node.putInt(COUNT, count + 1);
+        setChildCount(parent, slot - 1, childCount(parent, slot - 1) - moved);
+        setChildCount(parent, slot, childCount(parent, slot) + moved);
+    }
+
+    private void borrowFromRight(ByteBuffer parent, int slot, int rightPage,
+            boolean leaf) {
+        ByteBuffer node = pages.write(child(parent, slot));
+        ByteBuffer right = pages.write(rightPage);
+        int count = count(node);
+        int rightCount = count(right);
+        long moved;
+        if (leaf) {
+            node.put(entryOffset(count), right, entryOffset(0), entrySize);
+            move(right, entryOffset(1), entryOffset(0), (rightCount - 1) * entrySize);
+            parent.put(innerKey(slot), right, entryOffset(0), keySize);
+            moved = 1;
+        } else {
+            moved = childCount(right, 0);
+            node.put(childOffset(count), right, childOffset(0), CHILD_SIZE);
+            node.put(innerKey(count - 1), parent, innerKey(slot), keySize);
+            parent.put(innerKey(slot), right, innerKey(0), keySize);
+            move(right, childOffset(1), childOffset(0), (rightCount - 1) * CHILD_SIZE);
+            move(right, innerKey(1), innerKey(0), (rightCount - 2) * keySize);
+        }
+        node.putInt(COUNT, count + 1);
+        right.putInt(COUNT, rightCount - 1);
+        setChildCount(parent, slot, childCount(parent, slot) + moved);
+        setChildCount(parent, slot + 1, childCount(parent, slot + 1) - moved);
+    }
+
+    // appends the right node to the left one, which is the child at the
+    // slot of the parent and writable, and drops the right one
+    private void merge(ByteBuffer parent, int slot, int leftPage, int rightPage,
+            boolean leaf) {
+        ByteBuffer left = pages.write(leftPage);
+        ByteBuffer right = pages.read(rightPage);
+        int leftCount = count(left);
+        int rightCount = count(right);
+        if (leaf) {
+            left.put(entryOffset(leftCount), right, entryOffset(0),
+                rightCount * entrySize);
+        } else {
+            left.put(innerKey(leftCount - 1), parent, innerKey(slot), keySize);
+            left.put(innerKey(leftCount), right, innerKey(0), (rightCount - 1) * keySize);
+            left.put(childOffset(leftCount), right, childOffset(0),
+                rightCount * CHILD_SIZE);
+        }
+        left.putInt(COUNT, leftCount + rightCount);
+        drop(rightPage);
+
+        int count = count(parent);
+        setChildCount(parent, slot,
+            childCount(parent, slot) + childCount(parent, slot + 1));
+        move(parent, innerKey(slot + 1), innerKey(slot), (count - slot - 2) * keySize);
+        move(parent, childOffset(slot + 2), childOffset(slot + 1),
+            (count - slot - 2) * CHILD_SIZE);
+        parent.putInt(COUNT, count - 1);
+    }
+
+    // moves bytes within a page, the ranges may overlap
+    private void move(ByteBuffer page, int from, int to, int length) {
+        if (length <= 0)
+            return;
+        page.get(from, scratch, 0, length);
+        page.put(to, scratch, 0, length);
+    }
+
+    // builds the tree from the bottom up, every level has a node that is
+    // being filled, and the one before it, which only goes up into the
+    // parent once the next one is full, so that the last two nodes of a
+    // level can share their entries if the last one ends up too small
+    private class Loader {
+        private final int[] open = new int[MAX_HEIGHT + 1];
+        private final int[] done = new int[MAX_HEIGHT + 1];
+        // the smallest key below the nodes, the separator in their parent
+        private final byte[][] openLow = new byte[MAX_HEIGHT + 1][];
+        private final byte[][] doneLow = new byte[MAX_HEIGHT + 1][];
+        private int levels;
+
+        Loader() {
+            Arrays.fill(open, -1);
+            Arrays.fill(done, -1);
+        }
+
+        void add(byte[] key, byte[] value) {
+            ByteBuffer leaf = next(0, key, leafMax);
+            int count = count(leaf);
+            leaf.put(entryOffset(count), key);
+            leaf.put(entryOffset(count) + keySize, value);
+            leaf.putInt(COUNT, count + 1);
+            size++;
+        }
+
+        // the node of the level that the next entry goes into, whose first
+        // key is the one given
+        private ByteBuffer next(int level, byte[] key, int max) {
+            if (level == levels) {
+                levels++;
+                open[level] = allocate();
+                openLow[level] = key.clone();
+                return pages.write(open[level]);
+            }
+            ByteBuffer page = pages.write(open[level]);
+            if (count(page) < max)
+                return page;
+
+            if (done[level] >= 0)
+                push(level + 1, doneLow[level], done[level]);
+            done[level] = open[level];
+            doneLow[level] = openLow[level];
+            open[level] = allocate();
+            openLow[level] = key.clone();
+            return pages.write(open[level]);
+        }
+
+        private void push(int level, byte[] low, int child) {
+            long total = level == 1 ? count(pages.read(child)) : total(pages.read(child));
+            ByteBuffer inner = next(level, low, innerMax);
+            int count = count(inner);
+            if (count > 0)
+                inner.put(innerKey(count - 1), low);
+            setChild(inner, count, child);
+            setChildCount(inner, count, total);
+            inner.putInt(COUNT, count + 1);
+        }
+
+        void finish() {
+            if (levels == 0)
+                return;
+
+            drop(root);
+            int level = 0;
+            // a level with a single node is the root
+            while (done[level] >= 0) {
+                boolean leaf = level == 0;
+                ByteBuffer last = pages.write(open[level]);
+                int min = leaf ? leafMin : innerMin;
+                if (count(last) < min)
+                    share(pages.write(done[level]), last, min - count(last), level);
+                push(level + 1, doneLow[level], done[level]);
+                push(level + 1, openLow[level], open[level]);
+                level++;
+            }
+            root = open[level];
+            height = level;
+        }
+
+        // moves the last entries of the full node to the front of the last
+        // one, which is at least half full afterwards
+        private void share(ByteBuffer full, ByteBuffer last, int moved, int level) {
+            int fullCount = count(full);
+            int count = count(last);
+            if (level == 0) {
+                move(last, entryOffset(0), entryOffset(moved), count * entrySize);
+                last.put(entryOffset(0), full, entryOffset(fullCount - moved),
+                    moved * entrySize);
+                openLow[level] = readKey(last, entryOffset(0));
+            } else {
+                // the separators of the moved children move along, and the
+                // one in front of them is the new separator of the last node
+                move(last, childOffset(0), childOffset(moved), count * CHILD_SIZE);
+                move(last, innerKey(0), innerKey(moved), (count - 1) * keySize);
+                last.put(childOffset(0), full, childOffset(fullCount - moved),
+                    moved * CHILD_SIZE);
+                last.put(innerKey(0), full, innerKey(fullCount - moved),
+                    (moved - 1) * keySize);
+                last.put(innerKey(moved - 1), openLow[level]);
+                openLow[level] = readKey(full, innerKey(fullCount - moved - 1));
+            }
+            full.putInt(COUNT, fullCount - moved);
+            last.putInt(COUNT, count + moved);
+        }
+    }
+
+    @Override
+    public byte[] minKey() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+
+        Cursor cursor = new Cursor(null, null, false);
+        cursor.advance();
+        return cursor.key();
+    }
+
+    @Override
+    public byte[] maxKey() {
+        if (isEmpty())
+            throw new NoSuchElementException();
+
+        Cursor cursor = new Cursor(null, null, true);
+        cursor.advance();
+        return cursor.key();
+    }
+
+    // without links between the leaves, the floor might be in a leaf that
+    // is only found by going up, which the cursor already knows how to do
+    @Override
+    public byte[] floorKey(byte[] key) {
+        checkKey(key);
+        Cursor cursor = new Cursor(null, key, true);
+        return cursor.advance() ? cursor.key() : null;
+    }
+
+    @Override
+    public byte[] ceilingKey(byte[] key) {
+        checkKey(key);
+        Cursor cursor = new Cursor(key, null, false);
+        return cursor.advance() ? cursor.key() : null;
+    }
+
+    // capped at Integer.MAX_VALUE like size()
+    @Override
+    public int rank(byte[] key) {
+        checkKey(key);
+        return (int) Math.min(countBelow(key, false), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public byte[] select(int index) {
+        checkOpen();
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException();
+
+        long remaining = index;
+        int page = root;
+        for (int depth = 0; depth < height; depth++) {
+            ByteBuffer inner = pages.read(page);
+            int slot = 0;
+            while (remaining >= childCount(inner, slot))
+                remaining -= childCount(inner, slot++);
+            page = child(inner, slot);
+        }
+        return readKey(pages.read(page), entryOffset((int) remaining));
+    }
+
+    @Override
+    public int count(byte[] lo, byte[] hi) {
+        checkKey(lo);
+        checkKey(hi);
+        if (Arrays.compareUnsigned(lo, hi) > 0)
+            return 0;
+
+        return (int) Math.min(countBelow(hi, true) - countBelow(lo, false),
+            Integer.MAX_VALUE);
+    }
+
+    private long countBelow(byte[] key, boolean inclusive) {
+        long count = 0;
+        int page = root;
+        for (int depth = 0; depth < height; depth++) {
+            ByteBuffer inner = pages.read(page);
+            int slot = childIndex(inner, key);
+            for (int i = 0; i < slot; i++)
+                count += childCount(inner, i);
+            page = child(inner, slot);
+        }
+        int index = indexOf(pages.read(page), key);
+        if (index < 0)
+            return count - index - 1;
+        return count + index + (inclusive ? 1 : 0);
+    }
+
+    // the index of the child the key belongs to, which is the amount of
+    // separators that are smaller than or equal to the key
+    private int childIndex(ByteBuffer inner, byte[] key) {
+        int lo = 0;
+        int hi = count(inner) - 2;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compare(key, inner, innerKey(mid)) < 0)
+                hi = mid - 1;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    // the index of the key in the leaf, or -(insertion point) - 1
+    private int indexOf(ByteBuffer leaf, byte[] key) {
+        int lo = 0;
+        int hi = count(leaf) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compare(key, leaf, entryOffset(mid));
+            if (cmp > 0)
+                lo = mid + 1;
+            else if (cmp < 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    // compares the key to the one at the offset of the page
+    private int compare(byte[] key, ByteBuffer page, int offset) {
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            long a = (long) LONGS.get(key, i);
+            long b = page.getLong(offset + i);
+            if (a != b)
+                return Long.compareUnsigned(a, b);
+        }
+        for (; i < keySize; i++) {
+            int a = key[i] & 0xff;
+            int b = page.get(offset + i) & 0xff;
+            if (a != b)
+                return a - b;
+        }
+        return 0;
+    }
+
+    private static int count(ByteBuffer page) {
+        return page.getInt(COUNT);
+    }
+
+    // the amount of keys below an inner node
+    private static long total(ByteBuffer inner) {
+        long total = 0;
+        for (int i = 0; i < count(inner); i++)
+            total += childCount(inner, i);
+        return total;
+    }
+
+    private int entryOffset(int index) {
+        return PAGE_HEADER + index * entrySize;
+    }
+
+    private int innerKey(int index) {
+        return innerKeys + index * keySize;
+    }
+
+    private static int childOffset(int index) {
+        return PAGE_HEADER + index * CHILD_SIZE;
+    }
+
+    private static int child(ByteBuffer inner, int index) {
+        return inner.getInt(childOffset(index));
+    }
+
+    private static void setChild(ByteBuffer inner, int index, int page) {
+        inner.putInt(childOffset(index), page);
+    }
+
+    private static long childCount(ByteBuffer inner, int index) {
+        return inner.getLong(childOffset(index) + 4);
+    }
+
+    private static void setChildCount(ByteBuffer inner, int index, long count) {
+        inner.putLong(childOffset(index) + 4, count);
+    }
+
+    private byte[] readKey(ByteBuffer page, int offset) {
+        byte[] key = new byte[keySize];
+        page.get(offset, key);
+        return key;
+    }
+
+    private byte[] readValue(ByteBuffer leaf, int index) {
+        byte[] value = new byte[valueSize];
+        leaf.get(entryOffset(index) + keySize, value);
+        return value;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("the map is closed");
+    }
+
+    private void checkKey(byte[] key) {
+        checkOpen();
+        if (key.length != keySize)
+            throw new IllegalArgumentException(
+                "the keys are " + keySize + " bytes, not " + key.length);
+    }
+
+    private void checkValue(byte[] value) {
+        if (value == null)
+            throw new NullPointerException("null values are not allowed");
+        if (value.length != valueSize)
+            throw new IllegalArgumentException(
+                "the values are " + valueSize + " bytes, not " + value.length);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // capped at Integer.MAX_VALUE, see longSize()
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public long longSize() {
+        return size;
+    }
+
+    @Override
+    public Iterable<byte[]> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public Iterable<byte[]> keys(byte[] lo, byte[] hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, false));
+    }
+
+    @Override
+    public Iterable<byte[]> headKeys(byte[] hi) {
+        return Cursors.keys(() -> new Cursor(null, hi, false));
+    }
+
+    @Override
+    public Iterable<byte[]> tailKeys(byte[] lo) {
+        return Cursors.keys(() -> new Cursor(lo, null, false));
+    }
+
+    @Override
+    public Iterable<byte[]> descendingKeys() {
+        return Cursors.keys(() -> new Cursor(null, null, true));
+    }
+
+    @Override
+    public Iterable<byte[]> descendingKeys(byte[] lo, byte[] hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, true));
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor(null, null, false);
+    }
+
+    // keeps the way down to its leaf, and goes up only as far as it has to
+    // for the next leaf, the bounds are null if the range is open on that
+    // side, key() and value() copy the entry like the methods of Map,
+    // key(array) and value(array) are the ones that don't allocate anything
+    public class Cursor implements MapCursor<byte[], byte[]> {
+        private final byte[] lo;
+        private final byte[] hi;
+        private final boolean descending;
+        private final int[] path;
+        private final int[] indexes;
+        // the index of the current entry in the leaf
+        private int index;
+        private boolean done;
+        // the current leaf, as long as the cache didn't evict anything since
+        private ByteBuffer leaf;
+        private long evictions;
+
+        private Cursor(byte[] lo, byte[] hi, boolean descending) {
+            checkOpen();
+            if (lo != null)
+                checkKey(lo);
+            if (hi != null)
+                checkKey(hi);
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            path = new int[height + 1];
+            indexes = new int[height];
+
+            byte[] start = descending ? hi : lo;
+            path[0] = root;
+            for (int depth = 0; depth < height; depth++) {
+                ByteBuffer inner = pages.read(path[depth]);
+                if (start != null)
+                    indexes[depth] = childIndex(inner, start);
+                else
+                    indexes[depth] = descending ? count(inner) - 1 : 0;
+                path[depth + 1] = child(inner, indexes[depth]);
+            }
+            ByteBuffer page = leaf();
+            int i = start == null ? -1 : indexOf(page, start);
+            if (descending)
+                // the index of the floor of hi, plus one
+                index = start == null ? count(page) : i >= 0 ? i + 1 : -i - 1;
+            else
+                // the index of the ceiling of lo, minus one
+                index = start == null ? -1 : (i >= 0 ? i : -i - 1) - 1;
+        }
+
+        @Override
+        public boolean advance() {
+            if (done)
+                return false;
+            checkOpen();
+
+            ByteBuffer page = leaf();
+            if (descending) {
+                while (--index < 0) {
+                    if (!step(-1)) {
+                        done = true;
+                        return false;
+                    }
+                    page = leaf();
+                    index = count(page);
+                }
+                done = lo != null && compare(lo, page, entryOffset(index)) > 0;
+            } else {
+                while (++index >= count(page)) {
+                    if (!step(1)) {
+                        done = true;
+                        return false;
+                    }
+                    page = leaf();
+                    index = -1;
+                }
+                done = hi != null && compare(hi, page, entryOffset(index)) < 0;
+            }
+            return !done;
+        }
+
+        // moves the path over to the next leaf in the direction, goes up
+        // until there is a child on that side and down its near edge
+        private boolean step(int direction) {
+            int depth = height - 1;
+            while (depth >= 0) {
+                int next = indexes[depth] + direction;
+                if (next >= 0 && next < count(pages.read(path[depth])))
+                    break;
+                depth--;
+            }
+            if (depth < 0)
+                return false;
+
+            indexes[depth] += direction;
+            for (; depth < height; depth++) {
+                ByteBuffer inner = pages.read(path[depth]);
+                path[depth + 1] = child(inner, indexes[depth]);
+                if (depth + 1 < height) {
+                    ByteBuffer below = pages.read(path[depth + 1]);
+                    indexes[depth + 1] = direction > 0 ? 0 : count(below) - 1;
+                }
+            }
+            leaf = null;
+            return true;
+        }
+
+        private ByteBuffer leaf() {
+            if (leaf == null || evictions != pages.evictions()) {
+                evictions = pages.evictions();
+                leaf = pages.read(path[height]);
+            }
+            return leaf;
+        }
+
+        @Override
+        public byte[] key() {
+            return readKey(leaf(), entryOffset(index));
+        }
+
+        @Override
+        public byte[] value() {
+            return readValue(leaf(), index);
+        }
+
+        public void key(byte[] key) {
+            leaf().get(entryOffset(index), key);
+        }
+
+        public void value(byte[] value) {
+            leaf().get(entryOffset(index) + keySize, value);
+        }
+    }
+
+    // commits and drops the mappings of the file, which the gc unmaps, the
+    // map can't be used afterwards
+    @Override
+    public void close() {
+        if (closed)
+            return;
+
+        commit();
+        closed = true;
+        pages.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
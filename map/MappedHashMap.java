@@ -0,0 +1,224 @@
+package map;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// an OffHeapHashMap whose pages are mapped from a file instead, so the table
+// outlives the process, reopening the file only maps it again and the os
+// pages the table in as it's used, instead of putting every entry back
+//
+// the file is a header followed by the table, or by more than one table
+// during a resize, every resize builds a new generation of the table in a
+// free part of the file, right after the header if it fits in front of the
+// current one, else after the end of the file, the header only switches to
+// the new generation once it's completely on disk, so a crash in the middle
+// of a resize leaves the old generation as it was
+//
+// everything else is written straight into the mapped pages, which belong
+// to the os, so a crash of the process loses nothing, flush() has to be
+// called to survive a crash of the os as well, the counts of the entries
+// are only written by close(), the file is marked as open until then and
+// reopening a file that wasn't closed counts the entries again, which reads
+// the whole table
+public class MappedHashMap extends OffHeapHashMap {
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    // the index of the record in the header that points at the current
+    // generation, and where that one is
+    private int record;
+    private long tableOffset;
+    private long tableSize;
+    // null once the map is closed
+    private ByteBuffer[] table;
+    // the generation that is being built, or the one that is being reopened
+    private long nextOffset;
+    private long nextSize;
+    private long nextCapacity;
+    private ByteBuffer[] nextPages;
+
+    private static final long MAGIC = 0x4d61707065644d31L;
+    // the header has a page of the os to itself, and every generation
+    // starts at a page as well
+    private static final int PAGE_SIZE = 4096;
+    private static final int HEADER_SIZE = PAGE_SIZE;
+    private static final int KEY_SIZE = 8;
+    private static final int VALUE_SIZE = 12;
+    // 1 if the file was closed, so the counts can be trusted
+    private static final int CLOSED = 16;
+    private static final int SIZE = 24;
+    private static final int DELETED = 32;
+    // the index of the record of the current generation, a single byte so
+    // that switching it can't be torn in half
+    private static final int CURRENT = 40;
+    // two records of the offset and the capacity of a generation, a resize
+    // writes the one that isn't in use and then switches CURRENT over
+    private static final int RECORDS = 48;
+    private static final int RECORD_SIZE = 16;
+
+    public MappedHashMap(Path path, int keySize, int valueSize)
+            throws IOException {
+        this(path, keySize, valueSize, 0);
+    }
+
+    // opens the map in the file, or creates it if the file doesn't exist,
+    // the expected size only matters for a new map
+    public MappedHashMap(Path path, int keySize, int valueSize,
+            long expectedSize) throws IOException {
+        super(keySize, valueSize, capacityFor(expectedSize), null, false);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            // the magic is written last, a file without it was never
+            // finished, so it's created from scratch
+            if (header.getLong(0) == MAGIC)
+                reopen(keySize, valueSize);
+            else
+                create(keySize, valueSize, capacityFor(expectedSize));
+            // until close() says otherwise
+            header.putLong(CLOSED, 0);
+            header.force();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void create(int keySize, int valueSize, long capacity)
+            throws IOException {
+        channel.truncate(HEADER_SIZE);
+        header.putInt(KEY_SIZE, keySize);
+        header.putInt(VALUE_SIZE, valueSize);
+        nextOffset = HEADER_SIZE;
+        init(capacity);
+        commit();
+        header.putLong(0, MAGIC);
+    }
+
+    private void reopen(int keySize, int valueSize) throws IOException {
+        if (header.getInt(KEY_SIZE) != keySize
+                || header.getInt(VALUE_SIZE) != valueSize)
+            throw new IllegalArgumentException("the file has keys of "
+                + header.getInt(KEY_SIZE) + " bytes and values of "
+                + header.getInt(VALUE_SIZE) + " bytes");
+
+        record = header.get(CURRENT);
+        nextOffset = header.getLong(RECORDS + record * RECORD_SIZE);
+        init(header.getLong(RECORDS + record * RECORD_SIZE + 8));
+        table = nextPages;
+        tableOffset = nextOffset;
+        tableSize = nextSize;
+        // anything after the table is a generation that a crash cut short
+        channel.truncate(tableOffset + tableSize);
+        if (header.getLong(CLOSED) == 1)
+            restore(header.getLong(SIZE), header.getLong(DELETED));
+        else
+            recount();
+    }
+
+    // maps the pages of the table at nextOffset when the map is opened, and
+    // picks a free part of the file for the new generation during a resize
+    @Override
+    ByteBuffer[] allocatePages(long capacity, int count, int pageSize) {
+        nextSize = (long) count * pageSize;
+        nextCapacity = capacity;
+        boolean reused = false;
+        if (table != null) {
+            // everything in front of the current generation is free, it's
+            // the generations that came before it
+            reused = HEADER_SIZE + nextSize <= tableOffset;
+            nextOffset = reused
+                ? HEADER_SIZE
+                : (tableOffset + tableSize + PAGE_SIZE - 1) & -PAGE_SIZE;
+        }
+        nextPages = new ByteBuffer[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                nextPages[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    nextOffset + (long) i * pageSize, pageSize);
+                // the end of the file is zeros anyway
+                if (reused)
+                    OffHeapArena.zero(nextPages[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return nextPages;
+    }
+
+    // the new generation is complete, so the file switches over to it and
+    // the old one is dropped, the gc unmaps its pages
+    @Override
+    void resized(ByteBuffer[] oldPages) {
+        commit();
+        try {
+            // if the new generation is in front, the old one was the end
+            // of the file
+            channel.truncate(tableOffset + tableSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the new generation has to be on disk before the header points at it,
+    // and the header is switched with a single byte, so after a crash it
+    // points at either the old or the new generation and never at a mix
+    private void commit() {
+        for (ByteBuffer page : nextPages)
+            ((MappedByteBuffer) page).force();
+        int next = 1 - record;
+        header.putLong(RECORDS + next * RECORD_SIZE, nextOffset);
+        header.putLong(RECORDS + next * RECORD_SIZE + 8, nextCapacity);
+        header.force();
+        header.put(CURRENT, (byte) next);
+        header.force();
+
+        record = next;
+        table = nextPages;
+        tableOffset = nextOffset;
+        tableSize = nextSize;
+    }
+
+    /**
+     * Writes the table to disk, so that it survives a crash of the os as
+     * well, a crash of the process loses nothing even without it
+     *
+     * @throws IllegalStateException if the map is closed
+     */
+    public void flush() {
+        if (table == null)
+            throw new IllegalStateException("the map is closed");
+        for (ByteBuffer page : table)
+            ((MappedByteBuffer) page).force();
+    }
+
+    // writes the table and the counts to disk and drops the mappings, which
+    // the gc unmaps, the next open can trust the counts from then on
+    @Override
+    public void close() {
+        long size = longSize();
+        long deleted = deletedSlots();
+        if (detach() == null)
+            return;
+
+        flush();
+        header.putLong(SIZE, size);
+        header.putLong(DELETED, deleted);
+        header.force();
+        header.putLong(CLOSED, 1);
+        header.force();
+        table = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
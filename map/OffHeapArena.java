@@ -0,0 +1,89 @@
+package map;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+// the memory that OffHeapHashMap keeps its table in, a map that is resized or
+// closed gives its buffers back to the arena and the next table that needs a
+// buffer of the same size takes it from there, the gc only frees a direct
+// buffer once it notices that the buffer is unreachable, which can take ages
+// when the heap itself has hardly anything on it, so without the arena a map
+// that is rebuilt every now and then allocates a new table every time while
+// the old ones are still around, with the arena it only allocates as much as
+// its largest tables need at once
+//
+// there's no supported way to free a direct buffer before the gc gets to it
+// on java 17, so closing the arena only drops the buffers it holds and the
+// gc frees them like any other unreachable buffer
+//
+// all of it is thread-safe, so the maps of different threads can share one
+public class OffHeapArena implements AutoCloseable {
+    // the free buffers by their size
+    private final HashMap<Integer, ArrayDeque<ByteBuffer>> free = new HashMap<>();
+    private long freeBytes;
+    private boolean closed;
+
+    /**
+     * Takes a buffer of the size from the free ones, or allocates a new one
+     * if there is none
+     *
+     * @param bytes The size of the buffer
+     * @return A buffer that is all zeros
+     * @throws IllegalStateException if the arena is closed
+     */
+    ByteBuffer allocate(int bytes) {
+        ByteBuffer buffer;
+        synchronized (this) {
+            if (closed)
+                throw new IllegalStateException("the arena is closed");
+            ArrayDeque<ByteBuffer> buffers = free.get(bytes);
+            if (buffers == null || buffers.isEmpty())
+                return ByteBuffer.allocateDirect(bytes);
+            buffer = buffers.pop();
+            freeBytes -= bytes;
+        }
+        // a new buffer is zeroed by allocateDirect(...), a reused one still
+        // has the old table in it, zeroing a whole page takes a while so the
+        // other threads don't have to wait for it
+        zero(buffer);
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer back to the arena, the caller must not touch it again
+     *
+     * @param buffer A buffer that was taken from this arena
+     */
+    synchronized void release(ByteBuffer buffer) {
+        // the gc frees it
+        if (closed)
+            return;
+        free.computeIfAbsent(buffer.capacity(), k -> new ArrayDeque<>())
+            .push(buffer);
+        freeBytes += buffer.capacity();
+    }
+
+    // the amount of memory that is waiting to be reused
+    public synchronized long freeBytes() {
+        return freeBytes;
+    }
+
+    // drops the buffers that aren't in use, the ones the maps still have are
+    // dropped when the maps give them back, and the arena can't hand out new
+    // ones anymore
+    @Override
+    public synchronized void close() {
+        closed = true;
+        free.clear();
+        freeBytes = 0;
+    }
+
+    static void zero(ByteBuffer buffer) {
+        int i = 0;
+        for (; i + 8 <= buffer.capacity(); i += 8)
+            buffer.putLong(i, 0);
+        for (; i < buffer.capacity(); i++)
+            buffer.put(i, (byte) 0);
+    }
+}
@@ -0,0 +1,598 @@
+package map;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// a hash map for keys and values that are byte arrays of a fixed length, e.g.
+// ids and the records they point at, the whole table lives outside of the
+// java heap in direct buffers, so no matter how many entries there are the gc
+// only ever sees the map and a handful of buffers instead of a node (or even
+// just an array slot) per entry
+//
+// the probing is the same as in LinearProbingHashMap, every slot is a control
+// byte followed by the key and the value, and like in SwissHashMap a full
+// slot keeps 7 bits of the hash in its control byte, so a probe almost never
+// compares a key that isn't the one it looks for, a buffer is indexed by an
+// int, so the table is split into pages of at most 1 GB
+//
+// the arrays that the methods of Map return are copies, store(key, value),
+// get(key, value) and the cursor can fill arrays of the caller instead
+public class OffHeapHashMap implements Map<byte[], byte[]>, AutoCloseable {
+    private final int keySize;
+    private final int valueSize;
+    private final int slotSize;
+    // null for a MappedHashMap, which maps its pages from a file
+    private final OffHeapArena arena;
+    // a map that created its own arena closes it along with the map
+    private final boolean ownsArena;
+    // null once the map is closed
+    private ByteBuffer[] pages;
+    // every page has 2^pageShift slots
+    private int pageShift;
+    private long capacity;
+    private long size;
+    private long deleted;
+    // a presized map never shrinks below the size it was created with
+    private final long minCapacity;
+    // the keys are read into this one to be hashed again during a resize
+    private final byte[] scratch;
+
+    private static final byte EMPTY = 0;
+    private static final byte DELETED = 1;
+    // a full slot holds FULL | the top 7 bits of the hash, so it's the only
+    // kind of slot whose control byte is negative
+    private static final byte FULL = (byte) 0x80;
+
+    private static final int MAX_PAGE_SIZE = 1 << 30;
+    // has to be a power of two, see Hashing
+    private static final long INIT_SIZE = 64;
+    private static final float MAX_LOAD_FACTOR = 0.75f;
+    private static final float MIN_LOAD_FACTOR = 0.25f;
+
+    // the pages use the same byte order, so a key compares the same 8 bytes
+    // at a time no matter whether it's in an array or in a page
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ORDER);
+
+    public OffHeapHashMap(int keySize, int valueSize) {
+        this(keySize, valueSize, 0);
+    }
+
+    // makes room for the expected amount of entries right away, growing a
+    // table of a few GB means rehashing every entry into a new table twice
+    // the size, and the old one has to stay around until it's done
+    public OffHeapHashMap(int keySize, int valueSize, long expectedSize) {
+        this(keySize, valueSize, capacityFor(expectedSize),
+            new OffHeapArena(), true);
+        init(minCapacity);
+    }
+
+    // the table is taken from the arena, and given back when the map is
+    // closed, so that the next map that is built can reuse the memory
+    public OffHeapHashMap(int keySize, int valueSize, long expectedSize,
+            OffHeapArena arena) {
+        this(keySize, valueSize, capacityFor(expectedSize), arena, false);
+        init(minCapacity);
+    }
+
+    // leaves the table to the subclass, which has to call init(capacity)
+    OffHeapHashMap(int keySize, int valueSize, long minCapacity,
+            OffHeapArena arena, boolean ownsArena) {
+        if (keySize <= 0 || valueSize < 0
+                || 1L + keySize + valueSize > MAX_PAGE_SIZE)
+            throw new IllegalArgumentException(
+                "invalid key or value size: " + keySize + ", " + valueSize);
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.slotSize = 1 + keySize + valueSize;
+        this.minCapacity = minCapacity;
+        this.arena = arena;
+        this.ownsArena = ownsArena;
+        this.scratch = new byte[keySize];
+    }
+
+    /**
+     * @param expectedSize The amount of entries the table should have room
+     *                     for
+     * @return The smallest capacity that holds them without growing
+     */
+    static long capacityFor(long expectedSize) {
+        long capacity = INIT_SIZE;
+        while (capacity * MAX_LOAD_FACTOR < expectedSize)
+            capacity *= 2;
+        return capacity;
+    }
+
+    /**
+     * Replaces the table with an empty one of the capacity, the pages of
+     * the old table are left to the caller
+     *
+     * @param capacity The amount of slots, a power of two
+     */
+    void init(long capacity) {
+        // the pages are all the same size, so the slot count of a page is a
+        // power of two as well and the page of a slot is just its high bits
+        int pageSlots = (int) Math.min(capacity,
+            Integer.highestOneBit(MAX_PAGE_SIZE / slotSize));
+        pageShift = Integer.numberOfTrailingZeros(pageSlots);
+        pages = allocatePages(capacity,
+            (int) (capacity / pageSlots), pageSlots * slotSize);
+        for (ByteBuffer page : pages)
+            page.order(ORDER);
+        this.capacity = capacity;
+        size = 0;
+        deleted = 0;
+    }
+
+    /**
+     * Creates the pages of a new table, overridden by MappedHashMap
+     *
+     * @param capacity The amount of slots of the table
+     * @param count    The amount of pages
+     * @param pageSize The size of every page in bytes
+     * @return The pages, all zeros unless they hold a table that is reopened
+     */
+    ByteBuffer[] allocatePages(long capacity, int count, int pageSize) {
+        ByteBuffer[] pages = new ByteBuffer[count];
+        for (int i = 0; i < count; i++)
+            pages[i] = arena.allocate(pageSize);
+        return pages;
+    }
+
+    /**
+     * Called once a resize has copied every entry into the new table, which
+     * is in place by then, overridden by MappedHashMap
+     *
+     * @param oldPages The pages of the old table, not used anymore
+     */
+    void resized(ByteBuffer[] oldPages) {
+        for (ByteBuffer page : oldPages)
+            arena.release(page);
+    }
+
+    // sets the counts of a table that init(capacity) reopened
+    void restore(long size, long deleted) {
+        this.size = size;
+        this.deleted = deleted;
+    }
+
+    // counts the full and the deleted slots of a reopened table whose
+    // counts were lost, which reads the whole table
+    void recount() {
+        size = 0;
+        deleted = 0;
+        for (ByteBuffer page : pages) {
+            for (int offset = 0; offset < page.capacity(); offset += slotSize) {
+                byte ctrl = page.get(offset);
+                if (ctrl < 0)
+                    size++;
+                else if (ctrl == DELETED)
+                    deleted++;
+            }
+        }
+    }
+
+    long deletedSlots() {
+        return deleted;
+    }
+
+    /**
+     * Closes the map without giving the pages back to the arena
+     *
+     * @return The pages of the table, or null if the map is already closed
+     */
+    ByteBuffer[] detach() {
+        ByteBuffer[] oldPages = pages;
+        pages = null;
+        size = 0;
+        deleted = 0;
+        return oldPages;
+    }
+
+    @Override
+    public byte[] put(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        growIfFull();
+        long h = hash(key);
+        long slot = find(key, h);
+        if (slot >= 0) {
+            // if the key already exists, update the value
+            byte[] previous = readValue(slot);
+            writeValue(slot, value);
+            return previous;
+        }
+        insert(-slot - 1, key, value, h);
+        return null;
+    }
+
+    /**
+     * Same as put(key, value), without copying the previous value out of
+     * the map
+     *
+     * @param key   The key
+     * @param value The value
+     * @return true if the key didn't exist before, else false
+     */
+    public boolean store(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        growIfFull();
+        long h = hash(key);
+        long slot = find(key, h);
+        if (slot >= 0) {
+            writeValue(slot, value);
+            return false;
+        }
+        insert(-slot - 1, key, value, h);
+        return true;
+    }
+
+    // the map has no null values, so every key that exists has a value
+    @Override
+    public byte[] putIfAbsent(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        growIfFull();
+        long h = hash(key);
+        long slot = find(key, h);
+        if (slot >= 0)
+            return readValue(slot);
+
+        insert(-slot - 1, key, value, h);
+        return null;
+    }
+
+    @Override
+    public byte[] compute(byte[] key,
+            BiFunction<? super byte[], ? super byte[], ? extends byte[]> function) {
+        checkKey(key);
+        growIfFull();
+        long h = hash(key);
+        long slot = find(key, h);
+        byte[] value = function.apply(key, slot >= 0 ? readValue(slot) : null);
+        if (value == null) {
+            if (slot >= 0)
+                delete(slot);
+            return null;
+        }
+        checkValue(value);
+        if (slot >= 0)
+            writeValue(slot, value);
+        else
+            insert(-slot - 1, key, value, h);
+        return value;
+    }
+
+    @Override
+    public byte[] computeIfAbsent(byte[] key,
+            Function<? super byte[], ? extends byte[]> function) {
+        checkKey(key);
+        growIfFull();
+        long h = hash(key);
+        long slot = find(key, h);
+        if (slot >= 0)
+            return readValue(slot);
+
+        byte[] value = function.apply(key);
+        if (value == null)
+            return null;
+        checkValue(value);
+        insert(-slot - 1, key, value, h);
+        return value;
+    }
+
+    @Override
+    public byte[] merge(byte[] key, byte[] value,
+            BiFunction<? super byte[], ? super byte[], ? extends byte[]> function) {
+        checkKey(key);
+        checkValue(value);
+        growIfFull();
+        long h = hash(key);
+        long slot = find(key, h);
+        if (slot < 0) {
+            insert(-slot - 1, key, value, h);
+            return value;
+        }
+        byte[] merged = function.apply(readValue(slot), value);
+        if (merged == null) {
+            delete(slot);
+            return null;
+        }
+        checkValue(merged);
+        writeValue(slot, merged);
+        return merged;
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * Same as get(key), but copies the value into the array instead of a
+     * new one
+     *
+     * @param key   The key
+     * @param value The array to copy the value into, of the value size
+     * @return true if the key exists, else false and the array is untouched
+     */
+    public boolean get(byte[] key, byte[] value) {
+        checkKey(key);
+        checkValue(value);
+        long slot = find(key, hash(key));
+        if (slot < 0)
+            return false;
+
+        page(slot).get(offset(slot) + 1 + keySize, value);
+        return true;
+    }
+
+    @Override
+    public byte[] getOrDefault(byte[] key, byte[] defaultValue) {
+        checkKey(key);
+        long slot = find(key, hash(key));
+        if (slot < 0)
+            return defaultValue;
+
+        return readValue(slot);
+    }
+
+    @Override
+    public void remove(byte[] key) {
+        checkKey(key);
+        long slot = find(key, hash(key));
+        if (slot >= 0)
+            delete(slot);
+    }
+
+    @Override
+    public boolean containsKey(byte[] key) {
+        checkKey(key);
+        return find(key, hash(key)) >= 0;
+    }
+
+    // same as LinearProbingHashMap.find(key), the slot of the key if it's
+    // there, else -(slot + 1) of the slot where it goes, which is the first
+    // deleted slot on the way if there is one
+    private long find(byte[] key, long h) {
+        byte fingerprint = fingerprint(h);
+        long mask = capacity - 1;
+        long slot = h & mask;
+        long free = -1;
+        while (true) {
+            ByteBuffer page = page(slot);
+            int offset = offset(slot);
+            byte ctrl = page.get(offset);
+            if (ctrl == EMPTY)
+                break;
+            if (ctrl == DELETED) {
+                if (free < 0)
+                    free = slot;
+            } else if (ctrl == fingerprint && keyEquals(page, offset + 1, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -(free >= 0 ? free : slot) - 1;
+    }
+
+    // every operation that might add the key makes room before it looks for
+    // the key, so that the slot it finds is still the right one afterwards
+    private void growIfFull() {
+        if (size + deleted + 1 > MAX_LOAD_FACTOR * capacity) {
+            // only grow if the table is actually full, if it's mostly
+            // deleted slots it's enough to rehash it to get rid of them
+            if (size + 1 > MAX_LOAD_FACTOR * capacity / 2)
+                resize(2 * capacity);
+            else
+                resize(capacity);
+        }
+    }
+
+    // puts the key into the slot that find(key, h) returned, the control
+    // byte goes last, so that a MappedHashMap whose process dies halfway
+    // through doesn't end up with a full slot that has half a key in it
+    private void insert(long slot, byte[] key, byte[] value, long h) {
+        ByteBuffer page = page(slot);
+        int offset = offset(slot);
+        if (page.get(offset) == DELETED)
+            deleted--;
+        page.put(offset + 1, key);
+        page.put(offset + 1 + keySize, value);
+        page.put(offset, fingerprint(h));
+        size++;
+    }
+
+    private void delete(long slot) {
+        // a probe stops at the first empty slot, so the slot can be emptied
+        // if the next one is empty anyway, else it has to be marked as
+        // deleted so that the keys further down can still be found
+        long next = (slot + 1) & (capacity - 1);
+        if (page(next).get(offset(next)) == EMPTY) {
+            page(slot).put(offset(slot), EMPTY);
+        } else {
+            page(slot).put(offset(slot), DELETED);
+            deleted++;
+        }
+        size--;
+        // check to make sure the table is not too empty
+        if ((double) size / capacity < MIN_LOAD_FACTOR && capacity > minCapacity)
+            resize(capacity / 2);
+    }
+
+    private boolean keyEquals(ByteBuffer page, int offset, byte[] key) {
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            if (page.getLong(offset + i) != (long) LONGS.get(key, i))
+                return false;
+        }
+        for (; i < keySize; i++) {
+            if (page.get(offset + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    private byte[] readValue(long slot) {
+        byte[] value = new byte[valueSize];
+        page(slot).get(offset(slot) + 1 + keySize, value);
+        return value;
+    }
+
+    private void writeValue(long slot, byte[] value) {
+        page(slot).put(offset(slot) + 1 + keySize, value);
+    }
+
+    private ByteBuffer page(long slot) {
+        return pages[(int) (slot >>> pageShift)];
+    }
+
+    // the offset of the control byte of the slot in its page
+    private int offset(long slot) {
+        return (int) (slot & ((1L << pageShift) - 1)) * slotSize;
+    }
+
+    // the keys are hashed 8 bytes at a time, the low bits of the mixed hash
+    // pick the slot and the top 7 bits are the fingerprint
+    private long hash(byte[] key) {
+        long h = keySize;
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            long word = (long) LONGS.get(key, i) * 0x87c37b91114253d5L;
+            h = Long.rotateLeft(h ^ word, 31) * 0x4cf5ad432745937fL;
+        }
+        long tail = 0;
+        for (int shift = 0; i < keySize; i++, shift += 8)
+            tail |= (key[i] & 0xffL) << shift;
+        return Hashing.mix64(h ^ tail);
+    }
+
+    private static byte fingerprint(long h) {
+        return (byte) (FULL | (h >>> 57));
+    }
+
+    private void checkKey(byte[] key) {
+        if (pages == null)
+            throw new IllegalStateException("the map is closed");
+        if (key.length != keySize)
+            throw new IllegalArgumentException(
+                "the keys are " + keySize + " bytes, not " + key.length);
+    }
+
+    private void checkValue(byte[] value) {
+        if (value == null)
+            throw new NullPointerException("null values are not allowed");
+        if (value.length != valueSize)
+            throw new IllegalArgumentException(
+                "the values are " + valueSize + " bytes, not " + value.length);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // capped at Integer.MAX_VALUE, see longSize()
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    public long longSize() {
+        return size;
+    }
+
+    @Override
+    public Iterable<byte[]> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public Cursor cursor() {
+        if (pages == null)
+            throw new IllegalStateException("the map is closed");
+        return new Cursor();
+    }
+
+    // key() and value() copy the entry like the methods of Map, key(array)
+    // and value(array) are the ones that don't allocate anything
+    public class Cursor implements MapCursor<byte[], byte[]> {
+        private long slot = -1;
+
+        private Cursor() {}
+
+        @Override
+        public boolean advance() {
+            while (++slot < capacity) {
+                if (page(slot).get(offset(slot)) < 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public byte[] key() {
+            byte[] key = new byte[keySize];
+            key(key);
+            return key;
+        }
+
+        @Override
+        public byte[] value() {
+            return readValue(slot);
+        }
+
+        public void key(byte[] key) {
+            page(slot).get(offset(slot) + 1, key);
+        }
+
+        public void value(byte[] value) {
+            page(slot).get(offset(slot) + 1 + keySize, value);
+        }
+    }
+
+    // gives the table back to the arena, the map can't be used afterwards
+    @Override
+    public void close() {
+        ByteBuffer[] oldPages = detach();
+        if (oldPages == null)
+            return;
+
+        for (ByteBuffer page : oldPages)
+            arena.release(page);
+        if (ownsArena)
+            arena.close();
+    }
+
+    // copies the full slots over as they are, the keys are known to be
+    // distinct, so every key just takes the first empty slot
+    private void resize(long newCapacity) {
+        ByteBuffer[] oldPages = pages;
+        long oldSize = size;
+        init(newCapacity);
+        long mask = capacity - 1;
+        for (ByteBuffer oldPage : oldPages) {
+            for (int offset = 0; offset < oldPage.capacity(); offset += slotSize) {
+                if (oldPage.get(offset) >= 0)
+                    continue;
+
+                oldPage.get(offset + 1, scratch);
+                long slot = hash(scratch) & mask;
+                while (page(slot).get(offset(slot)) != EMPTY)
+                    slot = (slot + 1) & mask;
+                page(slot).put(offset(slot), oldPage, offset, slotSize);
+            }
+        }
+        size = oldSize;
+        resized(oldPages);
+    }
+}
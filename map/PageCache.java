@@ -0,0 +1,235 @@
+package map;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+// the mappings of a file that is too big to be mapped all at once, or
+// shouldn't be, the file is mapped in chunks of a few pages and only the
+// most recently used chunks stay in the cache, the least recently used one
+// is dropped once there are too many, after its changes were written to disk
+//
+// java 17 can't unmap a file before the gc notices that the mapping is
+// unreachable, and the os only allows so many mappings per process, 65530
+// on linux by default, so a chunk that is needed again while its dropped
+// mapping is still around takes that one back instead of mapping the chunk
+// once more, and if the dropped mappings pile up anyway the cache asks for
+// a gc, the same way the jdk does when there's no room for a direct buffer
+//
+// the os still decides which of the mapped pages are in memory, this only
+// bounds how much of the file the process has mapped, and lets the os drop
+// the cold parts of the file without having to guess
+//
+// a page is a slice of the mapping of its chunk, whose writes aren't forced
+// anymore once the chunk is dropped, so a caller may only keep the pages it
+// got since the last eviction, see evictions()
+final class PageCache {
+    private final FileChannel channel;
+    private final int pageSize;
+    private final int chunkShift;
+    private final int maxChunks;
+    private final LongObjectHashMap<Chunk> chunks = new LongObjectHashMap<>();
+    // the lru list, head is the most recently used chunk
+    private Chunk head;
+    private Chunk tail;
+    private int size;
+    private long evictions;
+    // the chunks that were dropped and whose mappings the gc hasn't cleared
+    // yet, the queue gets the ones it has
+    private final LongObjectHashMap<Dropped> dropped = new LongObjectHashMap<>();
+    private final ReferenceQueue<MappedByteBuffer> cleared = new ReferenceQueue<>();
+    // the amount of chunks that were mapped, and the amount at which the
+    // next gc may be asked for
+    private long mapped;
+    private long gcAt = MAX_DROPPED;
+
+    // a quarter of what linux allows by default, which leaves the rest of
+    // the process plenty
+    private static final int MAX_DROPPED = 16384;
+
+    private static final class Dropped extends WeakReference<MappedByteBuffer> {
+        final long index;
+
+        Dropped(long index, MappedByteBuffer buffer,
+                ReferenceQueue<MappedByteBuffer> queue) {
+            super(buffer, queue);
+            this.index = index;
+        }
+    }
+
+    private static final class Chunk {
+        final long index;
+        final MappedByteBuffer buffer;
+        // whether the chunk was written to since it was last forced
+        boolean dirty;
+        Chunk prev;
+        Chunk next;
+
+        Chunk(long index, MappedByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * @param channel    The file, which grows as chunks past its end are
+     *                   mapped
+     * @param pageSize   The size of a page in bytes
+     * @param chunkPages The amount of pages that are mapped together, a
+     *                   power of two
+     * @param maxChunks  The most chunks that are mapped at the same time
+     */
+    PageCache(FileChannel channel, int pageSize, int chunkPages, int maxChunks) {
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkPages);
+        this.maxChunks = maxChunks;
+    }
+
+    /**
+     * @param page The number of the page
+     * @return The page, only to be read from
+     */
+    ByteBuffer read(long page) {
+        return slice(chunk(page), page);
+    }
+
+    /**
+     * @param page The number of the page
+     * @return The page, whose changes are written to disk by force() or
+     *         when its chunk is evicted
+     */
+    ByteBuffer write(long page) {
+        Chunk chunk = chunk(page);
+        chunk.dirty = true;
+        return slice(chunk, page);
+    }
+
+    /**
+     * @return How many chunks were unmapped so far, the pages that were
+     *         taken before this changed might not be mapped anymore
+     */
+    long evictions() {
+        return evictions;
+    }
+
+    /**
+     * Writes every change to the mapped chunks to disk
+     */
+    void force() {
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            if (chunk.dirty) {
+                chunk.buffer.force();
+                chunk.dirty = false;
+            }
+        }
+    }
+
+    /**
+     * Drops every chunk, the changes are left to the os, so force() has to
+     * come first for them to be on disk
+     */
+    void clear() {
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next)
+            chunks.remove(chunk.index);
+        head = null;
+        tail = null;
+        size = 0;
+        evictions++;
+    }
+
+    private ByteBuffer slice(Chunk chunk, long page) {
+        int offset = (int) (page & ((1L << chunkShift) - 1)) * pageSize;
+        return chunk.buffer.slice(offset, pageSize);
+    }
+
+    private Chunk chunk(long page) {
+        long index = page >>> chunkShift;
+        // most accesses are to the chunk that was used last
+        if (head != null && head.index == index)
+            return head;
+
+        Chunk chunk = chunks.get(index);
+        if (chunk != null) {
+            unlink(chunk);
+            addFirst(chunk);
+            return chunk;
+        }
+        if (size == maxChunks)
+            evict();
+        chunk = new Chunk(index, map(index));
+        chunks.put(index, chunk);
+        addFirst(chunk);
+        return chunk;
+    }
+
+    private MappedByteBuffer map(long index) {
+        for (Dropped ref; (ref = (Dropped) cleared.poll()) != null; ) {
+            // the chunk might have been dropped again since
+            if (dropped.get(ref.index) == ref)
+                dropped.remove(ref.index);
+        }
+        Dropped ref = dropped.get(index);
+        if (ref != null) {
+            dropped.remove(index);
+            MappedByteBuffer buffer = ref.get();
+            if (buffer != null)
+                return buffer;
+        }
+
+        // the count lags behind the gc until the queue has the cleared
+        // mappings, so the next gc waits for a few more chunks
+        if (dropped.size() >= MAX_DROPPED && mapped >= gcAt) {
+            System.gc();
+            gcAt = mapped + MAX_DROPPED / 2;
+        }
+        long chunkSize = (long) pageSize << chunkShift;
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                index * chunkSize, chunkSize);
+            mapped++;
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void evict() {
+        Chunk chunk = tail;
+        unlink(chunk);
+        chunks.remove(chunk.index);
+        if (chunk.dirty)
+            chunk.buffer.force();
+        dropped.put(chunk.index, new Dropped(chunk.index, chunk.buffer, cleared));
+        evictions++;
+    }
+
+    private void addFirst(Chunk chunk) {
+        chunk.prev = null;
+        chunk.next = head;
+        if (head == null)
+            tail = chunk;
+        else
+            head.prev = chunk;
+        head = chunk;
+        size++;
+    }
+
+    private void unlink(Chunk chunk) {
+        if (chunk.prev == null)
+            head = chunk.next;
+        else
+            chunk.prev.next = chunk.next;
+        if (chunk.next == null)
+            tail = chunk.prev;
+        else
+            chunk.next.prev = chunk.prev;
+        chunk.prev = null;
+        chunk.next = null;
+        size--;
+    }
+}
@@ -0,0 +1,280 @@
+package map;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// an immutable copy of another map, for lookup tables that are built once
+// and then only read, a minimal perfect hash function numbers the keys from
+// 0 to n - 1 without any collisions, so the entries are just two arrays of
+// length n and a lookup reads one slot and compares one key, there is no
+// probing and no load factor
+//
+// the function is bbhash, from "fast and scalable minimal perfect hashing
+// for massive key sets" by limasset et al.: level 0 is an array of
+// gamma * n bits, every key hashes to one of the bits and the bits that
+// exactly one key hashed to are set, those keys are done, the rest go on to
+// level 1, an array of gamma bits per key that is left with another hash,
+// and so on, the number of a key is the amount of set bits before its own,
+// counted with a rank table that has the count before every 512 bits
+//
+// with the default gamma of 1 the levels take about e bits per key in
+// total, and the rank table 1/16 of that, keys with the exact same hashcode
+// collide on every level though, those and whatever is left after the last
+// level are numbered by a small LinearProbingHashMap instead
+@SuppressWarnings("unchecked")
+public class PerfectHashMap<K, V> implements Map<K, V> {
+    // the entry with number i is entries[2i] -> entries[2i + 1], so the key
+    // and its value are usually in the same cache line
+    private final Object[] entries;
+    // the bits of all levels one after another
+    private final long[] bits;
+    // the first bit of every level, and the end of the last one
+    private final long[] levels;
+    // the amount of set bits before every 512 bits, i.e. every 8 longs, at
+    // 1/16 of the size of the bits it's small enough to stay in the cache
+    private final int[] ranks;
+    // null if every key got a bit
+    private final LinearProbingHashMap<K, Integer> leftovers;
+
+    private static final double DEFAULT_GAMMA = 1.0;
+    // about n * (1 - 1/e)^32 keys are left after 32 levels, i.e. none
+    private static final int MAX_LEVELS = 32;
+    // see position(hash, level, size)
+    private static final int LEVEL_ROTATION = 23;
+    private static final long LEVEL_MULTIPLIER = 0x9e3779b97f4a7c15L;
+
+    public PerfectHashMap(Map<K, V> map) {
+        this(map, DEFAULT_GAMMA);
+    }
+
+    // a larger gamma makes the levels sparser, so that fewer keys collide,
+    // which takes less levels for a lookup at the cost of more bits, e.g. 2
+    // takes about 3.3 bits per key and 1.6 levels per lookup, instead of 2.7
+    // bits and 2.7 levels
+    public PerfectHashMap(Map<K, V> map, double gamma) {
+        if (!(gamma >= 1))
+            throw new IllegalArgumentException("gamma below 1: " + gamma);
+
+        int n = map.size();
+        Object[] remaining = new Object[n];
+        MapCursor<K, V> cursor = map.cursor();
+        for (int i = 0; cursor.advance(); i++)
+            remaining[i] = cursor.key();
+
+        // every level only holds the keys that collided on the one before,
+        // which are moved to the front of remaining
+        long[][] levelBits = new long[MAX_LEVELS][];
+        int count = n;
+        int depth = 0;
+        while (count > 0 && depth < MAX_LEVELS) {
+            long size = Math.max(64, ((long) Math.ceil(gamma * count) + 63) & ~63L);
+            long[] once = new long[(int) (size >>> 6)];
+            long[] twice = new long[once.length];
+            for (int i = 0; i < count; i++) {
+                long bit = position(hash(remaining[i]), depth, size);
+                if (isSet(once, bit))
+                    twice[(int) (bit >>> 6)] |= 1L << bit;
+                else
+                    once[(int) (bit >>> 6)] |= 1L << bit;
+            }
+            int collided = 0;
+            for (int i = 0; i < count; i++) {
+                if (isSet(twice, position(hash(remaining[i]), depth, size)))
+                    remaining[collided++] = remaining[i];
+            }
+            for (int i = 0; i < once.length; i++)
+                once[i] &= ~twice[i];
+            levelBits[depth++] = once;
+            count = collided;
+        }
+
+        levels = new long[depth + 1];
+        for (int i = 0; i < depth; i++)
+            levels[i + 1] = levels[i] + 64L * levelBits[i].length;
+        bits = new long[(int) (levels[depth] >>> 6)];
+        for (int i = 0; i < depth; i++)
+            System.arraycopy(levelBits[i], 0, bits, (int) (levels[i] >>> 6),
+                levelBits[i].length);
+        ranks = new int[(bits.length + 7) >>> 3];
+        int rank = 0;
+        for (int i = 0; i < bits.length; i++) {
+            if ((i & 7) == 0)
+                ranks[i >>> 3] = rank;
+            rank += Long.bitCount(bits[i]);
+        }
+
+        // the leftovers get the numbers after the ones of the bits
+        if (count > 0) {
+            leftovers = new LinearProbingHashMap<>();
+            for (int i = 0; i < count; i++)
+                leftovers.put((K) remaining[i], n - count + i);
+        } else {
+            leftovers = null;
+        }
+
+        entries = new Object[2 * n];
+        cursor = map.cursor();
+        while (cursor.advance()) {
+            int index = indexOf(cursor.key());
+            entries[2 * index] = cursor.key();
+            entries[2 * index + 1] = cursor.value();
+        }
+    }
+
+    // the number of the key if it's in the map, else either -1 or the
+    // number of some other key
+    private int indexOf(Object key) {
+        long hash = hash(key);
+        for (int level = 0; level < levels.length - 1; level++) {
+            long start = levels[level];
+            long bit = start + position(hash, level, levels[level + 1] - start);
+            if (isSet(bits, bit))
+                return rank(bit);
+        }
+        if (leftovers == null)
+            return -1;
+
+        Integer index = leftovers.get((K) key);
+        return index == null ? -1 : index;
+    }
+
+    private static long hash(Object key) {
+        return Hashing.mix64(key.hashCode());
+    }
+
+    // the bit of the key in a level of the given size, the hash is only
+    // mixed once per lookup, every level rotates it by another amount
+    // before the multiplication, so that the keys that collided on one level
+    // are spread out on the next
+    private static long position(long hash, int level, long size) {
+        long h = Long.rotateLeft(hash, LEVEL_ROTATION * level) * LEVEL_MULTIPLIER;
+        // the high bits of h * size, which is in [0, size) without a
+        // division, the sign bit is cleared so that multiplyHigh doesn't
+        // treat h as negative, and size doubled to make up for it
+        return Math.multiplyHigh(h & Long.MAX_VALUE, size << 1);
+    }
+
+    private static boolean isSet(long[] bits, long bit) {
+        return (bits[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    // the amount of set bits before the bit
+    private int rank(long bit) {
+        int word = (int) (bit >>> 6);
+        int rank = ranks[word >>> 3];
+        for (int i = word & ~7; i < word; i++)
+            rank += Long.bitCount(bits[i]);
+        return rank + Long.bitCount(bits[word] & ((1L << bit) - 1));
+    }
+
+    // the size of the hash function, the bits and the rank table, not
+    // counting the entries or the leftovers
+    public double bitsPerKey() {
+        if (size() == 0)
+            return 0;
+
+        return (64.0 * bits.length + 32.0 * ranks.length + 64.0 * levels.length)
+            / size();
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 && entries[2 * index].equals(key)
+            ? (V) entries[2 * index + 1]
+            : defaultValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        int index = indexOf(key);
+        return index >= 0 && entries[2 * index].equals(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw immutable();
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        throw immutable();
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        throw immutable();
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        throw immutable();
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        throw immutable();
+    }
+
+    @Override
+    public void remove(K key) {
+        throw immutable();
+    }
+
+    private static UnsupportedOperationException immutable() {
+        return new UnsupportedOperationException("the map is immutable");
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return entries.length / 2;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new MapCursor<K, V>() {
+            private int index = -2;
+
+            @Override
+            public boolean advance() {
+                index += 2;
+                return index < entries.length;
+            }
+
+            @Override
+            public K key() {
+                return (K) entries[index];
+            }
+
+            @Override
+            public V value() {
+                return (V) entries[index + 1];
+            }
+        };
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < entries.length; i += 2)
+            action.accept((K) entries[i], (V) entries[i + 1]);
+    }
+}
@@ -1,14 +1,28 @@
 package map;
 
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
+import interfaces.MapCursor;
 import interfaces.OrderedMap;
-import list.DynamicArrayList;
 
 public class RedBlackTreeMap<K extends Comparable<K>, V>
     implements OrderedMap<K, V>
 {
     private Node root;
+    // the nodes on the way down to the node that is added or removed, which
+    // are balanced on the way back up, so that nothing is recursive, a left
+    // leaning red-black tree is at most 2 * log2(n) high, so 64 is enough
+    // for any int size
+    @SuppressWarnings("unchecked")
+    private final Node[] path = (Node[]) Array.newInstance(Node.class, 64);
+    // bumped by every operation that fills the path, so that compute(...)
+    // can tell whether its function used the map, which overwrote the path
+    private int modCount;
 
     private static boolean RED = true;
     private static boolean BLACK = false;
@@ -33,45 +47,146 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
     }
 
     @Override
-    public void put(K key, V value) {
-        root = put(key, value, root);
+    public V put(K key, V value) {
+        modCount++;
+        // same procedure as BST so far
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                // update the current value, nothing changes shape
+                clearPath(depth);
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        insert(depth, key, value);
+        return null;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        modCount++;
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                clearPath(depth);
+                V previous = node.value;
+                if (previous == null)
+                    node.value = value;
+                return previous;
+            }
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+        insert(depth, key, value);
+        return null;
+    }
+
+    // the same way down as put(...), a node can't be taken out of the tree
+    // from down there though, since the nodes above it weren't prepared for
+    // that like in remove(key), so if the function removes the key,
+    // remove(key) has to walk down again
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int expected = ++modCount;
+        int depth = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                break;
+            path[depth++] = node;
+            node = cmp < 0 ? node.left : node.right;
+        }
+
+        V value = function.apply(key, node == null ? null : node.value);
+        if (modCount != expected) {
+            clearPath(depth);
+            throw new ConcurrentModificationException(
+                "the function changed the map");
+        }
+        if (node == null && value != null) {
+            // the key doesn't exist, it's added right here
+            insert(depth, key, value);
+            return value;
+        }
+        clearPath(depth);
+        if (node != null) {
+            if (value == null)
+                remove(key);
+            else
+                node.value = value;
+        }
+        return value;
+    }
+
+    // the rest are compute(...) with a different function, the tree is
+    // still only searched once, unless the function removes the key
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        return compute(key, (k, old) -> old == null ? function.apply(k) : old);
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        return compute(key,
+            (k, old) -> old == null ? value : function.apply(old, value));
+    }
+
+    // adds the key below the last node of the path, as a red node like every
+    // new node, and fixes whatever breaks the invariant on the way back up
+    private void insert(int depth, K key, V value) {
+        Node node = new Node(key, value, 1, RED);
+        if (depth == 0) {
+            root = node;
+        } else {
+            Node parent = path[depth - 1];
+            if (key.compareTo(parent.key) < 0)
+                parent.left = node;
+            else
+                parent.right = node;
+            rebalance(depth);
+        }
         // the root has to always be black
         root.color = BLACK;
     }
 
-    private Node put(K key, V value, Node node) {
-        if (node == null)
-            // standard insert, always a red node by default
-            return new Node(key, value, 1, RED);
-        
-        // same procedure as BST so far
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            // if key < node.key
-            node.left = put(key, value, node.left);
-        else if (cmp > 0)
-            // if key > node.key
-            node.right = put(key, value, node.right);
-        else
-            // else update the current value
-            node.value = value;
-
-        // here we fixed everything that breaks the invariant
-        if (isRed(node.right) && !isRed(node.left))
-            // red node at right side, black node at left side, breaks the
-            // invariant, rotate left to fix it
-            node = rotateLeft(node);
-        if (isRed(node.left) && isRed(node.left.left))
-            // two consecutive red children on the left, breaks the invariant,
-            // rotate right to fix it
-            node = rotateRight(node);
-        if (isRed(node.left) && isRed(node.right))
-            // both children are red, flip their colors to fix it
-            flipColors(node);
+    // balances the nodes of the path from the bottom up, every one of them
+    // is replaced in its parent by the root that balance(node) returns
+    private void rebalance(int depth) {
+        for (int i = depth - 1; i >= 0; i--) {
+            Node node = path[i];
+            path[i] = null;
+            replace(i, node, balance(node));
+        }
+    }
 
-        // update the size
-        node.size = 1 + size(node.left) + size(node.right);
-        return node;
+    // points the last node of the path, or the root if the path is empty,
+    // to the new child instead of the old one, and returns the new child
+    private Node replace(int depth, Node old, Node child) {
+        if (depth == 0) {
+            root = child;
+        } else {
+            Node parent = path[depth - 1];
+            if (parent.left == old)
+                parent.left = child;
+            else
+                parent.right = child;
+        }
+        return child;
+    }
+
+    // forgets the path of an operation that didn't change the shape of the
+    // tree, so that it doesn't keep the nodes alive
+    private void clearPath(int depth) {
+        Arrays.fill(path, 0, depth, null);
     }
 
     private boolean isRed(Node node) {
@@ -148,6 +263,12 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
         return node;
     }
 
+    // the deletions walk down like the recursive ones in sedgewick's
+    // algorithms, which move a red link down in front of them so that the
+    // node they end up removing is red, every node on the way might be
+    // rotated, so the root of its subtree is put back into its parent right
+    // away, and the nodes of the path are balanced on the way back up
+
     public void removeMin() {
         if (isEmpty())
             throw new NoSuchElementException();
@@ -155,20 +276,23 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
         if (!isRed(root.left) && !isRed(root.right))
             root.color = RED;
         
-        root = removeMin(root);
+        rebalance(removeMin(0, root));
         if (!isEmpty())
             root.color = BLACK;
     }
 
-    private Node removeMin(Node node) {
-        if (node.left == null)
-            return null;
-
-        if (!isRed(node.left) && !isRed(node.left.left))
-            node = moveRedLeft(node);
-
-        node.left = removeMin(node.left);
-        return balance(node);
+    // removes the minimum of the subtree of the node, which is below the
+    // last node of the path, and returns the depth of the path afterwards
+    private int removeMin(int depth, Node node) {
+        while (node.left != null) {
+            if (!isRed(node.left) && !isRed(node.left.left))
+                node = replace(depth, node, moveRedLeft(node));
+            path[depth++] = node;
+            node = node.left;
+        }
+        // the minimum has no right child either in a left leaning tree
+        replace(depth, node, null);
+        return depth;
     }
 
     public void removeMax() {
@@ -178,61 +302,85 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
         if (!isRed(root.left) && !isRed(root.right))
             root.color = RED;
 
-        root = removeMax(root);
+        modCount++;
+        modCount++;
+        int depth = 0;
+        Node node = root;
+        while (true) {
+            if (isRed(node.left))
+                node = replace(depth, node, rotateRight(node));
+            if (node.right == null)
+                break;
+            if (!isRed(node.right) && !isRed(node.right.left))
+                node = replace(depth, node, moveRedRight(node));
+            path[depth++] = node;
+            node = node.right;
+        }
+        replace(depth, node, null);
+        rebalance(depth);
         if (!isEmpty())
             root.color = BLACK;
     }
 
-    private Node removeMax(Node node) { 
-        if (isRed(node.left))
-            node = rotateRight(node);
-
-        if (node.right == null)
-            return null;
-
-        if (!isRed(node.right) && !isRed(node.right.left))
-            node = moveRedRight(node);
-
-        node.right = removeMax(node.right);
-        return balance(node);
-    }
-
     @Override
     public void remove(K key) {
-        if (!containsKey(key))
+        modCount++;
+        if (isEmpty())
             return;
 
         // if both children of root are black, set root to red
         if (!isRed(root.left) && !isRed(root.right))
             root.color = RED;
 
-        root = remove(key, root);
+        rebalance(removePath(key));
         if (!isEmpty())
             root.color = BLACK;
     }
 
-    private Node remove(K key, Node node) {
-        if (key.compareTo(node.key) < 0)  {
-            if (!isRed(node.left) && !isRed(node.left.left))
-                node = moveRedLeft(node);
-            node.left = remove(key, node.left);
-        } else {
+    // returns the depth of the path to be balanced, a key that doesn't
+    // exist simply runs into a missing child, and the way back up undoes the
+    // steps that were taken on the way down
+    private int removePath(K key) {
+        int depth = 0;
+        Node node = root;
+        while (true) {
+            if (key.compareTo(node.key) < 0) {
+                if (node.left == null)
+                    break;
+                if (!isRed(node.left) && !isRed(node.left.left))
+                    node = replace(depth, node, moveRedLeft(node));
+                path[depth++] = node;
+                node = node.left;
+                continue;
+            }
+
             if (isRed(node.left))
-                node = rotateRight(node);
-            if (key.compareTo(node.key) == 0 && (node.right == null))
-                return null;
+                node = replace(depth, node, rotateRight(node));
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0 && node.right == null) {
+                replace(depth, node, null);
+                return depth;
+            }
+            if (node.right == null)
+                break;
             if (!isRed(node.right) && !isRed(node.right.left))
-                node = moveRedRight(node);
+                node = replace(depth, node, moveRedRight(node));
+            path[depth++] = node;
             if (key.compareTo(node.key) == 0) {
-                Node right = minKey(node.right);
+                // the node takes over the key and the value of its
+                // successor, which is removed instead
+                Node right = node.right;
+                while (right.left != null)
+                    right = right.left;
                 node.key = right.key;
                 node.value = right.value;
-                node.right = removeMin(node.right);
-            } else {
-                node.right = remove(key, node.right);
+                return removeMin(depth, node.right);
             }
+            node = node.right;
         }
-        return balance(node);
+        // the node where the search ended is balanced like the ones above it
+        path[depth++] = node;
+        return depth;
     }
 
     // -------------------DANGER ZONE, might hurt your eyes-------------------
@@ -242,16 +390,21 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
 
     @Override
     public V get(K key) {
-        Node result = searchKey(key, root);
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        Node result = searchKey(key);
         if (result == null)
-            return null;
+            return defaultValue;
 
         return result.value;
     }
 
     @Override
     public boolean containsKey(K key) {
-        return searchKey(key, root) != null;
+        return searchKey(key) != null;
     }
 
     @Override
@@ -259,16 +412,12 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        return minKey(root).key;
-    }
-
-    private Node minKey(Node node) {
-        // keep recursively traversing the left node until it's null,
-        // then the lastest non-null node is the minimum key
-        if (node.left != null)
-            return minKey(node.left);
-
-        return node;
+        // keep traversing the left node until it's null, then the lastest
+        // non-null node is the minimum key
+        Node node = root;
+        while (node.left != null)
+            node = node.left;
+        return node.key;
     }
 
     @Override
@@ -276,80 +425,111 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
         if (isEmpty())
             throw new NoSuchElementException();
 
-        return maxKey(root).key;
+        // same with the right node
+        Node node = root;
+        while (node.right != null)
+            node = node.right;
+        return node.key;
     }
 
-    private Node maxKey(Node node) {
-        // keep recursively traversing the right node until it's null,
-        // then the lastest non-null node is the maximum key
-        if (node.right != null)
-            return maxKey(node.right);
-
-        return node;
+    @Override
+    public K floorKey(K key) {
+        // the last node on the way down whose key is smaller is the floor,
+        // unless the key itself is found
+        Node floor = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                // if key == node.key, we have found the floor
+                return node.key;
+            if (cmp < 0) {
+                // if key < node.key, keep looking in the left subtree, the
+                // floor cannot be in the right tree
+                node = node.left;
+            } else {
+                // else key > node.key, the node is the floor unless there is
+                // a better one in the right subtree
+                floor = node;
+                node = node.right;
+            }
+        }
+        return floor == null ? null : floor.key;
     }
 
     @Override
-    public K floorKey(K key) {
-        Node result = floorKey(key, root);
-        if (result == null)
-            return null;
-        return result.key;
+    public K ceilingKey(K key) {
+        // almost identical to floorKey(key) but with left and right, < and >
+        // interchanged
+        Node ceiling = null;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0)
+                return node.key;
+            if (cmp > 0) {
+                node = node.right;
+            } else {
+                ceiling = node;
+                node = node.left;
+            }
+        }
+        return ceiling == null ? null : ceiling.key;
     }
 
-    private Node floorKey(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0)
-            // if key == node.key, we have found the floor
-            return node;
-        else if (cmp < 0)
-            // if key < node.key, keep looking in the left subtree, the floor
-            // cannot be in the right tree
-            return floorKey(key, node.left);
-        
-        // else key > node.key, the floor might be in the right subtree
-        Node right = floorKey(key, node.right);
-        if (right != null)
-            // found the floor in the right subtree
-            return right;
-        // else the floor is not in the right subtree, then current node is
-        // the floor
-        return node;
+    @Override
+    public int rank(K key) {
+        return countBelow(key, false);
     }
 
     @Override
-    public K ceilingKey(K key) {
-        Node result = ceilingKey(key, root);
-        if (result == null)
-            return null;
-        return result.key;
+    public K select(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException();
+
+        // the size of the left subtree is the rank of the node within its
+        // subtree, so go left if the index is smaller, and right without the
+        // keys of the left subtree and the node if it's bigger
+        Node node = root;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index > left) {
+                index -= left + 1;
+                node = node.right;
+            } else {
+                return node.key;
+            }
+        }
     }
 
-    private Node ceilingKey(K key, Node node) {
-        // almost identical to floorKey(key,node) but with left and right,
-        // < and > interchanged
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp == 0)
-            // if key == node.key, we have found the ceiling
-            return node;
-        else if (cmp > 0)
-            // if key > node.key, keep looking in the right subtree, the ceiling
-            // cannot be in the left tree
-            return ceilingKey(key, node.right);
-        
-        // else key < node.key, the floor might be in the left subtree
-        Node left = ceilingKey(key, node.left);
-        if (left != null)
-            // found the floor in the right subtree
-            return left;
-        // else the floor is not in the right subtree, then current node is
-        // the floor
-        return node;
+    @Override
+    public int count(K lo, K hi) {
+        if (lo.compareTo(hi) > 0)
+            return 0;
+
+        return countBelow(hi, true) - countBelow(lo, false);
+    }
+
+    // the amount of keys smaller than the key, or smaller than or equal to it
+    // if inclusive, every step to the right passes the node and its left
+    // subtree
+    private int countBelow(K key, boolean inclusive) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return count + size(node.left) + (inclusive ? 1 : 0);
+            }
+        }
+        return count;
     }
 
     @Override
@@ -371,33 +551,122 @@ public class RedBlackTreeMap<K extends Comparable<K>, V>
 
     @Override
     public Iterable<K> keys() {
-        DynamicArrayList<K> list = new DynamicArrayList<>();
-        inorder(root, list);
-        return list;
+        return Cursors.keys(this);
     }
 
-    private Node searchKey(K key, Node node) {
-        if (node == null)
-            return null;
-        
-        int cmp = key.compareTo(node.key);
-        if (cmp < 0)
-            // if key < node.key
-            return searchKey(key, node.left);
-        else if (cmp > 0)
-            // if key > node.key
-            return searchKey(key, node.right);
-        else
-            return node;
-    }
-
-    private void inorder(Node node, DynamicArrayList<K> list) {
-        if (node == null)
-            return;
-        // recursively traverse from the node in an sorted order from the left
-        // child to the parent to the right child over all nodes
-        inorder(node.left, list);
-        list.add(node.key);
-        inorder(node.right, list);
+    @Override
+    public Iterable<K> keys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, false));
+    }
+
+    @Override
+    public Iterable<K> headKeys(K hi) {
+        return Cursors.keys(() -> new Cursor(null, hi, false));
+    }
+
+    @Override
+    public Iterable<K> tailKeys(K lo) {
+        return Cursors.keys(() -> new Cursor(lo, null, false));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys() {
+        return Cursors.keys(() -> new Cursor(null, null, true));
+    }
+
+    @Override
+    public Iterable<K> descendingKeys(K lo, K hi) {
+        return Cursors.keys(() -> new Cursor(lo, hi, true));
+    }
+
+    @Override
+    public MapCursor<K,V> cursor() {
+        return new Cursor(null, null, false);
+    }
+
+    // the same walk as the cursor of BinarySearchTreeMap, the bounds are
+    // null if the range is open on that side
+    private class Cursor implements MapCursor<K,V> {
+        private final K lo;
+        private final K hi;
+        private final boolean descending;
+        private Object[] stack = new Object[32];
+        private int depth;
+        private Node current;
+
+        Cursor(K lo, K hi, boolean descending) {
+            this.lo = lo;
+            this.hi = hi;
+            this.descending = descending;
+            // like push(root), but without the nodes in front of the range
+            // and the subtrees on their near side
+            Node node = root;
+            while (node != null) {
+                if (descending ? isAbove(node.key) : isBelow(node.key)) {
+                    node = descending ? node.left : node.right;
+                } else {
+                    push(node);
+                    node = descending ? node.right : node.left;
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean advance() {
+            if (depth == 0)
+                return false;
+
+            current = (Node) stack[--depth];
+            if (descending ? isBelow(current.key) : isAbove(current.key)) {
+                // every key after this one is past the range too
+                depth = 0;
+                return false;
+            }
+            for (Node node = descending ? current.left : current.right;
+                    node != null; node = descending ? node.right : node.left)
+                push(node);
+            return true;
+        }
+
+        private void push(Node node) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, 2 * depth);
+            stack[depth++] = node;
+        }
+
+        private boolean isBelow(K key) {
+            return lo != null && key.compareTo(lo) < 0;
+        }
+
+        private boolean isAbove(K key) {
+            return hi != null && key.compareTo(hi) > 0;
+        }
+
+        @Override
+        public K key() {
+            return current.key;
+        }
+
+        @Override
+        public V value() {
+            return current.value;
+        }
+    }
+
+    private Node searchKey(K key) {
+        Node node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp < 0)
+                // if key < node.key
+                node = node.left;
+            else if (cmp > 0)
+                // if key > node.key
+                node = node.right;
+            else
+                return node;
+        }
+        return null;
     }
 }
@@ -0,0 +1,303 @@
+package map;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// linear probing, except an entry that is further away from its home slot
+// than the entry occupying a slot "steals" that slot and the poorer entry
+// keeps probing instead, hence robin hood, this keeps all the probe
+// sequences about equally long instead of having a few really long ones
+@SuppressWarnings("unchecked")
+public class RobinHoodHashMap<K, V> implements Map<K, V> {
+    // same parallel arrays as LinearProbingHashMap
+    private K[] keys;
+    private V[] values;
+    // the probe distance of the entry at each slot + 1, i.e. how far away it
+    // is from its home slot, 0 means the slot is empty
+    private int[] dists;
+    private int size;
+    // mixed into every hash, 0 unless the map is created with a random seed
+    private final int seed;
+
+    // has to be a power of two, see Hashing
+    private static final int INIT_SIZE = 64;
+    // there are no deleted slots and the probe sequences stay short even when
+    // the table is quite full, so it can be filled more than
+    // LinearProbingHashMap before it has to be resized
+    private static final float MAX_LOAD_FACTOR = 0.9f;
+    private static final float MIN_LOAD_FACTOR = 0.25f;
+
+    public RobinHoodHashMap() {
+        this(false);
+    }
+
+    // same as LinearProbingHashMap(randomSeed)
+    public RobinHoodHashMap(boolean randomSeed) {
+        keys = (K[]) new Object[INIT_SIZE];
+        values = (V[]) new Object[INIT_SIZE];
+        dists = new int[INIT_SIZE];
+        size = 0;
+        seed = randomSeed ? Hashing.randomSeed() : 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        growIfFull();
+        int home = hash(key);
+        int index = find(key, home);
+        if (index >= 0) {
+            // if the key already exists, update the value
+            V previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        add(-index - 1, home, key, value);
+        return null;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        growIfFull();
+        int home = hash(key);
+        int index = find(key, home);
+        if (index < 0) {
+            add(-index - 1, home, key, value);
+            return null;
+        }
+        V previous = values[index];
+        if (previous == null)
+            values[index] = value;
+        return previous;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        growIfFull();
+        int home = hash(key);
+        int index = find(key, home);
+        V value = function.apply(key, index < 0 ? null : values[index]);
+        if (index < 0) {
+            if (value != null)
+                add(-index - 1, home, key, value);
+        } else if (value == null) {
+            delete(index);
+        } else {
+            values[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        growIfFull();
+        int home = hash(key);
+        int index = find(key, home);
+        if (index >= 0 && values[index] != null)
+            return values[index];
+
+        V value = function.apply(key);
+        if (value == null)
+            return null;
+        if (index < 0)
+            add(-index - 1, home, key, value);
+        else
+            values[index] = value;
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        growIfFull();
+        int home = hash(key);
+        int index = find(key, home);
+        if (index < 0) {
+            add(-index - 1, home, key, value);
+            return value;
+        }
+        V previous = values[index];
+        V merged = previous == null ? value : function.apply(previous, value);
+        if (merged == null)
+            delete(index);
+        else
+            values[index] = merged;
+        return merged;
+    }
+
+    // every operation that might add the key grows the table before it looks
+    // for the key, so that the slot it finds is still the right one
+    private void growIfFull() {
+        if (loadFactor() > MAX_LOAD_FACTOR)
+            resize(2 * keys.length);
+    }
+
+    // adds the key at the slot that find(key, home) returned
+    private void add(int index, int home, K key, V value) {
+        size++;
+        insert(key, value, index, ((index - home) & (keys.length - 1)) + 1);
+    }
+
+    private void insert(K key, V value, int index, int dist) {
+        // starting from the slot where the key belongs, take the slot and
+        // carry the evicted entry along until an empty slot is found
+        while (dists[index] != 0) {
+            if (dists[index] < dist) {
+                K k = keys[index];
+                V v = values[index];
+                int d = dists[index];
+                keys[index] = key;
+                values[index] = value;
+                dists[index] = dist;
+                key = k;
+                value = v;
+                dist = d;
+            }
+            index = (index + 1) & (keys.length - 1);
+            dist++;
+        }
+        keys[index] = key;
+        values[index] = value;
+        dists[index] = dist;
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        int index = find(key, hash(key));
+        if (index < 0)
+            return defaultValue;
+
+        return values[index];
+    }
+
+    @Override
+    public void remove(K key) {
+        int index = find(key, hash(key));
+        if (index >= 0)
+            delete(index);
+    }
+
+    private void delete(int index) {
+        // instead of leaving a tombstone, shift every entry after the removed
+        // one back by one slot until we hit either an empty slot or an entry
+        // that is already in its home slot, which leaves the table exactly
+        // as if the removed key had never been inserted
+        int next = (index + 1) & (keys.length - 1);
+        while (dists[next] > 1) {
+            keys[index] = keys[next];
+            values[index] = values[next];
+            dists[index] = dists[next] - 1;
+            index = next;
+            next = (next + 1) & (keys.length - 1);
+        }
+        keys[index] = null;
+        values[index] = null;
+        dists[index] = 0;
+        size--;
+        // check to make sure the table is not too empty
+        if (loadFactor() < MIN_LOAD_FACTOR && keys.length > INIT_SIZE)
+            resize(keys.length / 2);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(key, hash(key)) >= 0;
+    }
+
+    // looks for the key starting from its home slot, returns its slot if
+    // it's there, else -(slot + 1) of the slot where it belongs
+    private int find(K key, int index) {
+        int dist = 1;
+        // unlike plain linear probing, the search can stop as soon as it
+        // reaches an entry that is closer to its home slot than the key
+        // would be, because the key would have taken that slot
+        while (dists[index] >= dist) {
+            if (dists[index] == dist && keys[index].equals(key))
+                return index;
+            index = (index + 1) & (keys.length - 1);
+            dist++;
+        }
+        return -index - 1;
+    }
+
+    private double loadFactor() {
+        return (double) size / keys.length;
+    }
+
+    private int hash(K key) {
+        // same as LinearProbingHashMap
+        return Hashing.mix(key.hashCode(), seed) & (keys.length - 1);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (dists[i] != 0)
+                action.accept(keys[i], values[i]);
+        }
+    }
+
+    private class Cursor implements MapCursor<K, V> {
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            while (++index < keys.length) {
+                if (dists[index] != 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return keys[index];
+        }
+
+        @Override
+        public V value() {
+            return values[index];
+        }
+    }
+
+    private void resize(int newSize) {
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        int[] oldDists = dists;
+        keys = (K[]) new Object[newSize];
+        values = (V[]) new Object[newSize];
+        dists = new int[newSize];
+        // the keys are known to be distinct, so skip the lookup part of put
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldDists[i] != 0)
+                insert(oldKeys[i], oldValues[i], hash(oldKeys[i]), 1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package map;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// simd within a register, a group is read as two longs and all 8 bytes of a
+// long are compared at once with plain arithmetic, slower than the vector
+// api but still a lot faster than a loop over the bytes
+final class ScalarGroupMatcher implements GroupMatcher {
+    // reads 8 bytes of the array as a long, the first byte ends up in the
+    // lowest bits
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(
+        long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final long LSB = 0x0101010101010101L;
+    private static final long LOW7 = 0x7f7f7f7f7f7f7f7fL;
+    private static final long MSB = 0x8080808080808080L;
+
+    @Override
+    public int match(byte[] ctrl, int offset, byte value) {
+        long pattern = LSB * (value & 0xff);
+        long lo = zeroBytes((long) LONGS.get(ctrl, offset) ^ pattern);
+        long hi = zeroBytes((long) LONGS.get(ctrl, offset + 8) ^ pattern);
+        return gather(lo) | gather(hi) << 8;
+    }
+
+    @Override
+    public int matchNegative(byte[] ctrl, int offset) {
+        long lo = (long) LONGS.get(ctrl, offset) & MSB;
+        long hi = (long) LONGS.get(ctrl, offset + 8) & MSB;
+        return gather(lo) | gather(hi) << 8;
+    }
+
+    // sets the highest bit of every byte that is 0 and clears everything
+    // else, without the false positives of the usual (x - LSB) & ~x & MSB,
+    // since adding 0x7f to the low 7 bits never carries into the next byte
+    private static long zeroBytes(long x) {
+        return ~(((x & LOW7) + LOW7) | x | LOW7);
+    }
+
+    // moves the highest bit of every byte into the lowest 8 bits, every bit
+    // is multiplied into its own place in the top byte without any carries
+    private static int gather(long msbs) {
+        return (int) (((msbs >>> 7) * 0x0102040810204080L) >>> 56);
+    }
+}
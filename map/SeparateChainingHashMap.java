@@ -1,18 +1,50 @@
 package map;
 
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 import interfaces.Map;
+import interfaces.MapCursor;
 
-@SuppressWarnings("unchecked")
+@SuppressWarnings({"unchecked", "rawtypes"})
 public class SeparateChainingHashMap<K,V> implements Map<K,V> {
     // the "buckets" for the nodes in the table, here we use a linked list,
     // but in reality, you can use any searchable collection, also this is
-    // Object because fuck java and its stupid class casting
+    // Object because fuck java and its stupid class casting, a bucket that
+    // grows too long is turned into a TreeBin
     private Object[] table;
     private int size;
+    // mixed into every hash, 0 unless the map is created with a random seed
+    private final int seed;
+    // in incremental mode, a resize only allocates the new table and the
+    // buckets are moved over a few at a time by every operation, until then
+    // the buckets not yet moved are still in the old table
+    private final boolean incremental;
+    private Object[] oldTable;
+    // every bucket of the old table before this index has been moved
+    private int migrated;
+    // only counted after recordStats(), see HashMapStats
+    private boolean recording;
+    private long resizes;
+    private long resizeNanos;
 
+    // has to be a power of two, see Hashing
     private static final int INIT_SIZE = 64;
     private static final int EXPAND_THRESHOLD = 8;
     private static final int SHRINK_THRESHOLD = 2;
+    // the amount of old buckets every operation moves during an incremental
+    // resize
+    private static final int MIGRATION_STEP = 4;
+    // a bucket longer than this is turned into a tree, it has to be well
+    // above EXPAND_THRESHOLD since that's the average length of a bucket
+    // right before the table grows, so with decent hashcodes basically no
+    // bucket ever gets this long and only the bad or malicious ones pay for
+    // a tree
+    private static final int TREEIFY_THRESHOLD = 3 * EXPAND_THRESHOLD;
+    // a tree that shrinks to this size is turned back into a list, lower than
+    // TREEIFY_THRESHOLD so that a bucket doesn't keep flipping back and forth
+    private static final int UNTREEIFY_THRESHOLD = 2 * EXPAND_THRESHOLD;
 
     private class Node {
         K key;
@@ -26,73 +58,316 @@ public class SeparateChainingHashMap<K,V> implements Map<K,V> {
         }
     }
 
+    // a bucket stored as a red-black tree, which bounds the lookup in it to
+    // O(log n) instead of O(n), only possible when every key in the bucket
+    // is of the same Comparable class, note that compareTo has to be
+    // consistent with equals for this to work
+    private static class TreeBin {
+        final Class<?> keyClass;
+        final RedBlackTreeMap tree = new RedBlackTreeMap();
+
+        TreeBin(Class<?> keyClass) {
+            this.keyClass = keyClass;
+        }
+
+        boolean accepts(Object key) {
+            return key.getClass() == keyClass;
+        }
+
+        // the tree only takes Comparable keys, which accepts(key) has to
+        // make sure of before any of these are called
+        Object getOrDefault(Object key, Object defaultValue) {
+            return tree.getOrDefault((Comparable) key, defaultValue);
+        }
+
+        boolean containsKey(Object key) {
+            return tree.containsKey((Comparable) key);
+        }
+
+        Object put(Object key, Object value) {
+            return tree.put((Comparable) key, value);
+        }
+
+        Object putIfAbsent(Object key, Object value) {
+            return tree.putIfAbsent((Comparable) key, value);
+        }
+
+        Object compute(Object key, BiFunction function) {
+            return tree.compute((Comparable) key, function);
+        }
+
+        Object computeIfAbsent(Object key, Function function) {
+            return tree.computeIfAbsent((Comparable) key, function);
+        }
+
+        Object merge(Object key, Object value, BiFunction function) {
+            return tree.merge((Comparable) key, value, function);
+        }
+
+        void remove(Object key) {
+            tree.remove((Comparable) key);
+        }
+    }
+
     public SeparateChainingHashMap() {
+        this(false);
+    }
+
+    // a randomly seeded map places the keys differently on every instance,
+    // use it when the keys come from somewhere you don't trust
+    public SeparateChainingHashMap(boolean randomSeed) {
+        this(randomSeed, false);
+    }
+
+    // an incremental map never rehashes the whole table in a single
+    // operation, so no operation costs O(n)
+    public SeparateChainingHashMap(boolean randomSeed, boolean incremental) {
         table = new Object[INIT_SIZE];
         size = 0;
+        seed = randomSeed ? Hashing.randomSeed() : 0;
+        this.incremental = incremental;
     }
 
     @Override
-    public void put(K key, V value) {
-        if (size() >= EXPAND_THRESHOLD * table.length)
-            resize(2 * table.length);
+    public V put(K key, V value) {
+        beforeInsert();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        int index = h & (t.length - 1);
+        if (t[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) t[index];
+            if (bin.accepts(key)) {
+                int before = bin.tree.size();
+                V previous = (V) bin.put(key, value);
+                size += bin.tree.size() - before;
+                return previous;
+            }
+            // a key of another class can't go into the tree, so the bucket
+            // has to go back to being a list
+            t[index] = untreeify(bin);
+        }
 
-        int index = hash(key);
-        Node node = node(table[index]);
-        while(node != null) {
+        Node node = node(t[index]);
+        int length = 0;
+        while (node != null) {
             // check if the key already exists
             if (node.key.equals(key)) {
                 // update the value
+                V previous = node.value;
                 node.value = value;
-                return;
+                return previous;
             }
             node = node.next;
+            length++;
         }
         // else it doesn't exist
-        size++;
-        table[index] = new Node(key, value, node(table[index]));
+        addFirst(t, index, key, value, length);
+        return null;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        beforeInsert();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        int index = h & (t.length - 1);
+        if (t[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) t[index];
+            if (bin.accepts(key)) {
+                int before = bin.tree.size();
+                V previous = (V) bin.putIfAbsent(key, value);
+                size += bin.tree.size() - before;
+                return previous;
+            }
+            t[index] = untreeify(bin);
+        }
+
+        Node node = node(t[index]);
+        int length = 0;
+        for (; node != null && !node.key.equals(key); node = node.next)
+            length++;
+        if (node == null) {
+            addFirst(t, index, key, value, length);
+            return null;
+        }
+        V previous = node.value;
+        if (previous == null)
+            node.value = value;
+        return previous;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        beforeInsert();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        int index = h & (t.length - 1);
+        if (t[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) t[index];
+            if (bin.accepts(key)) {
+                int before = bin.tree.size();
+                V value = (V) bin.compute(key, function);
+                treeChanged(t, index, before);
+                return value;
+            }
+            t[index] = untreeify(bin);
+        }
+
+        // prev is needed to unlink the node if the function removes it
+        Node prev = null;
+        Node node = node(t[index]);
+        int length = 0;
+        for (; node != null && !node.key.equals(key); node = node.next) {
+            prev = node;
+            length++;
+        }
+        V value = function.apply(key, node == null ? null : node.value);
+        if (node == null) {
+            if (value != null)
+                addFirst(t, index, key, value, length);
+        } else if (value == null) {
+            unlink(t, index, prev, node);
+        } else {
+            node.value = value;
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        beforeInsert();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        int index = h & (t.length - 1);
+        if (t[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) t[index];
+            if (bin.accepts(key)) {
+                int before = bin.tree.size();
+                V value = (V) bin.computeIfAbsent(key, function);
+                size += bin.tree.size() - before;
+                return value;
+            }
+            t[index] = untreeify(bin);
+        }
+
+        Node node = node(t[index]);
+        int length = 0;
+        for (; node != null && !node.key.equals(key); node = node.next)
+            length++;
+        if (node != null && node.value != null)
+            return node.value;
+
+        V value = function.apply(key);
+        if (value == null)
+            return null;
+        if (node == null)
+            addFirst(t, index, key, value, length);
+        else
+            node.value = value;
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        beforeInsert();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        int index = h & (t.length - 1);
+        if (t[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) t[index];
+            if (bin.accepts(key)) {
+                int before = bin.tree.size();
+                V merged = (V) bin.merge(key, value, function);
+                treeChanged(t, index, before);
+                return merged;
+            }
+            t[index] = untreeify(bin);
+        }
+
+        Node prev = null;
+        Node node = node(t[index]);
+        int length = 0;
+        for (; node != null && !node.key.equals(key); node = node.next) {
+            prev = node;
+            length++;
+        }
+        if (node == null) {
+            addFirst(t, index, key, value, length);
+            return value;
+        }
+        V merged = node.value == null ? value : function.apply(node.value, value);
+        if (merged == null)
+            unlink(t, index, prev, node);
+        else
+            node.value = merged;
+        return merged;
     }
 
     @Override
     public V get(K key) {
-        int index = hash(key);
-        Node node = node(table[index]);
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        migrate();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        Object bucket = t[h & (t.length - 1)];
+        if (bucket instanceof TreeBin) {
+            TreeBin bin = (TreeBin) bucket;
+            return bin.accepts(key)
+                ? (V) bin.getOrDefault(key, defaultValue)
+                : defaultValue;
+        }
+
+        Node node = node(bucket);
         while (node != null) {
             // search through the bucket that might contain the key
             if (node.key.equals(key))
                 return node.value;
             node = node.next;
         }
-        return null;
+        return defaultValue;
     }
 
     @Override
     public void remove(K key) {
-        if (size() <= SHRINK_THRESHOLD * table.length)
-            resize(table.length / 2);
+        migrate();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        int index = h & (t.length - 1);
+        if (t[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) t[index];
+            if (!bin.accepts(key))
+                return;
 
-        int index = hash(key);
-        Node node = node(table[index]);
-        // check the first key in the bucket
-        if (node != null && node.key.equals(key)) {
-            size--;
-            table[index] = node.next;
+            int before = bin.tree.size();
+            bin.remove(key);
+            treeChanged(t, index, before);
             return;
         }
-        // check the rest of the bucket
-        while(node != null) {
-            if (node.next.key.equals(key)) {
-                size--;
-                node.next = node.next.next;
-                return;
-            }
-            node = node.next;
-        }
+
+        Node prev = null;
+        Node node = node(t[index]);
+        for (; node != null && !node.key.equals(key); node = node.next)
+            prev = node;
+        if (node != null)
+            unlink(t, index, prev, node);
     }
 
     @Override
     public boolean containsKey(K key) {
-        int index = hash(key);
-        Node node = node(table[index]);
+        migrate();
+        int h = hash(key);
+        Object[] t = tableOf(h);
+        Object bucket = t[h & (t.length - 1)];
+        if (bucket instanceof TreeBin) {
+            TreeBin bin = (TreeBin) bucket;
+            return bin.accepts(key) && bin.containsKey(key);
+        }
+
+        Node node = node(bucket);
         while (node != null) {
             // search through the bucket that might contain the key
             if (node.key.equals(key))
@@ -102,12 +377,65 @@ public class SeparateChainingHashMap<K,V> implements Map<K,V> {
         return false;
     }
 
+    // every operation that might add the key grows the table before it looks
+    // for the key, so that the bucket it finds is still the right one
+    private void beforeInsert() {
+        migrate();
+        if (size() >= EXPAND_THRESHOLD * table.length && !isMigrating())
+            resize(2 * table.length);
+    }
+
+    // the key doesn't exist in the bucket, which is a list of the given
+    // length
+    private void addFirst(Object[] t, int index, K key, V value, int length) {
+        size++;
+        t[index] = new Node(key, value, node(t[index]));
+        if (length + 1 > TREEIFY_THRESHOLD)
+            t[index] = treeify(node(t[index]));
+    }
+
+    private void unlink(Object[] t, int index, Node prev, Node node) {
+        size--;
+        if (prev == null)
+            t[index] = node.next;
+        else
+            prev.next = node.next;
+        shrinkIfSparse();
+    }
+
+    // called after an operation on a tree bucket that had the given size,
+    // which might have removed a key
+    private void treeChanged(Object[] t, int index, int before) {
+        TreeBin bin = (TreeBin) t[index];
+        size += bin.tree.size() - before;
+        if (bin.tree.size() < before) {
+            if (bin.tree.size() <= UNTREEIFY_THRESHOLD)
+                t[index] = untreeify(bin);
+            shrinkIfSparse();
+        }
+    }
+
+    private void shrinkIfSparse() {
+        if (size() <= SHRINK_THRESHOLD * table.length
+                && table.length > INIT_SIZE && !isMigrating())
+            resize(table.length / 2);
+    }
+
     private int hash(K key) {
-        // first, remove the signed bit in the hashcode so that it's guaranteed
-        // a positive number as negative modulo in java is scuffed and then
-        // we simply compress the result into a range of 0 to table.length-1
-        // and we get the index translated from the key's hashcode
-        return (key.hashCode() & 0x7fffffff) % table.length;
+        // the table length is always a power of two, so masking the mixed
+        // hash with length-1 compresses it into a range of 0 to length-1,
+        // no need to worry about the sign bit either, the masking is left to
+        // the caller since the hash might be used for either table
+        return Hashing.mix(key.hashCode(), seed);
+    }
+
+    // the table where the bucket of the hash currently lives, which is the
+    // old table if the bucket hasn't been moved yet
+    private Object[] tableOf(int h) {
+        if (isMigrating() && (h & (oldTable.length - 1)) >= migrated)
+            return oldTable;
+
+        return table;
     }
 
     private Node node(Object obj) {
@@ -117,6 +445,31 @@ public class SeparateChainingHashMap<K,V> implements Map<K,V> {
         return (Node) obj;
     }
 
+    // turns the list into a tree if all of its keys can go into the same
+    // tree, else the list is left as it is
+    private Object treeify(Node head) {
+        Class<?> keyClass = head.key.getClass();
+        if (!Comparable.class.isAssignableFrom(keyClass))
+            return head;
+        for (Node node = head; node != null; node = node.next) {
+            if (node.key.getClass() != keyClass)
+                return head;
+        }
+
+        TreeBin bin = new TreeBin(keyClass);
+        for (Node node = head; node != null; node = node.next)
+            bin.put(node.key, node.value);
+        return bin;
+    }
+
+    private Node untreeify(TreeBin bin) {
+        Node head = null;
+        MapCursor cursor = bin.tree.cursor();
+        while (cursor.advance())
+            head = new Node((K) cursor.key(), (V) cursor.value(), head);
+        return head;
+    }
+
     @Override
     public boolean isEmpty() {
         return size() == 0;
@@ -126,31 +479,203 @@ public class SeparateChainingHashMap<K,V> implements Map<K,V> {
     public int size() {
         return size;
     }
-    
+
+    // makes stats() count the resizes and the time they take, which costs
+    // two nanoTime calls per resize, and per operation while an incremental
+    // resize is going on, everything else is read off the table
+    public void recordStats() {
+        recording = true;
+    }
+
+    // walks all the buckets, the ones of the old table that were already
+    // moved aren't buckets anymore and don't count
+    public HashMapStats stats() {
+        long[] chains = new long[EXPAND_THRESHOLD + 1];
+        int[] homes = new int[table.length];
+        if (isMigrating())
+            chains = chainLengths(oldTable, migrated, chains, homes);
+        chains = chainLengths(table, 0, chains, homes);
+        return new HashMapStats("chain lengths", HashMapStats.trim(chains),
+            size, table.length, 0, (double) size / table.length,
+            HashMapStats.distribution(homes, size), resizes, resizeNanos);
+    }
+
+    private long[] chainLengths(Object[] t, int from, long[] chains, int[] homes) {
+        for (int i = from; i < t.length; i++) {
+            int length = 0;
+            if (t[i] instanceof TreeBin) {
+                MapCursor cursor = ((TreeBin) t[i]).tree.cursor();
+                while (cursor.advance()) {
+                    homes[hash((K) cursor.key()) & (table.length - 1)]++;
+                    length++;
+                }
+            } else {
+                for (Node node = node(t[i]); node != null; node = node.next) {
+                    homes[hash(node.key) & (table.length - 1)]++;
+                    length++;
+                }
+            }
+            chains = HashMapStats.count(chains, length);
+        }
+        return chains;
+    }
+
     @Override
     public Iterable<K> keys() {
-        // too much pain in the ass trying to figure out an efficient way
-        // to make an iterable for this
-        throw new UnsupportedOperationException();
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (isMigrating())
+            forEach(oldTable, action);
+        forEach(table, action);
+    }
+
+    private void forEach(Object[] t, BiConsumer<? super K, ? super V> action) {
+        for (Object bucket : t) {
+            if (bucket instanceof TreeBin) {
+                ((TreeBin) bucket).tree.forEach((BiConsumer) action);
+                continue;
+            }
+            for (Node node = node(bucket); node != null; node = node.next)
+                action.accept(node.key, node.value);
+        }
+    }
+
+    // walks through the buckets of the old table first, if there is one, and
+    // then the new one, a bucket that was moved is emptied in the old table,
+    // so no entry is seen twice, a tree bucket is walked by its own cursor
+    private class Cursor implements MapCursor<K, V> {
+        private Object[] t = isMigrating() ? oldTable : table;
+        private int bucket = -1;
+        // either the node of a list bucket or the cursor of a tree bucket
+        // that the cursor is at
+        private Node node;
+        private MapCursor tree;
+
+        @Override
+        public boolean advance() {
+            if (node != null) {
+                node = node.next;
+                if (node != null)
+                    return true;
+            } else if (tree != null) {
+                if (tree.advance())
+                    return true;
+                tree = null;
+            }
+
+            // the current bucket is done, look for the next one that isn't
+            // empty
+            while (true) {
+                while (++bucket < t.length) {
+                    if (t[bucket] instanceof TreeBin) {
+                        tree = ((TreeBin) t[bucket]).tree.cursor();
+                        if (tree.advance())
+                            return true;
+                        tree = null;
+                    } else if (t[bucket] != null) {
+                        node = (Node) t[bucket];
+                        return true;
+                    }
+                }
+                if (t == table)
+                    return false;
+
+                t = table;
+                bucket = -1;
+            }
+        }
+
+        @Override
+        public K key() {
+            return node != null ? node.key : (K) tree.key();
+        }
+
+        @Override
+        public V value() {
+            return node != null ? node.value : (V) tree.value();
+        }
     }
 
-    // awful resize function, in some cases it doesn't even work properly due
-    // to it never resizes to a prime number, say if the user decides to only
-    // add even numbers then halve of the spaces are gonna be unoccupied which
-    // is bad, to fix this, simply resize it to the closest prime number,
-    // but i ain't gonna bother with it for now
+    // newSize has to be a power of two, the nodes are relinked into the new
+    // table instead of being put again, so nothing is allocated, and in
+    // incremental mode this only swaps the tables and leaves the moving to
+    // migrate()
     private void resize(int newSize) {
-        Object[] oldTable = table;
+        long start = recording ? System.nanoTime() : 0;
+        oldTable = table;
+        migrated = 0;
         table = new Object[newSize];
-        // reset the size
-        size = 0;
-        // add everything from old table to the new table
-        for (Object obj : oldTable) {
-            Node node = node(obj);
-            while(node != null) {
-                this.put(node.key, node.value);
-                node = node.next;
+        if (!incremental)
+            migrate(oldTable.length);
+        if (recording) {
+            resizes++;
+            resizeNanos += System.nanoTime() - start;
+        }
+    }
+
+    private boolean isMigrating() {
+        return oldTable != null;
+    }
+
+    private void migrate() {
+        if (!isMigrating())
+            return;
+
+        long start = recording ? System.nanoTime() : 0;
+        migrate(MIGRATION_STEP);
+        if (recording)
+            resizeNanos += System.nanoTime() - start;
+    }
+
+    // moves the next buckets of the old table to the new table
+    private void migrate(int buckets) {
+        int end = Math.min(migrated + buckets, oldTable.length);
+        for (int i = migrated; i < end; i++) {
+            Object bucket = oldTable[i];
+            // a tree is split up into nodes again, its keys usually end up
+            // spread over two buckets of the new table anyway
+            Node node = bucket instanceof TreeBin
+                ? untreeify((TreeBin) bucket)
+                : node(bucket);
+            while (node != null) {
+                Node next = node.next;
+                relink(node);
+                node = next;
             }
+            oldTable[i] = null;
         }
+        migrated = end;
+        if (migrated == oldTable.length)
+            oldTable = null;
+    }
+
+    // adds the node, whose key is known not to be in the new table yet, to
+    // its bucket in the new table
+    private void relink(Node node) {
+        int index = hash(node.key) & (table.length - 1);
+        if (table[index] instanceof TreeBin) {
+            TreeBin bin = (TreeBin) table[index];
+            if (bin.accepts(node.key)) {
+                bin.put(node.key, node.value);
+                return;
+            }
+            table[index] = untreeify(bin);
+        }
+
+        node.next = node(table[index]);
+        table[index] = node;
+        int length = 0;
+        for (Node n = node; n != null && length <= TREEIFY_THRESHOLD; n = n.next)
+            length++;
+        if (length > TREEIFY_THRESHOLD)
+            table[index] = treeify(node);
     }
 }
@@ -0,0 +1,369 @@
+package map;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import interfaces.Map;
+import interfaces.MapCursor;
+
+// open addressing like LinearProbingHashMap, but every slot also has a
+// control byte in a separate array, which holds the low 7 bits of the hash
+// of its key, or marks the slot as empty or deleted, the slots are probed a
+// group of 16 at a time and a single compare of the control bytes finds the
+// few slots whose key can be equal, so equals(...) is almost only ever
+// called on the key that is looked for, this is the layout of google's
+// swiss tables (absl::flat_hash_map)
+@SuppressWarnings("unchecked")
+public class SwissHashMap<K, V> implements Map<K, V> {
+    private byte[] ctrl;
+    private K[] keys;
+    private V[] values;
+    private int size;
+    // the amount of deleted slots, they count towards the load factor since
+    // they make the probe sequences longer just as much as the full ones
+    private int deleted;
+    // mixed into every hash, 0 unless the map is created with a random seed
+    private final int seed;
+
+    // picked once, the vector one if the jvm has a fast vector api
+    private static final GroupMatcher MATCHER = GroupMatcher.create();
+    private static final int GROUP_SIZE = GroupMatcher.GROUP_SIZE;
+
+    // a full slot holds the fingerprint, which is always 0..127
+    private static final byte EMPTY = (byte) 0x80;
+    private static final byte DELETED = (byte) 0xfe;
+
+    // has to be a power of two times GROUP_SIZE, see Hashing
+    private static final int INIT_SIZE = 64;
+    // a lookup stops at the first group with an empty slot, so the table has
+    // to keep a few of them around, but a group of 16 almost always has one
+    // even when the table is quite full
+    private static final float MAX_LOAD_FACTOR = 0.875f;
+    private static final float MIN_LOAD_FACTOR = 0.25f;
+
+    public SwissHashMap() {
+        this(false);
+    }
+
+    // same as LinearProbingHashMap(randomSeed)
+    public SwissHashMap(boolean randomSeed) {
+        seed = randomSeed ? Hashing.randomSeed() : 0;
+        init(INIT_SIZE);
+    }
+
+    private void init(int capacity) {
+        ctrl = new byte[capacity];
+        Arrays.fill(ctrl, EMPTY);
+        keys = (K[]) new Object[capacity];
+        values = (V[]) new Object[capacity];
+        size = 0;
+        deleted = 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int h = hash(key);
+        int index = find(key, h);
+        if (index >= 0) {
+            // if the key already exists, update the value
+            V previous = values[index];
+            values[index] = value;
+            return previous;
+        }
+        add(key, value, h, -index - 1);
+        return null;
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        int h = hash(key);
+        int index = find(key, h);
+        if (index < 0) {
+            add(key, value, h, -index - 1);
+            return null;
+        }
+        V previous = values[index];
+        if (previous == null)
+            values[index] = value;
+        return previous;
+    }
+
+    @Override
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> function) {
+        int h = hash(key);
+        int index = find(key, h);
+        byte[] table = ctrl;
+        V value = function.apply(key, index < 0 ? null : values[index]);
+        if (index < 0) {
+            if (value != null)
+                add(key, value, h, freeSlot(table, -index - 1));
+        } else if (value == null) {
+            delete(index);
+        } else {
+            values[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> function) {
+        int h = hash(key);
+        int index = find(key, h);
+        if (index >= 0 && values[index] != null)
+            return values[index];
+
+        byte[] table = ctrl;
+        V value = function.apply(key);
+        if (value == null)
+            return null;
+        if (index < 0)
+            add(key, value, h, freeSlot(table, -index - 1));
+        else
+            values[index] = value;
+        return value;
+    }
+
+    @Override
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> function) {
+        int h = hash(key);
+        int index = find(key, h);
+        if (index < 0) {
+            add(key, value, h, -index - 1);
+            return value;
+        }
+        V previous = values[index];
+        V merged = previous == null ? value : function.apply(previous, value);
+        if (merged == null)
+            delete(index);
+        else
+            values[index] = merged;
+        return merged;
+    }
+
+    // the slot that find(key, h) picked for the key, unless the function
+    // that ran since then resized the table or filled the slot, then -1 so
+    // that add(...) looks for another one, the groups in front of the slot
+    // can't have gotten an empty slot in the meantime, delete(...) only
+    // empties a slot in a group that already has one
+    private int freeSlot(byte[] table, int slot) {
+        return table == ctrl && ctrl[slot] < 0 ? slot : -1;
+    }
+
+    // adds a key that find(key, h) didn't find into the slot it picked, or
+    // -1 to look one up, a resize moves every key, so the slot is looked up
+    // again in the new table then, only by the control bytes
+    private void add(K key, V value, int h, int slot) {
+        if (size + deleted + 1 > MAX_LOAD_FACTOR * ctrl.length) {
+            // only grow if the table is actually full, if it's mostly
+            // deleted slots it's enough to rehash it to get rid of them
+            if (size + 1 > MAX_LOAD_FACTOR * ctrl.length / 2)
+                resize(2 * ctrl.length);
+            else
+                resize(ctrl.length);
+            slot = -1;
+        }
+        if (slot < 0)
+            insert(key, value, h);
+        else
+            place(slot, key, value, h);
+    }
+
+    // puts the key into the first empty or deleted slot of its probe
+    // sequence, the key must not exist in the table
+    private void insert(K key, V value, int h) {
+        int mask = ctrl.length / GROUP_SIZE - 1;
+        int group = (h >>> 7) & mask;
+        for (int step = 1; ; step++) {
+            int base = group * GROUP_SIZE;
+            int free = MATCHER.matchNegative(ctrl, base);
+            if (free != 0) {
+                place(base + Integer.numberOfTrailingZeros(free), key, value, h);
+                return;
+            }
+            group = (group + step) & mask;
+        }
+    }
+
+    private void place(int index, K key, V value, int h) {
+        if (ctrl[index] == DELETED)
+            deleted--;
+        ctrl[index] = fingerprint(h);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    @Override
+    public V get(K key) {
+        return getOrDefault(key, null);
+    }
+
+    @Override
+    public V getOrDefault(K key, V defaultValue) {
+        int index = indexOf(key, hash(key));
+        if (index < 0)
+            return defaultValue;
+
+        return values[index];
+    }
+
+    @Override
+    public void remove(K key) {
+        int index = indexOf(key, hash(key));
+        if (index >= 0)
+            delete(index);
+    }
+
+    private void delete(int index) {
+        // a lookup only stops at a group with an empty slot, so the slot can
+        // only be emptied if its group already has one, in which case no
+        // lookup ever went past this group, otherwise it's marked as deleted
+        // so that the lookups of the keys further down keep going
+        int base = index - index % GROUP_SIZE;
+        if (MATCHER.match(ctrl, base, EMPTY) != 0) {
+            ctrl[index] = EMPTY;
+        } else {
+            ctrl[index] = DELETED;
+            deleted++;
+        }
+        keys[index] = null;
+        values[index] = null;
+        size--;
+        // check to make sure the table is not too empty
+        if ((double) size / ctrl.length < MIN_LOAD_FACTOR
+                && ctrl.length > INIT_SIZE)
+            resize(ctrl.length / 2);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return indexOf(key, hash(key)) >= 0;
+    }
+
+    // looks for the key, returns its slot if it's there, else -(slot + 1) of
+    // the slot where it goes, which is the first empty or deleted slot on the
+    // way, like LinearProbingHashMap.find(key), the lookup still has to go
+    // past the groups with only deleted slots, the key might be further down
+    private int find(K key, int h) {
+        byte fingerprint = fingerprint(h);
+        int mask = ctrl.length / GROUP_SIZE - 1;
+        int group = (h >>> 7) & mask;
+        int free = -1;
+        for (int step = 1; ; step++) {
+            int base = group * GROUP_SIZE;
+            int matches = MATCHER.match(ctrl, base, fingerprint);
+            while (matches != 0) {
+                int index = base + Integer.numberOfTrailingZeros(matches);
+                if (keys[index].equals(key))
+                    return index;
+                matches &= matches - 1;
+            }
+            if (free < 0) {
+                int negative = MATCHER.matchNegative(ctrl, base);
+                if (negative != 0)
+                    free = base + Integer.numberOfTrailingZeros(negative);
+            }
+            if (MATCHER.match(ctrl, base, EMPTY) != 0)
+                return -free - 1;
+            group = (group + step) & mask;
+        }
+    }
+
+    private int indexOf(K key, int h) {
+        byte fingerprint = fingerprint(h);
+        int mask = ctrl.length / GROUP_SIZE - 1;
+        int group = (h >>> 7) & mask;
+        // jumps 1, 2, 3... groups further each time, which visits every group
+        // when the amount of them is a power of two
+        for (int step = 1; ; step++) {
+            int base = group * GROUP_SIZE;
+            int matches = MATCHER.match(ctrl, base, fingerprint);
+            while (matches != 0) {
+                int index = base + Integer.numberOfTrailingZeros(matches);
+                if (keys[index].equals(key))
+                    return index;
+                matches &= matches - 1;
+            }
+            if (MATCHER.match(ctrl, base, EMPTY) != 0)
+                return -1;
+            group = (group + step) & mask;
+        }
+    }
+
+    // the low 7 bits pick the fingerprint and the rest of them pick the
+    // group, so that the keys of the same group rarely share a fingerprint
+    private int hash(K key) {
+        return Hashing.mix(key.hashCode(), seed);
+    }
+
+    private static byte fingerprint(int h) {
+        return (byte) (h & 0x7f);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterable<K> keys() {
+        return Cursors.keys(this);
+    }
+
+    @Override
+    public MapCursor<K, V> cursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        for (int i = 0; i < ctrl.length; i++) {
+            if (ctrl[i] >= 0)
+                action.accept(keys[i], values[i]);
+        }
+    }
+
+    // only looks at the control bytes to find the full slots, the keys array
+    // isn't touched for the empty ones
+    private class Cursor implements MapCursor<K, V> {
+        private int index = -1;
+
+        @Override
+        public boolean advance() {
+            while (++index < ctrl.length) {
+                if (ctrl[index] >= 0)
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return keys[index];
+        }
+
+        @Override
+        public V value() {
+            return values[index];
+        }
+    }
+
+    private void resize(int newSize) {
+        byte[] oldCtrl = ctrl;
+        K[] oldKeys = keys;
+        V[] oldValues = values;
+        init(newSize);
+        // the keys are known to be distinct, so skip the lookup part of put
+        for (int i = 0; i < oldCtrl.length; i++) {
+            if (oldCtrl[i] >= 0)
+                insert(oldKeys[i], oldValues[i], hash(oldKeys[i]));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package map;
+
+// a hierarchical timing wheel, the timers are kept in buckets by their
+// deadline instead of in a sorted structure, so scheduling and cancelling a
+// timer is O(1), level 0 has a bucket per tick of about a millisecond, every
+// bucket of level i + 1 covers all 64 buckets of level i, and a timer goes
+// into the lowest level that reaches its deadline
+//
+// advancing the wheel visits the buckets that the time passed on every level,
+// the timers in them are either expired or moved down to a lower level,
+// which happens at most once per level, so every timer costs O(1) no matter
+// how long it waits, this is the scheme of the kernel timers, kafka and
+// caffeine
+//
+// the times are nanoseconds that have to stay non-negative, so that the
+// ticks of a level are just their upper bits
+final class TimingWheel {
+    // every bucket is a circular list with a sentinel, so linking and
+    // unlinking a timer never has to check for the ends
+    private final Timer[][] wheel;
+    // the time the wheel was last advanced to
+    private long nanos;
+
+    private static final int LEVELS = 5;
+    private static final int BUCKET_BITS = 6;
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    // 2^20 ns, a tick of level 0 is about a millisecond and the last level
+    // has buckets of about 5 hours, the deadlines past the 13 days that it
+    // covers share the buckets with the earlier ones and are just moved
+    // again when their bucket comes up too early
+    private static final int TICK_BITS = 20;
+
+    /**
+     * The entries of the wheel, linked into the list of their bucket
+     */
+    abstract static class Timer {
+        long deadline;
+        Timer prev;
+        Timer next;
+
+        /**
+         * Called by advance(now) once the deadline has passed, the timer is
+         * already out of the wheel by then
+         */
+        abstract void expire();
+
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    private static final class Sentinel extends Timer {
+        @Override
+        void expire() {}
+    }
+
+    TimingWheel(long nanos) {
+        this.nanos = nanos;
+        wheel = new Timer[LEVELS][BUCKETS];
+        for (Timer[] buckets : wheel) {
+            for (int i = 0; i < BUCKETS; i++) {
+                Timer sentinel = new Sentinel();
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                buckets[i] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Adds the timer to the bucket of its deadline
+     *
+     * @param timer A timer that isn't scheduled
+     */
+    void schedule(Timer timer) {
+        Timer sentinel = bucket(timer.deadline);
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * Removes the timer from the wheel, if it's scheduled
+     *
+     * @param timer The timer
+     */
+    void cancel(Timer timer) {
+        if (!timer.isScheduled())
+            return;
+
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * Moves the time of the wheel forward and expires the timers whose
+     * deadline has passed, the timers of the current tick might only be
+     * expired by the next call
+     *
+     * @param now The current time, which must not be before the last one
+     */
+    void advance(long now) {
+        long previous = nanos;
+        if (now <= previous)
+            return;
+
+        nanos = now;
+        for (int level = 0; level < LEVELS; level++) {
+            long previousTicks = previous >>> shift(level);
+            long delta = (now >>> shift(level)) - previousTicks;
+            // if the time didn't reach the next bucket of this level, it
+            // can't have reached one of the levels above either
+            if (delta <= 0)
+                break;
+            expire(level, previousTicks, delta);
+        }
+    }
+
+    // visits the buckets from the one of the previous time up to the one of
+    // the current time, the previous one is visited again since it might
+    // have got timers that weren't due yet back then
+    private void expire(int level, long previousTicks, long delta) {
+        Timer[] buckets = wheel[level];
+        int start = (int) previousTicks & (BUCKETS - 1);
+        int steps = (int) Math.min(delta + 1, BUCKETS);
+        for (int i = start; i < start + steps; i++) {
+            Timer sentinel = buckets[i & (BUCKETS - 1)];
+            Timer timer = sentinel.next;
+            // take the whole list out first, the timers that are moved
+            // might go right back into this bucket
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (timer != sentinel) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                if (timer.deadline - nanos > 0)
+                    schedule(timer);
+                else
+                    timer.expire();
+                timer = next;
+            }
+        }
+    }
+
+    private Timer bucket(long deadline) {
+        // a deadline that has passed already goes into the current bucket,
+        // which the next advance(now) visits
+        long time = Math.max(deadline, nanos);
+        long duration = time - nanos;
+        int level = 0;
+        while (level < LEVELS - 1
+                && duration >= 1L << shift(level + 1))
+            level++;
+        return wheel[level][(int) (time >>> shift(level)) & (BUCKETS - 1)];
+    }
+
+    private static int shift(int level) {
+        return TICK_BITS + BUCKET_BITS * level;
+    }
+}
@@ -0,0 +1,23 @@
+package map;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorSpecies;
+
+// only loaded when the vector api is available, see GroupMatcher.create()
+final class VectorGroupMatcher implements GroupMatcher {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_128;
+
+    @Override
+    public int match(byte[] ctrl, int offset, byte value) {
+        return (int) ByteVector.fromArray(SPECIES, ctrl, offset)
+            .eq(value)
+            .toLong();
+    }
+
+    @Override
+    public int matchNegative(byte[] ctrl, int offset) {
+        return (int) ByteVector.fromArray(SPECIES, ctrl, offset)
+            .lt((byte) 0)
+            .toLong();
+    }
+}